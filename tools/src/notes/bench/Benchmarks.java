@@ -0,0 +1,158 @@
+package notes.bench;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+import notes.complete.Completer;
+import notes.complete.CompletionWriter;
+import notes.corpus.Corpus;
+import notes.corpus.NoteHandler;
+import notes.corpus.SegmentParser;
+import notes.index.IndexReader;
+import notes.index.Search;
+import notes.syntax.RustLexer;
+
+/**
+ * Benchmarks for ingesting and searching the notes: segment parsing,
+ * lexing the rust fences, index build, cold and warm queries, and prefix
+ * completion.
+ *
+ * <pre>
+ * Benchmarks &lt;root&gt; [--scales 1,10,100] [--work dir] [--iterations n]
+ * </pre>
+ *
+ * Scale 1 is the tree itself; larger scales run against a
+ * {@link SyntheticCorpus} generated under the work directory (by default
+ * {@code /tmp/notes-bench}) and kept there for later runs. Scale 1000
+ * writes about half a gigabyte, so it is only run when asked for. A cold
+ * query opens the index afresh and runs one query, so it includes
+ * mapping the file and faulting in the pages it touches; a warm query
+ * reuses an open reader. Run each suite in a fresh JVM and compare
+ * medians across runs.
+ */
+public final class Benchmarks {
+
+    private static final String[] QUERIES = {"ownership borrow", "lifetime annotation", "trait object dyn",
+            "hashmap entry", "unsafe raw pointer", "iterator closure", "result error handling", "smart pointer rc"};
+
+    private static final String[] PREFIXES = {"unwrap", "impl Dis", "String::", "Vec", "iter", "std::c", "Ow", "a"};
+
+    private Benchmarks() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        Path root = Paths.get(args[0]);
+        Path work = Paths.get("/tmp/notes-bench");
+        String scales = "1,10,100";
+        int iterations = 20;
+        for (int i = 1; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+                case "--scales" -> scales = args[i + 1];
+                case "--work" -> work = Paths.get(args[i + 1]);
+                case "--iterations" -> iterations = Integer.parseInt(args[i + 1]);
+                default -> throw new IllegalArgumentException("unknown option " + args[i]);
+            }
+        }
+        Files.createDirectories(work);
+        for (String s : scales.split(",")) {
+            int scale = Integer.parseInt(s.strip());
+            Path tree = scale == 1 ? root : SyntheticCorpus.scale(root, work.resolve("x" + scale), scale);
+            run(tree, work.resolve("x" + scale + ".idx"), work.resolve("x" + scale + ".cmp"), scale,
+                    Math.max(3, iterations / scale));
+        }
+    }
+
+    private static void run(Path tree, Path index, Path completions, int scale, int iterations) throws Exception {
+        List<Path> notes = Corpus.notes(tree);
+        long bytes = 0;
+        for (Path note : notes) {
+            bytes += Files.size(note);
+        }
+        List<String> fences = rustFences(notes);
+        System.out.printf("%n== scale %dx: %d notes, %.1f MB, %d rust fences ==%n", scale, notes.size(), bytes / 1e6,
+                fences.size());
+
+        Harness slow = new Harness(1, iterations);
+        Harness fast = new Harness(2_000, 20_000);
+        List<Harness.Result> results = new ArrayList<>();
+
+        SegmentParser parser = new SegmentParser();
+        results.add(slow.run("parse segments", () -> {
+            long[] count = new long[1];
+            NoteHandler counter = new NoteHandler() {
+                @Override
+                public void segment(int index, long offset) {
+                    count[0]++;
+                }
+            };
+            for (Path note : notes) {
+                parser.parse(note, counter);
+            }
+            return count[0];
+        }));
+
+        RustLexer lexer = new RustLexer();
+        RustLexer.Tokens tokens = new RustLexer.Tokens();
+        results.add(slow.run("lex rust fences", () -> {
+            long n = 0;
+            for (String code : fences) {
+                n += lexer.lex(code, tokens);
+            }
+            return n;
+        }));
+
+        results.add(slow.run("build index", () -> {
+            Search.build(tree, index, false);
+            return Files.size(index);
+        }));
+
+        int[] next = new int[1];
+        results.add(slow.run("query (cold reader)", () -> {
+            try (IndexReader reader = new IndexReader(index)) {
+                return reader.search(QUERIES[next[0]++ % QUERIES.length], 10).size();
+            }
+        }));
+        try (IndexReader reader = new IndexReader(index)) {
+            results.add(fast.run("query (warm reader)",
+                    () -> reader.search(QUERIES[next[0]++ % QUERIES.length], 10).size()));
+        }
+
+        results.add(slow.run("build completions", () -> {
+            CompletionWriter writer = CompletionWriter.fromCorpus(tree);
+            writer.write(completions);
+            return writer.size();
+        }));
+        try (Completer completer = new Completer(completions)) {
+            results.add(fast.run("complete prefix",
+                    () -> completer.complete(PREFIXES[next[0]++ % PREFIXES.length], 8).size()));
+        }
+
+        for (Harness.Result result : results) {
+            System.out.println(result);
+        }
+        System.out.printf("(sink %d)%n", slow.sink() + fast.sink());
+    }
+
+    private static List<String> rustFences(List<Path> notes) throws IOException {
+        List<String> fences = new ArrayList<>();
+        SegmentParser parser = new SegmentParser();
+        for (Path note : notes) {
+            byte[] bytes = Files.readAllBytes(note);
+            parser.parse(note, new NoteHandler() {
+                @Override
+                public void fence(String language, long start, long end, long codeStart, long codeEnd) {
+                    if (language.equals("rust")) {
+                        fences.add(new String(bytes, (int) codeStart, (int) (codeEnd - codeStart),
+                                StandardCharsets.UTF_8));
+                    }
+                }
+            });
+        }
+        return fences;
+    }
+}
@@ -0,0 +1,90 @@
+package notes.bench;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+
+import com.sun.management.ThreadMXBean;
+
+/**
+ * Minimal benchmark runner: a fixed number of warm-up calls, then timed
+ * calls, reported as min, median, p99 and mean per call, and the bytes
+ * the calling thread allocated per call.
+ *
+ * This stands in for JMH, which the tools tree has no build to pull in.
+ * It keeps the parts that matter most for numbers that can be compared
+ * across runs: warm-up before measuring, a garbage collection between
+ * benchmarks, and every result folded into {@link #sink} so the JIT cannot
+ * discard the work. The allocation figure plays the part of JMH's gc
+ * profiler; it comes from the thread's allocation counter, so it is exact
+ * for single-threaded tasks and zero once escape analysis removes every
+ * allocation. It does not fork a JVM per benchmark, so run the suite from
+ * a fresh JVM each time.
+ */
+public final class Harness {
+
+    /** Work under measurement; the returned value is consumed so it cannot be optimised away. */
+    @FunctionalInterface
+    public interface Task {
+        long run() throws Exception;
+    }
+
+    private static final ThreadMXBean THREADS = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private final int warmup;
+    private final int iterations;
+    private long sink;
+
+    public Harness(int warmup, int iterations) {
+        this.warmup = warmup;
+        this.iterations = iterations;
+    }
+
+    public Result run(String name, Task task) throws Exception {
+        for (int i = 0; i < warmup; i++) {
+            sink += task.run();
+        }
+        System.gc();
+        long[] nanos = new long[iterations];
+        long thread = Thread.currentThread().getId();
+        long allocated = THREADS.getThreadAllocatedBytes(thread);
+        for (int i = 0; i < iterations; i++) {
+            long t0 = System.nanoTime();
+            sink += task.run();
+            nanos[i] = System.nanoTime() - t0;
+        }
+        allocated = THREADS.getThreadAllocatedBytes(thread) - allocated;
+        Arrays.sort(nanos);
+        long total = 0;
+        for (long n : nanos) {
+            total += n;
+        }
+        return new Result(name, iterations, nanos[0], nanos[iterations / 2],
+                nanos[Math.min(iterations - 1, (int) Math.ceil(iterations * 0.99) - 1)], total / iterations,
+                allocated / iterations);
+    }
+
+    /** Sum of every task result; print it once so the work stays observable. */
+    public long sink() {
+        return sink;
+    }
+
+    /** Timings of one benchmark, in nanoseconds per call, and bytes allocated per call. */
+    public record Result(String name, int calls, long min, long p50, long p99, long mean, long allocated) {
+
+        @Override
+        public String toString() {
+            return String.format("%-28s %6d calls  min %10s  p50 %10s  p99 %10s  mean %10s  alloc %8d B", name,
+                    calls, format(min), format(p50), format(p99), format(mean), allocated);
+        }
+
+        private static String format(long nanos) {
+            if (nanos >= 10_000_000) {
+                return String.format("%.1f ms", nanos / 1e6);
+            }
+            if (nanos >= 10_000) {
+                return String.format("%.1f us", nanos / 1e3);
+            }
+            return nanos + " ns";
+        }
+    }
+}
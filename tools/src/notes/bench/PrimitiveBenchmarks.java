@@ -0,0 +1,290 @@
+package notes.bench;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Random;
+
+import notes.collect.FastHasher;
+import notes.collect.SipHasher;
+import notes.collect.StringHasher;
+import notes.collect.StringIntMap;
+import notes.collect.VecI32;
+import notes.corpus.Corpus;
+import notes.lang.OptionI32;
+import notes.lang.ResultLong;
+import notes.text.Utf8;
+import notes.text.Utf8Str;
+
+/**
+ * Benchmarks for the primitive value types in {@code notes.lang} and the
+ * collections in {@code notes.collect} against the boxed JDK equivalents
+ * they replace. Each call runs a loop of {@link #OPS} operations, so the
+ * per-call figures divide by that many. The allocation column is the
+ * point: it should read 0 for the primitive types once the JIT has
+ * compiled the loop.
+ *
+ * The word count is the one from the hash maps note, run over every note
+ * under the root: split on whitespace, then
+ * {@code counts.entry(word).orInsert(0).add(1)}. Its maps are not
+ * cleared between calls, so from the second call on every word is known
+ * and the steady state is measured. Splitting the same text as UTF-8
+ * bytes with {@link Utf8Str} is compared with decoding it to a
+ * {@code String} first.
+ *
+ * UTF-8 validation and char counting run over the same bytes, which are
+ * mostly ASCII, and over a synthetic text of the same size that is mostly
+ * accented Latin, CJK and emoji. {@link Utf8} is compared with a strict
+ * JDK {@link CharsetDecoder}; the throughput lines after the table give
+ * bytes per median call in GB/s.
+ *
+ * <pre>
+ * PrimitiveBenchmarks [root] [--iterations n]
+ * </pre>
+ */
+public final class PrimitiveBenchmarks {
+
+    static final int OPS = 1024;
+
+    private static final int[] DATA = new int[OPS];
+
+    private PrimitiveBenchmarks() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        Path root = Paths.get(args.length % 2 == 1 ? args[0] : ".");
+        int iterations = 20_000;
+        for (int i = args.length % 2; i + 1 < args.length; i += 2) {
+            if (!args[i].equals("--iterations")) {
+                throw new IllegalArgumentException("unknown option " + args[i]);
+            }
+            iterations = Integer.parseInt(args[i + 1]);
+        }
+        Random random = new Random(42);
+        for (int i = 0; i < OPS; i++) {
+            // outside any small-value cache, so boxing really allocates
+            DATA[i] = 1_000_000 + random.nextInt(1_000_000);
+        }
+        Harness harness = new Harness(iterations / 10, iterations);
+        List<Harness.Result> results = new ArrayList<>();
+
+        results.add(harness.run("OptionI32 chain", () -> {
+            long sum = 0;
+            for (int i = 0; i < OPS; i++) {
+                sum += find(i).andThen(v -> OptionI32.of(v > 1_200_000, v)).map(v -> v + 7)
+                        .filter(v -> v % 5 != 0).unwrapOr(0);
+            }
+            return sum;
+        }));
+        results.add(harness.run("Optional<Integer> chain", () -> {
+            long sum = 0;
+            for (int i = 0; i < OPS; i++) {
+                sum += findBoxed(i).flatMap(v -> v > 1_200_000 ? Optional.of(v) : Optional.empty()).map(v -> v + 7)
+                        .filter(v -> v % 5 != 0).orElse(0);
+            }
+            return sum;
+        }));
+        results.add(harness.run("ResultLong chain", () -> {
+            long sum = 0;
+            for (int i = 0; i < OPS; i++) {
+                sum += parse(i).map(v -> v * 2).andThen(PrimitiveBenchmarks::checked).unwrapOr(-1);
+            }
+            return sum;
+        }));
+
+        VecI32 vec = new VecI32();
+        List<Integer> list = new ArrayList<>();
+        results.add(harness.run("VecI32 push, get", () -> {
+            vec.clear();
+            for (int i = 0; i < OPS; i++) {
+                vec.push(DATA[i]);
+            }
+            long sum = 0;
+            for (int i = 0; i < OPS; i++) {
+                sum += vec.get(i);
+            }
+            return sum + vec.getOr(OPS, 0);
+        }));
+        results.add(harness.run("ArrayList<Integer> add, get", () -> {
+            list.clear();
+            for (int i = 0; i < OPS; i++) {
+                list.add(DATA[i]);
+            }
+            long sum = 0;
+            for (int i = 0; i < OPS; i++) {
+                sum += list.get(i);
+            }
+            return sum;
+        }));
+        results.add(harness.run("VecI32 swapRemove(0)", () -> {
+            vec.clear();
+            for (int i = 0; i < OPS; i++) {
+                vec.push(DATA[i]);
+            }
+            long sum = 0;
+            while (!vec.isEmpty()) {
+                sum += vec.swapRemove(0);
+            }
+            return sum;
+        }));
+        results.add(harness.run("VecI32 remove(0)", () -> {
+            vec.clear();
+            for (int i = 0; i < OPS; i++) {
+                vec.push(DATA[i]);
+            }
+            long sum = 0;
+            while (!vec.isEmpty()) {
+                sum += vec.remove(0);
+            }
+            return sum;
+        }));
+        results.add(harness.run("ArrayList<Integer> remove(0)", () -> {
+            list.clear();
+            for (int i = 0; i < OPS; i++) {
+                list.add(DATA[i]);
+            }
+            long sum = 0;
+            while (!list.isEmpty()) {
+                sum += list.remove(0);
+            }
+            return sum;
+        }));
+
+        StringBuilder corpus = new StringBuilder();
+        for (Path note : Corpus.notes(root)) {
+            corpus.append(Files.readString(note, StandardCharsets.UTF_8)).append('\n');
+        }
+        String text = corpus.toString();
+        long[] hashes = new long[1];
+        StringHasher counted = (chars, from, to) -> {
+            hashes[0]++;
+            return FastHasher.INSTANCE.hash(chars, from, to);
+        };
+        StringIntMap check = new StringIntMap(counted);
+        long words = countWords(text, check);
+        System.out.printf("word count: %d words, %d distinct, %.2f hashes per word%n", words, check.size(),
+                (double) hashes[0] / words);
+
+        Harness slow = new Harness(Math.max(10, iterations / 500), Math.max(10, iterations / 100));
+        StringIntMap fast = new StringIntMap(FastHasher.INSTANCE);
+        StringIntMap keyed = new StringIntMap(SipHasher.random());
+        Map<String, Integer> boxed = new HashMap<>();
+        results.add(slow.run("word count FastHasher", () -> countWords(text, fast)));
+        results.add(slow.run("word count SipHasher", () -> countWords(text, keyed)));
+        results.add(slow.run("word count HashMap.merge", () -> {
+            long n = 0;
+            int i = 0;
+            while (i < text.length()) {
+                while (i < text.length() && Character.isWhitespace(text.charAt(i))) {
+                    i++;
+                }
+                int start = i;
+                while (i < text.length() && !Character.isWhitespace(text.charAt(i))) {
+                    i++;
+                }
+                if (i > start) {
+                    boxed.merge(text.substring(start, i), 1, Integer::sum);
+                    n++;
+                }
+            }
+            return n;
+        }));
+
+        byte[] utf8 = text.getBytes(StandardCharsets.UTF_8);
+        results.add(slow.run("Utf8Str splitWhitespace", () -> {
+            long n = 0;
+            for (Utf8Str word : Utf8Str.from(utf8).splitWhitespace()) {
+                n += word.length();
+            }
+            return n;
+        }));
+        results.add(slow.run("String decode, split", () -> {
+            long n = 0;
+            for (String word : new String(utf8, StandardCharsets.UTF_8).split("\\s+")) {
+                n += word.length();
+            }
+            return n;
+        }));
+
+        byte[] multibyte = multibyteText(utf8.length);
+        CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder().onMalformedInput(CodingErrorAction.REPORT)
+                .onUnmappableCharacter(CodingErrorAction.REPORT);
+        List<Harness.Result> throughput = new ArrayList<>();
+        for (byte[] input : List.of(utf8, multibyte)) {
+            String label = input == utf8 ? " (ascii)" : " (multibyte)";
+            throughput.add(slow.run("Utf8.validUpTo" + label, () -> Utf8.validUpTo(input, 0, input.length)));
+            throughput.add(slow.run("Utf8.countChars" + label, () -> Utf8.countChars(input, 0, input.length)));
+            throughput.add(slow.run("CharsetDecoder" + label, () -> decoder.decode(ByteBuffer.wrap(input)).length()));
+        }
+        results.addAll(throughput);
+
+        for (Harness.Result result : results) {
+            System.out.println(result);
+        }
+        for (int i = 0; i < throughput.size(); i++) {
+            // three results per input, in the order of the loop above
+            int bytes = i < 3 ? utf8.length : multibyte.length;
+            System.out.printf("%-28s %6.2f GB/s%n", throughput.get(i).name(), (double) bytes / throughput.get(i).p50());
+        }
+        System.out.printf("(sink %d)%n", harness.sink() + slow.sink());
+    }
+
+    /** {@code text.split_whitespace()} into {@code counts}; returns the number of words. */
+    private static long countWords(String text, StringIntMap counts) {
+        long n = 0;
+        int i = 0;
+        while (i < text.length()) {
+            while (i < text.length() && Character.isWhitespace(text.charAt(i))) {
+                i++;
+            }
+            int start = i;
+            while (i < text.length() && !Character.isWhitespace(text.charAt(i))) {
+                i++;
+            }
+            if (i > start) {
+                counts.entry(text, start, i).orInsert(0).add(1);
+                n++;
+            }
+        }
+        return n;
+    }
+
+    /** About {@code size} bytes of text that is mostly two-, three- and four-byte chars. */
+    private static byte[] multibyteText(int size) {
+        String words = "caf\u00e9 na\u00efve \u00fcber \u65e5\u672c\u8a9e \u6587\u5b57\u5217 "
+                + "\u0441\u0442\u0440\u043e\u043a\u0430 \ud83e\udd80 \ud83d\udcdd ";
+        StringBuilder text = new StringBuilder();
+        while (text.length() * 2 < size) {
+            text.append(words);
+        }
+        return text.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static OptionI32 find(int i) {
+        int v = DATA[i];
+        return OptionI32.of((v & 1) == 0, v);
+    }
+
+    private static Optional<Integer> findBoxed(int i) {
+        int v = DATA[i];
+        return (v & 1) == 0 ? Optional.of(v) : Optional.empty();
+    }
+
+    private static ResultLong<String> parse(int i) {
+        int v = DATA[i];
+        return ResultLong.of(v, v % 3 == 0 ? "multiple of three" : null);
+    }
+
+    private static ResultLong<String> checked(long v) {
+        return ResultLong.of(v, v > 3_800_000 ? "too large" : null);
+    }
+}
@@ -0,0 +1,105 @@
+package notes.bench;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import notes.corpus.Corpus;
+
+/**
+ * Scales the note tree by a whole factor for benchmarking.
+ *
+ * Copy {@code k} of the tree goes to {@code target/copy-NNNN/}, with
+ * {@code k} zero-padded to four digits, keeping topic folders and file
+ * names, so paths look like the real ones. Copy 0 is verbatim. Later
+ * copies replace about one prose word in twenty with another word of the
+ * corpus, chosen by a generator seeded with {@code k}.
+ * Posting lists and the vocabulary therefore grow the way a larger real
+ * corpus would, rather than every copy hashing to the same thing. Fences
+ * are copied unchanged.
+ *
+ * Output is reproducible: the same root and factor always produce the
+ * same bytes. A finished tree is marked with a stamp file and reused.
+ */
+public final class SyntheticCorpus {
+
+    private static final Pattern WORD = Pattern.compile("\\b[A-Za-z]{4,}\\b");
+    private static final String STAMP = ".synthetic";
+
+    private SyntheticCorpus() {
+    }
+
+    /** Writes {@code factor} copies of the notes under {@code root} to {@code target}; returns {@code target}. */
+    public static Path scale(Path root, Path target, int factor) throws IOException {
+        Path stamp = target.resolve(STAMP);
+        String expected = factor + " " + root.toAbsolutePath().normalize();
+        if (Files.isRegularFile(stamp) && Files.readString(stamp).equals(expected)) {
+            return target;
+        }
+        List<Path> notes = Corpus.notes(root);
+        List<String> texts = new ArrayList<>(notes.size());
+        Set<String> vocabulary = new LinkedHashSet<>();
+        for (Path note : notes) {
+            String text = Files.readString(note, StandardCharsets.UTF_8);
+            texts.add(text);
+            Matcher m = WORD.matcher(text);
+            while (m.find()) {
+                vocabulary.add(m.group());
+            }
+        }
+        String[] words = vocabulary.toArray(new String[0]);
+        Files.deleteIfExists(stamp);
+        for (int k = 0; k < factor; k++) {
+            Random random = new Random(k);
+            Path copy = target.resolve(String.format("copy-%04d", k));
+            for (int i = 0; i < notes.size(); i++) {
+                Path out = copy.resolve(root.relativize(notes.get(i)).toString());
+                Files.createDirectories(out.getParent());
+                String text = k == 0 ? texts.get(i) : perturb(texts.get(i), words, random);
+                Files.writeString(out, text, StandardCharsets.UTF_8);
+            }
+        }
+        Files.writeString(stamp, expected);
+        return target;
+    }
+
+    /** Replaces about one prose word in twenty; lines inside fences are left alone. */
+    private static String perturb(String text, String[] words, Random random) {
+        StringBuilder out = new StringBuilder(text.length() + 64);
+        boolean fence = false;
+        String[] lines = text.split("\n", -1);
+        for (int n = 0; n < lines.length; n++) {
+            if (n > 0) {
+                out.append('\n');
+            }
+            String line = lines[n];
+            if (line.stripLeading().startsWith("```")) {
+                fence = !fence;
+                out.append(line);
+                continue;
+            }
+            if (fence) {
+                out.append(line);
+                continue;
+            }
+            Matcher m = WORD.matcher(line);
+            int last = 0;
+            while (m.find()) {
+                if (random.nextInt(20) == 0) {
+                    out.append(line, last, m.start()).append(words[random.nextInt(words.length)]);
+                    last = m.end();
+                }
+            }
+            out.append(line, last, line.length());
+        }
+        return out.toString();
+    }
+}
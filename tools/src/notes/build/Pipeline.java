@@ -0,0 +1,371 @@
+package notes.build;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+
+import notes.corpus.Corpus;
+import notes.corpus.NoteHandler;
+import notes.corpus.SegmentParser;
+import notes.index.IndexWriter;
+import notes.index.Tokenizer;
+
+/**
+ * Builds the index and harvests code blocks and citations with the work
+ * spread over all cores.
+ *
+ * <pre>
+ * read (1 thread) -&gt; parse (n) -&gt; tokenize (n) -&gt; collect (1 thread)
+ * </pre>
+ *
+ * Stages are joined by bounded queues, so a fast stage blocks instead of
+ * buffering the whole corpus. The parse and tokenize workers run in one
+ * work-stealing {@link ForkJoinPool}; their blocking queue operations go
+ * through {@link ForkJoinPool#managedBlock} so the pool can add a thread
+ * rather than stall. Each stage counts its items and busy time.
+ *
+ * The first stage to fail, the reading thread included, records its
+ * exception in a flag that every queue operation checks between timed
+ * waits. The other stages then stop instead of blocking on a queue that
+ * will never drain or fill, and {@link #run} rethrows the first failure
+ * as an {@link IOException}.
+ */
+public final class Pipeline {
+
+    private static final Object DONE = new Object();
+    private static final long POLL_MILLIS = 10;
+
+    private final int workers;
+    private final int capacity;
+    private final Map<String, Stats> stats = new LinkedHashMap<>();
+
+    public Pipeline(int workers, int capacity) {
+        this.workers = workers;
+        this.capacity = capacity;
+    }
+
+    public Pipeline() {
+        this(Runtime.getRuntime().availableProcessors(), 64);
+    }
+
+    /** Runs the pipeline over the notes under {@code root} and writes the index to {@code index}. */
+    public Result run(Path root, Path index) throws IOException {
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        Channel read = new Channel(capacity, failure);
+        Channel parsed = new Channel(capacity, failure);
+        Channel tokenized = new Channel(capacity * 4, failure);
+        ThreadLocal<SegmentParser> parsers = ThreadLocal.withInitial(SegmentParser::new);
+        stats.clear();
+        for (String stage : new String[] {"read", "parse", "tokenize", "collect", "write"}) {
+            stats.put(stage, new Stats());
+        }
+        Stats parsing = stats.get("parse");
+        Stats tokenizing = stats.get("tokenize");
+
+        IndexWriter writer = new IndexWriter();
+        List<Code> code = new ArrayList<>();
+        List<Cite> citations = new ArrayList<>();
+        long t0 = System.nanoTime();
+
+        ForkJoinPool pool = new ForkJoinPool(workers);
+        ExecutorService collector = Executors.newSingleThreadExecutor(r -> new Thread(r, "pipeline-collect"));
+        try {
+            List<Future<?>> tasks = new ArrayList<>();
+            for (int i = 0; i < workers; i++) {
+                tasks.add(pool.submit(stage(failure, () -> work(read, parsed, parsing,
+                        note -> parse(note, parsers.get())))));
+                tasks.add(pool.submit(stage(failure, () -> work(parsed, tokenized, tokenizing, Pipeline::tokenize))));
+            }
+            tasks.add(collector.submit(stage(failure, () -> collect(tokenized, writer, code, citations))));
+
+            Stats reading = stats.get("read");
+            for (Path note : Corpus.notes(root)) {
+                long start = System.nanoTime();
+                Note n = new Note(root.relativize(note).toString(), Files.readAllBytes(note));
+                reading.add(1, n.bytes.length, System.nanoTime() - start);
+                read.put(n);
+            }
+            // each parse worker forwards one DONE, each tokenize worker forwards one to the collector
+            for (int i = 0; i < workers; i++) {
+                read.put(DONE);
+            }
+            for (Future<?> task : tasks) {
+                task.get();
+            }
+        } catch (InterruptedException e) {
+            failure.compareAndSet(null, e);
+            Thread.currentThread().interrupt();
+            throw new IOException("pipeline interrupted", e);
+        } catch (ExecutionException e) {
+            failure.compareAndSet(null, e.getCause());
+        } catch (IOException | RuntimeException e) {
+            // reading failed, or a put gave up because a stage had failed first
+            failure.compareAndSet(null, e);
+        } finally {
+            pool.shutdownNow();
+            collector.shutdownNow();
+        }
+        if (failure.get() != null) {
+            throw new IOException("pipeline stage failed", failure.get());
+        }
+
+        Stats writing = stats.get("write");
+        long start = System.nanoTime();
+        writer.write(index);
+        writing.add(1, Files.size(index), System.nanoTime() - start);
+        return new Result(writer.docCount(), code, citations, new LinkedHashMap<>(stats), System.nanoTime() - t0);
+    }
+
+    /** Wraps a stage so that its failure, if it is the first, is recorded for the others to see. */
+    private static Runnable stage(AtomicReference<Throwable> failure, Runnable stage) {
+        return () -> {
+            try {
+                stage.run();
+            } catch (RuntimeException | Error e) {
+                failure.compareAndSet(null, e);
+                throw e;
+            }
+        };
+    }
+
+    private static void work(Channel in, Channel out, Stats stats, Function<Object, Object> step) {
+        while (true) {
+            Object item = in.take();
+            if (item == DONE) {
+                out.put(DONE);
+                return;
+            }
+            long start = System.nanoTime();
+            Object result = step.apply(item);
+            stats.add(1, 0, System.nanoTime() - start);
+            out.put(result);
+        }
+    }
+
+    private static Parsed parse(Object item, SegmentParser parser) {
+        Note note = (Note) item;
+        Parsed parsed = new Parsed(note);
+        try {
+            parser.parse(new ByteArrayInputStream(note.bytes), new NoteHandler() {
+                private long segmentStart;
+
+                @Override
+                public void segment(int index, long offset) {
+                    if (index > 0) {
+                        parsed.bounds.add(new int[] {(int) segmentStart, (int) offset});
+                    }
+                    segmentStart = offset;
+                }
+
+                @Override
+                public void fence(String language, long start, long end, long codeStart, long codeEnd) {
+                    parsed.code.add(new Code(note.name, language, (int) codeStart, (int) codeEnd));
+                }
+
+                @Override
+                public void citation(int number, String url, long start, long end) {
+                    parsed.citations.add(new Cite(note.name, parsed.bounds.size(), url));
+                }
+
+                @Override
+                public void end(long length) {
+                    parsed.bounds.add(new int[] {(int) segmentStart, (int) length});
+                }
+            });
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return parsed;
+    }
+
+    private static Parsed tokenize(Object item) {
+        Parsed parsed = (Parsed) item;
+        for (int[] bound : parsed.bounds) {
+            String text = new String(parsed.note.bytes, bound[0], bound[1] - bound[0], StandardCharsets.UTF_8);
+            parsed.terms.add(Tokenizer.terms(text));
+        }
+        return parsed;
+    }
+
+    private void collect(Channel in, IndexWriter writer, List<Code> code, List<Cite> citations) {
+        Stats collecting = stats.get("collect");
+        int done = 0;
+        while (done < workers) {
+            Object item = in.take();
+            if (item == DONE) {
+                done++;
+                continue;
+            }
+            long start = System.nanoTime();
+            Parsed parsed = (Parsed) item;
+            for (int i = 0; i < parsed.bounds.size(); i++) {
+                int[] bound = parsed.bounds.get(i);
+                Tokenizer.Terms terms = parsed.terms.get(i);
+                writer.add(parsed.note.name, i, bound[0], bound[1], terms.length(), terms.positions());
+            }
+            code.addAll(parsed.code);
+            citations.addAll(parsed.citations);
+            collecting.add(1, parsed.note.bytes.length, System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * A bounded queue between two stages. Its operations wait in short
+     * timed steps and throw {@link CancellationException} once any stage
+     * has failed, so no stage blocks forever on a neighbour that stopped.
+     */
+    private static final class Channel {
+        private final BlockingQueue<Object> queue;
+        private final AtomicReference<Throwable> failure;
+
+        Channel(int capacity, AtomicReference<Throwable> failure) {
+            this.queue = new ArrayBlockingQueue<>(capacity);
+            this.failure = failure;
+        }
+
+        Object take() {
+            Object[] box = new Object[1];
+            block(() -> (box[0] = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS)) != null,
+                    () -> (box[0] = queue.poll()) != null);
+            return box[0];
+        }
+
+        void put(Object item) {
+            block(() -> queue.offer(item, POLL_MILLIS, TimeUnit.MILLISECONDS), () -> queue.offer(item));
+        }
+
+        private void block(Blocking blocking, Attempt attempt) {
+            checkFailure();
+            try {
+                ForkJoinPool.managedBlock(new ForkJoinPool.ManagedBlocker() {
+                    private boolean done;
+
+                    @Override
+                    public boolean block() throws InterruptedException {
+                        while (!done) {
+                            checkFailure();
+                            done = blocking.tryFor();
+                        }
+                        return true;
+                    }
+
+                    @Override
+                    public boolean isReleasable() {
+                        return done || (done = attempt.tryNow());
+                    }
+                });
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("pipeline interrupted", e);
+            }
+        }
+
+        private void checkFailure() {
+            if (failure.get() != null) {
+                throw new CancellationException("another pipeline stage failed");
+            }
+        }
+    }
+
+    private interface Blocking {
+        boolean tryFor() throws InterruptedException;
+    }
+
+    private interface Attempt {
+        boolean tryNow();
+    }
+
+    /** A fenced block found while parsing: byte range of the code inside {@code note}. */
+    public record Code(String note, String language, int start, int end) {
+    }
+
+    /** A citation and the answer segment it appeared in. */
+    public record Cite(String note, int segment, String url) {
+    }
+
+    /** Throughput counters for one stage; updated concurrently by its workers. */
+    public static final class Stats {
+        private final AtomicLong items = new AtomicLong();
+        private final AtomicLong bytes = new AtomicLong();
+        private final AtomicLong busyNanos = new AtomicLong();
+
+        void add(long items, long bytes, long nanos) {
+            this.items.addAndGet(items);
+            this.bytes.addAndGet(bytes);
+            this.busyNanos.addAndGet(nanos);
+        }
+
+        public long items() {
+            return items.get();
+        }
+
+        public long bytes() {
+            return bytes.get();
+        }
+
+        public long busyNanos() {
+            return busyNanos.get();
+        }
+
+        /** Items per second of busy time, summed over the stage's workers. */
+        public double itemsPerSecond() {
+            long nanos = busyNanos.get();
+            return nanos == 0 ? 0 : items.get() * 1e9 / nanos;
+        }
+    }
+
+    public record Result(int segments, List<Code> code, List<Cite> citations, Map<String, Stats> stages, long nanos) {
+    }
+
+    private static final class Note {
+        final String name;
+        final byte[] bytes;
+
+        Note(String name, byte[] bytes) {
+            this.name = name;
+            this.bytes = bytes;
+        }
+    }
+
+    private static final class Parsed {
+        final Note note;
+        final List<int[]> bounds = new ArrayList<>();
+        final List<Code> code = new ArrayList<>();
+        final List<Cite> citations = new ArrayList<>();
+        final List<Tokenizer.Terms> terms = new ArrayList<>();
+
+        Parsed(Note note) {
+            this.note = note;
+        }
+    }
+
+    /** {@code Pipeline <root> <index> [workers]}: builds the index and prints per-stage throughput. */
+    public static void main(String[] args) throws IOException {
+        int workers = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+        Result result = new Pipeline(workers, 64).run(Paths.get(args[0]), Paths.get(args[1]));
+        System.out.printf("%d segments, %d code blocks, %d citations in %d ms on %d workers%n",
+                result.segments(), result.code().size(), result.citations().size(), result.nanos() / 1_000_000, workers);
+        result.stages().forEach((stage, s) -> System.out.printf("  %-9s %6d items %9.0f items/s busy %6d us%n",
+                stage, s.items(), s.itemsPerSecond(), s.busyNanos() / 1000));
+    }
+}
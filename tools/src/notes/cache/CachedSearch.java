@@ -0,0 +1,142 @@
+package notes.cache;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import notes.index.IndexReader;
+import notes.index.LayeredIndex;
+import notes.index.Tokenizer;
+
+/**
+ * Ranked search with a {@link TinyLfuCache} in front of it.
+ *
+ * Queries are keyed by their normalised terms and {@code k}, so
+ * {@code "String &str"} and {@code "str string"} share an entry. Each
+ * entry is tagged with its query terms ({@code t:term}) and the notes of
+ * its hits ({@code n:path}). After a reindex, {@link #invalidate} drops
+ * only entries that mention a changed note or a term that changed notes
+ * gained or lost; other cached rankings are kept even though corpus-wide
+ * BM25 statistics may have shifted slightly.
+ *
+ * Each index swapped in starts a new generation. A search records the
+ * generation it ran against, and its result is not cached if an
+ * invalidation happened meanwhile, so hits from a replaced index never
+ * reach the cache. A replaced index is closed once the last search still
+ * using it returns.
+ */
+public final class CachedSearch implements AutoCloseable {
+
+    private final TinyLfuCache<String, List<IndexReader.Hit>> cache;
+    private volatile Snapshot current;
+
+    public CachedSearch(LayeredIndex index, int capacity) {
+        this.current = new Snapshot(index, 0);
+        this.cache = new TinyLfuCache<>(capacity);
+    }
+
+    public List<IndexReader.Hit> search(String query, int k) {
+        Set<String> terms = new LinkedHashSet<>();
+        Tokenizer.tokenize(query, (term, position) -> terms.add(term));
+        List<String> sorted = new ArrayList<>(terms);
+        sorted.sort(null);
+        String key = k + ":" + String.join(" ", sorted);
+        List<IndexReader.Hit> hits = cache.get(key);
+        if (hits == null) {
+            Snapshot snapshot = acquire();
+            try {
+                hits = snapshot.index.search(query, k);
+            } finally {
+                release(snapshot);
+            }
+            List<String> tags = new ArrayList<>();
+            for (String term : sorted) {
+                tags.add("t:" + term);
+            }
+            for (IndexReader.Hit hit : hits) {
+                tags.add("n:" + hit.note());
+            }
+            synchronized (this) {
+                if (snapshot.generation == current.generation) {
+                    cache.put(key, hits, tags);
+                }
+            }
+        }
+        return hits;
+    }
+
+    /**
+     * Switches to a rebuilt index and drops the entries that depend on
+     * {@code notes} or {@code terms}. Returns the number of entries dropped.
+     * The index replaced is closed once searches still using it finish.
+     */
+    public int invalidate(LayeredIndex rebuilt, Collection<String> notes, Collection<String> terms) {
+        Snapshot old;
+        int n = 0;
+        synchronized (this) {
+            old = current;
+            current = new Snapshot(rebuilt, old.generation + 1);
+            for (String note : notes) {
+                n += cache.invalidate("n:" + note);
+            }
+            for (String term : terms) {
+                n += cache.invalidate("t:" + term);
+            }
+        }
+        release(old);
+        return n;
+    }
+
+    /** Number of indexes swapped in since this was created. */
+    public long generation() {
+        return current.generation;
+    }
+
+    public TinyLfuCache.Stats stats() {
+        return cache.stats();
+    }
+
+    /** Closes the current index once searches still using it finish. */
+    @Override
+    public void close() {
+        release(current);
+    }
+
+    private Snapshot acquire() {
+        while (true) {
+            Snapshot snapshot = current;
+            int refs = snapshot.refs.get();
+            // a count of 0 means the snapshot was replaced and closed after it was read; read current again
+            if (refs > 0 && snapshot.refs.compareAndSet(refs, refs + 1)) {
+                return snapshot;
+            }
+        }
+    }
+
+    private static void release(Snapshot snapshot) {
+        if (snapshot.refs.decrementAndGet() == 0) {
+            try {
+                snapshot.index.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    /** An index and its generation; {@code refs} counts running searches plus one while it is current. */
+    private static final class Snapshot {
+        final LayeredIndex index;
+        final long generation;
+        final AtomicInteger refs = new AtomicInteger(1);
+
+        Snapshot(LayeredIndex index, long generation) {
+            this.index = index;
+            this.generation = generation;
+        }
+    }
+}
@@ -0,0 +1,270 @@
+package notes.cache;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Bounded cache with W-TinyLFU admission and eviction.
+ *
+ * New entries land in a small LRU window (1% of capacity). When the
+ * window overflows, its oldest entry competes with the main region's
+ * eviction candidate and the one the frequency sketch has seen more often
+ * stays. The main region is a segmented LRU: entries hit a second time
+ * move from probation to protected. The sketch is a count-min sketch of
+ * 4-bit counters, halved every {@code 10 * capacity} accesses so old
+ * popularity fades.
+ *
+ * Entries can carry tags; {@link #invalidate(String)} drops every entry
+ * with that tag, which is how search results are tied to the notes and
+ * terms they depend on. All methods are synchronized.
+ */
+public final class TinyLfuCache<K, V> {
+
+    private static final int WINDOW = 0;
+    private static final int PROBATION = 1;
+    private static final int PROTECTED = 2;
+
+    private final int windowCapacity;
+    private final int protectedCapacity;
+    private final int mainCapacity;
+    private final Map<K, Node<K, V>> nodes = new HashMap<>();
+    private final Map<String, Set<K>> tagged = new HashMap<>();
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private final Node<K, V>[] heads = new Node[3];
+    private final int[] sizes = new int[3];
+    private final Sketch sketch;
+
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long rejections;
+    private long invalidations;
+
+    public TinyLfuCache(int capacity) {
+        if (capacity < 2) {
+            throw new IllegalArgumentException("capacity must be at least 2");
+        }
+        windowCapacity = Math.max(1, capacity / 100);
+        mainCapacity = capacity - windowCapacity;
+        protectedCapacity = mainCapacity * 4 / 5;
+        sketch = new Sketch(capacity);
+        for (int i = 0; i < 3; i++) {
+            heads[i] = new Node<>(null, null, null, -1);
+            heads[i].prev = heads[i];
+            heads[i].next = heads[i];
+        }
+    }
+
+    public synchronized V get(K key) {
+        sketch.increment(key.hashCode());
+        Node<K, V> node = nodes.get(key);
+        if (node == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        if (node.queue == PROBATION) {
+            unlink(node);
+            link(node, PROTECTED);
+            if (sizes[PROTECTED] > protectedCapacity) {
+                // demote the oldest protected entry back to probation
+                Node<K, V> demoted = heads[PROTECTED].next;
+                unlink(demoted);
+                link(demoted, PROBATION);
+            }
+        } else {
+            unlink(node);
+            link(node, node.queue);
+        }
+        return node.value;
+    }
+
+    public synchronized void put(K key, V value, Collection<String> tags) {
+        Node<K, V> node = nodes.get(key);
+        if (node != null) {
+            untag(node);
+            node.value = value;
+            node.tags = List.copyOf(tags);
+            tag(node);
+            return;
+        }
+        sketch.increment(key.hashCode());
+        node = new Node<>(key, value, List.copyOf(tags), WINDOW);
+        nodes.put(key, node);
+        tag(node);
+        link(node, WINDOW);
+        if (sizes[WINDOW] > windowCapacity) {
+            Node<K, V> candidate = heads[WINDOW].next;
+            unlink(candidate);
+            if (sizes[PROBATION] + sizes[PROTECTED] < mainCapacity) {
+                link(candidate, PROBATION);
+                return;
+            }
+            Node<K, V> victim = heads[PROBATION].next != heads[PROBATION]
+                    ? heads[PROBATION].next : heads[PROTECTED].next;
+            if (sketch.frequency(candidate.key.hashCode()) > sketch.frequency(victim.key.hashCode())) {
+                remove(victim);
+                evictions++;
+                link(candidate, PROBATION);
+            } else {
+                remove(candidate);
+                rejections++;
+            }
+        }
+    }
+
+    /** Drops every entry tagged {@code tag}; returns how many went. */
+    public synchronized int invalidate(String tag) {
+        Set<K> keys = tagged.remove(tag);
+        if (keys == null) {
+            return 0;
+        }
+        int n = 0;
+        for (K key : new ArrayList<>(keys)) {
+            Node<K, V> node = nodes.get(key);
+            if (node != null) {
+                remove(node);
+                n++;
+            }
+        }
+        invalidations += n;
+        return n;
+    }
+
+    public synchronized void clear() {
+        for (Node<K, V> node : new ArrayList<>(nodes.values())) {
+            remove(node);
+        }
+    }
+
+    public synchronized int size() {
+        return nodes.size();
+    }
+
+    public synchronized Stats stats() {
+        return new Stats(hits, misses, evictions, rejections, invalidations);
+    }
+
+    private void remove(Node<K, V> node) {
+        if (node.prev != null) {
+            unlink(node);
+        }
+        nodes.remove(node.key);
+        untag(node);
+    }
+
+    private void tag(Node<K, V> node) {
+        for (String tag : node.tags) {
+            tagged.computeIfAbsent(tag, t -> new HashSet<>()).add(node.key);
+        }
+    }
+
+    private void untag(Node<K, V> node) {
+        for (String tag : node.tags) {
+            Set<K> keys = tagged.get(tag);
+            if (keys != null && keys.remove(node.key) && keys.isEmpty()) {
+                tagged.remove(tag);
+            }
+        }
+    }
+
+    private void link(Node<K, V> node, int queue) {
+        Node<K, V> head = heads[queue];
+        node.queue = queue;
+        node.prev = head.prev;
+        node.next = head;
+        head.prev.next = node;
+        head.prev = node;
+        sizes[queue]++;
+    }
+
+    private void unlink(Node<K, V> node) {
+        node.prev.next = node.next;
+        node.next.prev = node.prev;
+        node.prev = null;
+        node.next = null;
+        sizes[node.queue]--;
+    }
+
+    /** Counters since the cache was created. */
+    public record Stats(long hits, long misses, long evictions, long rejections, long invalidations) {
+
+        public double hitRate() {
+            long total = hits + misses;
+            return total == 0 ? 0 : (double) hits / total;
+        }
+    }
+
+    private static final class Node<K, V> {
+        final K key;
+        V value;
+        List<String> tags;
+        int queue;
+        Node<K, V> prev;
+        Node<K, V> next;
+
+        Node(K key, V value, List<String> tags, int queue) {
+            this.key = key;
+            this.value = value;
+            this.tags = tags;
+            this.queue = queue;
+        }
+    }
+
+    /** Count-min sketch with four rows of 4-bit counters packed sixteen to a long. */
+    private static final class Sketch {
+        private static final long[] SEEDS = {0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL,
+                0xcbf29ce484222325L};
+
+        private final long[] table;
+        private final int mask;
+        private final int resetAt;
+        private int additions;
+
+        Sketch(int capacity) {
+            int words = Integer.highestOneBit(Math.max(capacity, 16) * 2 - 1) / 4;
+            table = new long[Math.max(words, 4) * 4];
+            mask = table.length / 4 - 1;
+            resetAt = 10 * capacity;
+        }
+
+        void increment(int hash) {
+            boolean added = false;
+            for (int row = 0; row < 4; row++) {
+                int counter = counter(hash, row);
+                int word = row * (mask + 1) + (counter >>> 4 & mask);
+                int shift = (counter & 15) << 2;
+                if ((table[word] >>> shift & 15) < 15) {
+                    table[word] += 1L << shift;
+                    added = true;
+                }
+            }
+            if (added && ++additions >= resetAt) {
+                for (int i = 0; i < table.length; i++) {
+                    table[i] = (table[i] >>> 1) & 0x7777777777777777L;
+                }
+                additions /= 2;
+            }
+        }
+
+        int frequency(int hash) {
+            int min = 15;
+            for (int row = 0; row < 4; row++) {
+                int counter = counter(hash, row);
+                int word = row * (mask + 1) + (counter >>> 4 & mask);
+                min = Math.min(min, (int) (table[word] >>> ((counter & 15) << 2) & 15));
+            }
+            return min;
+        }
+
+        private static int counter(int hash, int row) {
+            long h = (hash + SEEDS[row]) * SEEDS[(row + 1) & 3];
+            return (int) (h ^ (h >>> 32));
+        }
+    }
+}
@@ -0,0 +1,401 @@
+package notes.cite;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+import notes.corpus.NoteHandler;
+import notes.corpus.NoteWalker;
+import notes.corpus.SegmentParser;
+
+/**
+ * Which answer segments cite which URLs, and which domains those URLs
+ * belong to.
+ *
+ * URLs are normalised (scheme, {@code www.} and trailing slash dropped),
+ * sorted and stored back to back in one UTF-8 {@code byte[]}, so a URL is
+ * just its index and a prefix query is one binary search. Both edge
+ * directions are kept as compressed rows of {@code int}s: segment to URLs
+ * and URL to segments. Nothing in the built graph is boxed.
+ *
+ * Each URL also keeps the spelling it was first cited with, scheme and
+ * all, for tools such as {@link LinkChecker} that must fetch what the
+ * notes actually link to rather than the normalised key.
+ */
+public final class CitationGraph {
+
+    private final String[] notes;
+    private final int[] segmentNote;
+    private final int[] segmentIndex;
+    private final byte[] urlBytes;
+    private final String[] cited;
+    private final int[] urlOffsets;
+    private final int[] urlDomain;
+    private final String[] domains;
+    private final int[] segmentStarts;
+    private final int[] segmentUrls;
+    private final int[] urlStarts;
+    private final int[] urlSegments;
+
+    private CitationGraph(Builder b) {
+        notes = b.notes.toArray(new String[0]);
+        segmentNote = Arrays.copyOf(b.segmentNote, b.segments);
+        segmentIndex = Arrays.copyOf(b.segmentIndex, b.segments);
+
+        // sort the distinct URLs by their UTF-8 bytes, the order lowerBound searches in, and remap the
+        // builder's ids to that order
+        byte[][] encoded = new byte[b.urlIds.size()][];
+        int n = 0;
+        for (String url : b.urlIds.keySet()) {
+            encoded[n++] = url.getBytes(StandardCharsets.UTF_8);
+        }
+        Arrays.sort(encoded, Arrays::compareUnsigned);
+        String[] sorted = new String[encoded.length];
+        for (int i = 0; i < encoded.length; i++) {
+            sorted[i] = new String(encoded[i], StandardCharsets.UTF_8);
+        }
+        int[] remap = new int[sorted.length];
+        cited = new String[sorted.length];
+        TreeMap<String, Integer> domainIds = new TreeMap<>();
+        for (String url : sorted) {
+            domainIds.put(domain(url), 0);
+        }
+        domains = domainIds.keySet().toArray(new String[0]);
+        for (int i = 0; i < domains.length; i++) {
+            domainIds.put(domains[i], i);
+        }
+        urlOffsets = new int[sorted.length + 1];
+        urlDomain = new int[sorted.length];
+        int total = 0;
+        for (int i = 0; i < sorted.length; i++) {
+            int id = b.urlIds.get(sorted[i]);
+            remap[id] = i;
+            cited[i] = b.cited.get(id);
+            urlOffsets[i] = total;
+            total += encoded[i].length;
+            urlDomain[i] = domainIds.get(domain(sorted[i]));
+        }
+        urlOffsets[sorted.length] = total;
+        urlBytes = new byte[total];
+        for (int i = 0; i < sorted.length; i++) {
+            System.arraycopy(encoded[i], 0, urlBytes, urlOffsets[i], encoded[i].length);
+        }
+
+        int edges = b.edges / 2;
+        int[] from = new int[edges];
+        int[] to = new int[edges];
+        for (int e = 0; e < edges; e++) {
+            from[e] = b.edgeList[e * 2];
+            to[e] = remap[b.edgeList[e * 2 + 1]];
+        }
+        segmentStarts = new int[b.segments + 1];
+        segmentUrls = rows(from, to, segmentStarts);
+        urlStarts = new int[sorted.length + 1];
+        urlSegments = rows(to, from, urlStarts);
+    }
+
+    /** Counting sort of edges into compressed rows; each row ends up sorted and duplicate-free. */
+    private static int[] rows(int[] from, int[] to, int[] starts) {
+        int rowCount = starts.length - 1;
+        for (int f : from) {
+            starts[f + 1]++;
+        }
+        for (int r = 0; r < rowCount; r++) {
+            starts[r + 1] += starts[r];
+        }
+        int[] fill = Arrays.copyOf(starts, rowCount);
+        int[] cols = new int[from.length];
+        for (int e = 0; e < from.length; e++) {
+            cols[fill[from[e]]++] = to[e];
+        }
+        // sort and dedupe each row in place, then compact
+        int out = 0;
+        int rowStart = 0;
+        for (int r = 0; r < rowCount; r++) {
+            int end = starts[r + 1];
+            Arrays.sort(cols, rowStart, end);
+            starts[r] = out;
+            for (int i = rowStart; i < end; i++) {
+                if (i == rowStart || cols[i] != cols[i - 1]) {
+                    cols[out++] = cols[i];
+                }
+            }
+            rowStart = end;
+        }
+        starts[rowCount] = out;
+        return Arrays.copyOf(cols, out);
+    }
+
+    /** Builds the graph from the citations of every note under {@code root}. */
+    public static CitationGraph build(Path root) throws IOException {
+        Builder builder = new Builder();
+        SegmentParser parser = new SegmentParser();
+        for (NoteWalker.NoteRef note : new NoteWalker(root).notes()) {
+            int noteId = builder.note(note.relative());
+            parser.parse(note.path(), new NoteHandler() {
+                private int segment;
+
+                @Override
+                public void segment(int index, long offset) {
+                    segment = builder.segment(noteId, index);
+                }
+
+                @Override
+                public void citation(int number, String url, long start, long end) {
+                    builder.cite(segment, url);
+                }
+            });
+        }
+        return builder.build();
+    }
+
+    /** Strips scheme, {@code www.} and trailing slashes; lower-cases the host. */
+    public static String normalize(String url) {
+        String s = url;
+        int scheme = s.indexOf("://");
+        if (scheme >= 0) {
+            s = s.substring(scheme + 3);
+        }
+        if (s.startsWith("www.")) {
+            s = s.substring(4);
+        }
+        while (s.endsWith("/")) {
+            s = s.substring(0, s.length() - 1);
+        }
+        int slash = s.indexOf('/');
+        String host = slash < 0 ? s : s.substring(0, slash);
+        return host.toLowerCase(Locale.ROOT) + (slash < 0 ? "" : s.substring(slash));
+    }
+
+    private static String domain(String normalized) {
+        int slash = normalized.indexOf('/');
+        return slash < 0 ? normalized : normalized.substring(0, slash);
+    }
+
+    public int segmentCount() {
+        return segmentNote.length;
+    }
+
+    public int urlCount() {
+        return urlOffsets.length - 1;
+    }
+
+    public int edgeCount() {
+        return segmentUrls.length;
+    }
+
+    public String note(int segment) {
+        return notes[segmentNote[segment]];
+    }
+
+    public int segmentIndex(int segment) {
+        return segmentIndex[segment];
+    }
+
+    public String url(int id) {
+        return new String(urlBytes, urlOffsets[id], urlOffsets[id + 1] - urlOffsets[id], StandardCharsets.UTF_8);
+    }
+
+    /** URL {@code id} as it was first cited, before normalising. */
+    public String citedUrl(int id) {
+        return cited[id];
+    }
+
+    public String domainOf(int url) {
+        return domains[urlDomain[url]];
+    }
+
+    /** URL ids cited by {@code segment}, ascending. */
+    public int[] urls(int segment) {
+        return Arrays.copyOfRange(segmentUrls, segmentStarts[segment], segmentStarts[segment + 1]);
+    }
+
+    /**
+     * Segments citing any URL that starts with {@code prefix} once both are
+     * normalised, e.g. {@code doc.rust-lang.org/book/ch13}. Ascending ids.
+     */
+    public int[] segmentsCiting(String prefix) {
+        return segmentsCiting(prefix, false);
+    }
+
+    /**
+     * As {@link #segmentsCiting(String)}; with {@code wholeSegments} the
+     * prefix must also end on a path-segment boundary of the URL, so
+     * {@code .../book} matches {@code .../book/ch13} and {@code .../book?x}
+     * but not {@code .../bookshelf}.
+     */
+    public int[] segmentsCiting(String prefix, boolean wholeSegments) {
+        byte[] key = normalize(prefix).getBytes(StandardCharsets.UTF_8);
+        int from = lowerBound(key);
+        int to = from;
+        int matches = 0;
+        int total = 0;
+        for (; to < urlCount() && startsWith(to, key); to++) {
+            if (!wholeSegments || isBoundary(to, key.length)) {
+                matches++;
+                total += urlStarts[to + 1] - urlStarts[to];
+            }
+        }
+        int[] merged = new int[total];
+        int n = 0;
+        for (int url = from; url < to; url++) {
+            if (!wholeSegments || isBoundary(url, key.length)) {
+                int count = urlStarts[url + 1] - urlStarts[url];
+                System.arraycopy(urlSegments, urlStarts[url], merged, n, count);
+                n += count;
+            }
+        }
+        if (matches == 1) {
+            return merged; // one URL's row is already sorted and distinct
+        }
+        Arrays.sort(merged);
+        n = 0;
+        for (int i = 0; i < merged.length; i++) {
+            if (i == 0 || merged[i] != merged[i - 1]) {
+                merged[n++] = merged[i];
+            }
+        }
+        return Arrays.copyOf(merged, n);
+    }
+
+    /** Distinct (segment, URL) citations per domain, most cited first. */
+    public Map<String, Integer> domainCounts() {
+        int[] counts = new int[domains.length];
+        for (int url = 0; url < urlCount(); url++) {
+            counts[urlDomain[url]] += urlStarts[url + 1] - urlStarts[url];
+        }
+        Integer[] order = new Integer[domains.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Integer.compare(counts[b], counts[a]));
+        Map<String, Integer> result = new LinkedHashMap<>();
+        for (int d : order) {
+            result.put(domains[d], counts[d]);
+        }
+        return result;
+    }
+
+    /** Bytes held by the graph's arrays, not counting object headers. */
+    public long footprint() {
+        long bytes = urlBytes.length;
+        for (int[] a : new int[][] {segmentNote, segmentIndex, urlOffsets, urlDomain, segmentStarts, segmentUrls,
+                urlStarts, urlSegments}) {
+            bytes += 4L * a.length;
+        }
+        for (String s : notes) {
+            bytes += s.length();
+        }
+        for (String s : cited) {
+            bytes += s.length();
+        }
+        for (String s : domains) {
+            bytes += s.length();
+        }
+        return bytes;
+    }
+
+    private int lowerBound(byte[] key) {
+        int lo = 0;
+        int hi = urlCount();
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (Arrays.compareUnsigned(urlBytes, urlOffsets[mid], urlOffsets[mid + 1], key, 0, key.length) < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /** True if the URL ends after {@code length} bytes or continues there with a new path segment, query or fragment. */
+    private boolean isBoundary(int url, int length) {
+        int at = urlOffsets[url] + length;
+        if (length == 0 || at == urlOffsets[url + 1]) {
+            return true;
+        }
+        byte next = urlBytes[at];
+        return next == '/' || next == '?' || next == '#';
+    }
+
+    private boolean startsWith(int url, byte[] key) {
+        int start = urlOffsets[url];
+        return urlOffsets[url + 1] - start >= key.length
+                && Arrays.equals(urlBytes, start, start + key.length, key, 0, key.length);
+    }
+
+    /** Collects segments and citation edges in one pass, then freezes them into a graph. */
+    public static final class Builder {
+        private final List<String> notes = new ArrayList<>();
+        private final Map<String, Integer> urlIds = new HashMap<>();
+        private final List<String> cited = new ArrayList<>();
+        private int[] segmentNote = new int[64];
+        private int[] segmentIndex = new int[64];
+        private int segments;
+        private int[] edgeList = new int[256];
+        private int edges;
+
+        public int note(String path) {
+            notes.add(path);
+            return notes.size() - 1;
+        }
+
+        public int segment(int note, int index) {
+            if (segments == segmentNote.length) {
+                segmentNote = Arrays.copyOf(segmentNote, segments * 2);
+                segmentIndex = Arrays.copyOf(segmentIndex, segments * 2);
+            }
+            segmentNote[segments] = note;
+            segmentIndex[segments] = index;
+            return segments++;
+        }
+
+        public void cite(int segment, String url) {
+            int id = urlIds.computeIfAbsent(normalize(url), u -> {
+                cited.add(url);
+                return urlIds.size();
+            });
+            if (edges + 2 > edgeList.length) {
+                edgeList = Arrays.copyOf(edgeList, edgeList.length * 2);
+            }
+            edgeList[edges++] = segment;
+            edgeList[edges++] = id;
+        }
+
+        public CitationGraph build() {
+            return new CitationGraph(this);
+        }
+    }
+
+    /**
+     * {@code CitationGraph <root> [url-prefix [--segments]]}: domain counts,
+     * or the segments citing a prefix, matched on whole path segments with
+     * {@code --segments}.
+     */
+    public static void main(String[] args) throws IOException {
+        CitationGraph graph = build(Paths.get(args[0]));
+        System.out.printf("%d segments, %d urls, %d edges, ~%d bytes%n",
+                graph.segmentCount(), graph.urlCount(), graph.edgeCount(), graph.footprint());
+        if (args.length > 1) {
+            long t0 = System.nanoTime();
+            int[] hits = graph.segmentsCiting(args[1], args.length > 2 && args[2].equals("--segments"));
+            long micros = (System.nanoTime() - t0) / 1000;
+            for (int s : hits) {
+                System.out.printf("  %s #%d%n", graph.note(s), graph.segmentIndex(s));
+            }
+            System.out.printf("%d segments in %d us%n", hits.length, micros);
+        } else {
+            graph.domainCounts().forEach((domain, count) -> System.out.printf("%6d  %s%n", count, domain));
+        }
+    }
+}
@@ -0,0 +1,9 @@
+package notes.cite;
+
+import java.io.IOException;
+
+/** Resolves a URL to an HTTP-style status code. Implementations must be thread-safe. */
+public interface Fetcher {
+
+    int status(String url) throws IOException;
+}
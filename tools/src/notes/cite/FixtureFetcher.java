@@ -0,0 +1,56 @@
+package notes.cite;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Stand-in for {@link HttpFetcher} on machines without a network. Answers
+ * come from a fixture file of {@code <status> <url>} lines; any URL not
+ * listed gets {@link #fallback}. An optional delay per call imitates the
+ * round trip so concurrency and rate limits can be exercised offline.
+ */
+public final class FixtureFetcher implements Fetcher {
+
+    private final Map<String, Integer> statuses;
+    private final int fallback;
+    private final long delayMillis;
+
+    public FixtureFetcher(Map<String, Integer> statuses, int fallback, long delayMillis) {
+        this.statuses = Map.copyOf(statuses);
+        this.fallback = fallback;
+        this.delayMillis = delayMillis;
+    }
+
+    public static FixtureFetcher load(Path fixtures, int fallback, long delayMillis) throws IOException {
+        Map<String, Integer> statuses = new HashMap<>();
+        for (String line : Files.readAllLines(fixtures, StandardCharsets.UTF_8)) {
+            line = line.strip();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            int space = line.indexOf(' ');
+            if (space < 0) {
+                throw new IOException("bad fixture line: " + line);
+            }
+            statuses.put(line.substring(space + 1).strip(), Integer.parseInt(line.substring(0, space)));
+        }
+        return new FixtureFetcher(statuses, fallback, delayMillis);
+    }
+
+    @Override
+    public int status(String url) throws IOException {
+        if (delayMillis > 0) {
+            try {
+                Thread.sleep(delayMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("interrupted checking " + url, e);
+            }
+        }
+        return statuses.getOrDefault(url, fallback);
+    }
+}
@@ -0,0 +1,37 @@
+package notes.cite;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+
+/** Checks URLs over the network with {@code HEAD} requests. */
+public final class HttpFetcher implements Fetcher {
+
+    private final HttpClient client = HttpClient.newBuilder()
+            .connectTimeout(Duration.ofSeconds(10))
+            .followRedirects(HttpClient.Redirect.NORMAL)
+            .build();
+
+    /** Throws {@link IOException} for a URL that cannot be requested at all, such as one with {@code |} or no scheme. */
+    @Override
+    public int status(String url) throws IOException {
+        HttpRequest request;
+        try {
+            request = HttpRequest.newBuilder(URI.create(url))
+                    .method("HEAD", HttpRequest.BodyPublishers.noBody())
+                    .timeout(Duration.ofSeconds(20))
+                    .build();
+        } catch (IllegalArgumentException e) {
+            throw new IOException("malformed url " + url, e);
+        }
+        try {
+            return client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted checking " + url, e);
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package notes.cite;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Persistent cache of link-check results. Entries expire after a TTL and
+ * the least recently used entry is evicted once the cache is full. The
+ * file is plain text, one {@code url TAB status TAB checkedAtMillis} per
+ * line, written atomically on {@link #save()}. All methods are
+ * synchronized.
+ */
+public final class LinkCache {
+
+    private final Path file;
+    private final long ttlMillis;
+    private final int capacity;
+    private final LinkedHashMap<String, Entry> entries;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    public LinkCache(Path file, long ttlMillis, int capacity) throws IOException {
+        this.file = file;
+        this.ttlMillis = ttlMillis;
+        this.capacity = capacity;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                if (size() > LinkCache.this.capacity) {
+                    evictions++;
+                    return true;
+                }
+                return false;
+            }
+        };
+        load();
+    }
+
+    /** The cached status of {@code url}, or -1 if it is missing or older than the TTL. */
+    public synchronized int get(String url, long now) {
+        Entry e = entries.get(url);
+        if (e == null || now - e.checkedAt > ttlMillis) {
+            misses++;
+            return -1;
+        }
+        hits++;
+        return e.status;
+    }
+
+    public synchronized void put(String url, int status, long now) {
+        entries.put(url, new Entry(status, now));
+    }
+
+    public synchronized long hits() {
+        return hits;
+    }
+
+    public synchronized long misses() {
+        return misses;
+    }
+
+    public synchronized long evictions() {
+        return evictions;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /** Writes the unexpired entries, least recently used first so reloading keeps the order. */
+    public synchronized void save() throws IOException {
+        long now = System.currentTimeMillis();
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (BufferedWriter out = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+            for (Map.Entry<String, Entry> e : entries.entrySet()) {
+                if (now - e.getValue().checkedAt <= ttlMillis) {
+                    out.write(e.getKey() + '\t' + e.getValue().status + '\t' + e.getValue().checkedAt);
+                    out.newLine();
+                }
+            }
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private void load() throws IOException {
+        try {
+            for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+                String[] parts = line.split("\t");
+                if (parts.length == 3) {
+                    entries.put(parts[0], new Entry(Integer.parseInt(parts[1]), Long.parseLong(parts[2])));
+                }
+            }
+        } catch (NoSuchFileException e) {
+            // first run
+        }
+    }
+
+    private record Entry(int status, long checkedAt) {
+    }
+}
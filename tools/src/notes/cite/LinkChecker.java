@@ -0,0 +1,160 @@
+package notes.cite;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Checks citation URLs concurrently, going through a {@link LinkCache} so
+ * that a re-run only fetches URLs whose result is missing or stale.
+ *
+ * Each domain gets at most {@code perDomain} requests in flight and its
+ * requests start at least {@code spacingMillis} apart, so one popular
+ * domain (doc.rust-lang.org) is not hammered while others wait.
+ *
+ * The executor is supplied by the caller. A blocking check spends most of
+ * its time waiting, so it suits one thread per task; on JDK 21 that can be
+ * {@code Executors.newVirtualThreadPerTaskExecutor()}, on this JDK it is a
+ * cached pool.
+ */
+public final class LinkChecker {
+
+    private final Fetcher fetcher;
+    private final LinkCache cache;
+    private final ExecutorService executor;
+    private final int perDomain;
+    private final long spacingMillis;
+    private final Map<String, Domain> domains = new ConcurrentHashMap<>();
+
+    public LinkChecker(Fetcher fetcher, LinkCache cache, ExecutorService executor, int perDomain, long spacingMillis) {
+        this.fetcher = fetcher;
+        this.cache = cache;
+        this.executor = executor;
+        this.perDomain = perDomain;
+        this.spacingMillis = spacingMillis;
+    }
+
+    /** Status of every URL, in input order; -1 means the fetch itself failed. */
+    public Map<String, Integer> check(Collection<String> urls) throws IOException {
+        Map<String, Integer> results = new LinkedHashMap<>();
+        List<String> pending = new ArrayList<>();
+        List<Future<Integer>> futures = new ArrayList<>();
+        long now = System.currentTimeMillis();
+        for (String url : urls) {
+            if (results.containsKey(url)) {
+                continue;
+            }
+            int cached = cache.get(url, now);
+            results.put(url, cached);
+            if (cached < 0) {
+                pending.add(url);
+                futures.add(executor.submit(() -> fetch(url)));
+            }
+        }
+        for (int i = 0; i < pending.size(); i++) {
+            try {
+                results.put(pending.get(i), futures.get(i).get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("link check interrupted", e);
+            } catch (ExecutionException e) {
+                throw new IOException("link check failed for " + pending.get(i), e.getCause());
+            }
+        }
+        cache.save();
+        return results;
+    }
+
+    private int fetch(String url) throws InterruptedException {
+        Domain domain = domains.computeIfAbsent(domainOf(url), d -> new Domain(perDomain));
+        domain.permits.acquire();
+        try {
+            domain.awaitTurn(spacingMillis);
+            int status;
+            try {
+                status = fetcher.status(url);
+            } catch (IOException | IllegalArgumentException e) {
+                return -1; // not cached, so the next run tries again; a malformed URL fails only itself
+            }
+            cache.put(url, status, System.currentTimeMillis());
+            return status;
+        } finally {
+            domain.permits.release();
+        }
+    }
+
+    private static String domainOf(String url) {
+        String normalized = CitationGraph.normalize(url);
+        int slash = normalized.indexOf('/');
+        return slash < 0 ? normalized : normalized.substring(0, slash);
+    }
+
+    /** Per-domain limits: concurrent permits and the earliest time the next request may start. */
+    private static final class Domain {
+        final Semaphore permits;
+        private long next;
+
+        Domain(int perDomain) {
+            permits = new Semaphore(perDomain);
+        }
+
+        void awaitTurn(long spacingMillis) throws InterruptedException {
+            long wait;
+            synchronized (this) {
+                long now = System.currentTimeMillis();
+                long start = Math.max(now, next);
+                next = start + spacingMillis;
+                wait = start - now;
+            }
+            if (wait > 0) {
+                Thread.sleep(wait);
+            }
+        }
+    }
+
+    /**
+     * {@code LinkChecker <root> <cache-file> [fixtures]}: checks every cited
+     * URL, against the fixture file when one is given, and reports cache use.
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        CitationGraph graph = CitationGraph.build(Paths.get(args[0]));
+        List<String> urls = new ArrayList<>();
+        for (int i = 0; i < graph.urlCount(); i++) {
+            // the URL as the notes wrote it; the graph's normalised key has lost its scheme, www. and slash
+            String url = graph.citedUrl(i);
+            urls.add(url.contains("://") ? url : "https://" + url);
+        }
+        Fetcher fetcher = args.length > 2
+                ? FixtureFetcher.load(Path.of(args[2]), 200, 20)
+                : new HttpFetcher();
+        LinkCache cache = new LinkCache(Paths.get(args[1]), TimeUnit.DAYS.toMillis(7), 100_000);
+        ExecutorService executor = Executors.newCachedThreadPool();
+        try {
+            long t0 = System.nanoTime();
+            Map<String, Integer> results = new LinkChecker(fetcher, cache, executor, 4, 50).check(urls);
+            long millis = (System.nanoTime() - t0) / 1_000_000;
+            results.forEach((url, status) -> {
+                if (status != 200) {
+                    System.out.printf("%4d  %s%n", status, url);
+                }
+            });
+            System.out.printf("%d urls in %d ms, cache %d hits / %d misses%n",
+                    results.size(), millis, cache.hits(), cache.misses());
+        } finally {
+            executor.shutdown();
+            executor.awaitTermination(1, TimeUnit.MINUTES);
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package notes.collect;
+
+import java.security.SecureRandom;
+
+/**
+ * SipHash-2-4 over the UTF-16 code units of the text, keyed with 128 bits,
+ * as rust's default {@code HashMap} hasher. Without the key an attacker
+ * cannot pick keys that collide, so a map fed untrusted words cannot be
+ * pushed into long probe runs. Costs about three times {@link FastHasher}.
+ */
+public final class SipHasher implements StringHasher {
+
+    private final long k0;
+    private final long k1;
+
+    public SipHasher(long k0, long k1) {
+        this.k0 = k0;
+        this.k1 = k1;
+    }
+
+    /** A hasher with a key drawn from {@link SecureRandom}. */
+    public static SipHasher random() {
+        SecureRandom random = new SecureRandom();
+        return new SipHasher(random.nextLong(), random.nextLong());
+    }
+
+    @Override
+    public long hash(CharSequence text, int from, int to) {
+        long v0 = k0 ^ 0x736f6d6570736575L;
+        long v1 = k1 ^ 0x646f72616e646f6dL;
+        long v2 = k0 ^ 0x6c7967656e657261L;
+        long v3 = k1 ^ 0x7465646279746573L;
+        int words = (to - from) / 4;
+        // blocks 0..words-1 are four chars each, little-endian; block words is the
+        // tail with the byte length on top; block words + 1 is the finalization
+        for (int b = 0; b <= words + 1; b++) {
+            long m = 0;
+            int rounds = 2;
+            if (b < words) {
+                int i = from + b * 4;
+                m = text.charAt(i) | (long) text.charAt(i + 1) << 16 | (long) text.charAt(i + 2) << 32
+                        | (long) text.charAt(i + 3) << 48;
+            } else if (b == words) {
+                m = (long) ((to - from) * 2) << 56;
+                for (int i = from + words * 4, shift = 0; i < to; i++, shift += 16) {
+                    m |= (long) text.charAt(i) << shift;
+                }
+            } else {
+                v2 ^= 0xff;
+                rounds = 4;
+            }
+            v3 ^= m;
+            for (int r = 0; r < rounds; r++) {
+                v0 += v1;
+                v1 = Long.rotateLeft(v1, 13);
+                v1 ^= v0;
+                v0 = Long.rotateLeft(v0, 32);
+                v2 += v3;
+                v3 = Long.rotateLeft(v3, 16);
+                v3 ^= v2;
+                v0 += v3;
+                v3 = Long.rotateLeft(v3, 21);
+                v3 ^= v0;
+                v2 += v1;
+                v1 = Long.rotateLeft(v1, 17);
+                v1 ^= v2;
+                v2 = Long.rotateLeft(v2, 32);
+            }
+            v0 ^= m;
+        }
+        return v0 ^ v1 ^ v2 ^ v3;
+    }
+}
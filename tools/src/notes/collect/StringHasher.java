@@ -0,0 +1,12 @@
+package notes.collect;
+
+/**
+ * Hashes a range of characters for {@link StringIntMap} and
+ * {@link StringLongMap}. Equal ranges must hash equally whatever text they
+ * come from, so a word can be looked up without first copying it into a
+ * {@code String}. Implementations must be thread-safe.
+ */
+public interface StringHasher {
+
+    long hash(CharSequence text, int from, int to);
+}
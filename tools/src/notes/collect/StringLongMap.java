@@ -0,0 +1,263 @@
+package notes.collect;
+
+import java.util.Arrays;
+import java.util.function.LongSupplier;
+import java.util.function.LongUnaryOperator;
+import java.util.function.ObjLongConsumer;
+
+/**
+ * An open-addressing map from strings to unboxed {@code long}s; see
+ * {@link StringIntMap}, of which this is the {@code long} copy.
+ */
+public final class StringLongMap {
+
+    private static final int MIN_CAPACITY = 8;
+
+    private final StringHasher hasher;
+    private final Entry entry = new Entry();
+    private String[] keys;
+    private long[] values;
+    private long[] hashes;
+    private int mask;
+    private int size;
+    private int threshold;
+
+    public StringLongMap(StringHasher hasher) {
+        this(hasher, MIN_CAPACITY);
+    }
+
+    /** A map that holds {@code expected} keys without resizing. */
+    public StringLongMap(StringHasher hasher, int expected) {
+        this.hasher = hasher;
+        allocate(Math.max(MIN_CAPACITY, Integer.highestOneBit(Math.max(expected, 1) * 4 / 3 * 2 - 1)));
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public Entry entry(CharSequence key) {
+        return entry(key, 0, key.length());
+    }
+
+    /** The entry for the key {@code text[from, to)}, occupied or not. */
+    public Entry entry(CharSequence text, int from, int to) {
+        if (size >= threshold) {
+            resize(keys.length * 2);
+        }
+        long hash = hasher.hash(text, from, to);
+        entry.slot = probe(hash, text, from, to);
+        entry.hash = hash;
+        entry.text = text;
+        entry.from = from;
+        entry.to = to;
+        return entry;
+    }
+
+    public boolean containsKey(CharSequence key) {
+        return keys[probe(hasher.hash(key, 0, key.length()), key, 0, key.length())] != null;
+    }
+
+    /** The value for {@code key}, or {@code fallback} if it is absent. */
+    public long getOr(CharSequence key, long fallback) {
+        int slot = probe(hasher.hash(key, 0, key.length()), key, 0, key.length());
+        return keys[slot] != null ? values[slot] : fallback;
+    }
+
+    /** Sets the value for {@code key}; returns the previous one, or {@code fallback} if it was absent. */
+    public long put(CharSequence key, long value, long fallback) {
+        Entry e = entry(key);
+        long old = e.isOccupied() ? e.get() : fallback;
+        e.insert(value);
+        return old;
+    }
+
+    /** Removes {@code key}; returns its value, or {@code fallback} if it was absent. */
+    public long remove(CharSequence key, long fallback) {
+        Entry e = entry(key);
+        return e.isOccupied() ? e.remove() : fallback;
+    }
+
+    public void clear() {
+        Arrays.fill(keys, null);
+        size = 0;
+    }
+
+    public void forEach(ObjLongConsumer<String> action) {
+        for (int slot = 0; slot < keys.length; slot++) {
+            if (keys[slot] != null) {
+                action.accept(keys[slot], values[slot]);
+            }
+        }
+    }
+
+    /** The slot holding the key, or the empty slot where it would go. */
+    private int probe(long hash, CharSequence text, int from, int to) {
+        int slot = (int) hash & mask;
+        while (true) {
+            String key = keys[slot];
+            if (key == null || hashes[slot] == hash && matches(key, text, from, to)) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    private static boolean matches(String key, CharSequence text, int from, int to) {
+        if (key.length() != to - from) {
+            return false;
+        }
+        for (int i = 0; i < key.length(); i++) {
+            if (key.charAt(i) != text.charAt(from + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void allocate(int capacity) {
+        keys = new String[capacity];
+        values = new long[capacity];
+        hashes = new long[capacity];
+        mask = capacity - 1;
+        threshold = capacity / 4 * 3;
+    }
+
+    private void resize(int capacity) {
+        String[] oldKeys = keys;
+        long[] oldValues = values;
+        long[] oldHashes = hashes;
+        allocate(capacity);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != null) {
+                int slot = (int) oldHashes[i] & mask;
+                while (keys[slot] != null) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+                hashes[slot] = oldHashes[i];
+            }
+        }
+    }
+
+    /** Empties {@code slot} and shifts back any later key of the run that would no longer be found. */
+    private void delete(int slot) {
+        int hole = slot;
+        int next = (slot + 1) & mask;
+        while (keys[next] != null) {
+            int home = (int) hashes[next] & mask;
+            // move next into the hole unless its home lies cyclically in (hole, next]
+            if (((next - home) & mask) >= ((next - hole) & mask)) {
+                keys[hole] = keys[next];
+                values[hole] = values[next];
+                hashes[hole] = hashes[next];
+                hole = next;
+            }
+            next = (next + 1) & mask;
+        }
+        keys[hole] = null;
+        size--;
+    }
+
+    /**
+     * A key's slot, found by {@link #entry}: occupied if the key is in the
+     * map, vacant otherwise. Inserting into a vacant entry fills the slot
+     * the probe already found.
+     */
+    public final class Entry {
+        private int slot;
+        private long hash;
+        private CharSequence text;
+        private int from;
+        private int to;
+
+        private Entry() {
+        }
+
+        public boolean isOccupied() {
+            return keys[slot] != null;
+        }
+
+        public String key() {
+            String key = keys[slot];
+            return key != null ? key : text.subSequence(from, to).toString();
+        }
+
+        /** The value; throws {@link IllegalStateException} if the entry is vacant. */
+        public long get() {
+            checkOccupied();
+            return values[slot];
+        }
+
+        /** Inserts {@code value} if the entry is vacant. */
+        public Entry orInsert(long value) {
+            if (keys[slot] == null) {
+                fill(value);
+            }
+            return this;
+        }
+
+        public Entry orInsertWith(LongSupplier value) {
+            if (keys[slot] == null) {
+                fill(value.getAsLong());
+            }
+            return this;
+        }
+
+        /** Applies {@code f} to the value if the entry is occupied. */
+        public Entry andModify(LongUnaryOperator f) {
+            if (keys[slot] != null) {
+                values[slot] = f.applyAsLong(values[slot]);
+            }
+            return this;
+        }
+
+        /** Adds {@code delta} to the value and returns the sum, as {@code *e += delta}. */
+        public long add(long delta) {
+            checkOccupied();
+            return values[slot] += delta;
+        }
+
+        /** Sets the value, inserting the key if the entry is vacant. */
+        public void insert(long value) {
+            if (keys[slot] == null) {
+                fill(value);
+            } else {
+                values[slot] = value;
+            }
+        }
+
+        /** Removes the key and returns its value; the entry is vacant afterwards. */
+        public long remove() {
+            checkOccupied();
+            long value = values[slot];
+            String key = keys[slot];
+            delete(slot);
+            // the run may have shifted; find where the removed key would now go
+            slot = probe(hash, key, 0, key.length());
+            text = key;
+            from = 0;
+            to = key.length();
+            return value;
+        }
+
+        private void fill(long value) {
+            keys[slot] = text.subSequence(from, to).toString();
+            values[slot] = value;
+            hashes[slot] = hash;
+            size++;
+            // the next entry() resizes if this reached the threshold, so the slot stays valid until then
+        }
+
+        private void checkOccupied() {
+            if (keys[slot] == null) {
+                throw new IllegalStateException("vacant entry");
+            }
+        }
+    }
+}
@@ -0,0 +1,205 @@
+package notes.collect;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.function.DoubleConsumer;
+
+/**
+ * A growable array of {@code double}, after rust's {@code Vec<f64>}; see
+ * {@link VecI32}, of which this is the {@code double} copy.
+ */
+public final class VecF64 {
+
+    private static final double[] EMPTY = {};
+    private static final int MIN_CAPACITY = 4;
+
+    private double[] data;
+    private int size;
+
+    public VecF64() {
+        data = EMPTY;
+    }
+
+    public VecF64(int capacity) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("capacity " + capacity);
+        }
+        data = capacity == 0 ? EMPTY : new double[capacity];
+    }
+
+    public static VecF64 of(double... values) {
+        VecF64 vec = new VecF64(values.length);
+        System.arraycopy(values, 0, vec.data, 0, values.length);
+        vec.size = values.length;
+        return vec;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int capacity() {
+        return data.length;
+    }
+
+    public void push(double value) {
+        if (size == data.length) {
+            grow(size + 1);
+        }
+        data[size++] = value;
+    }
+
+    /** Removes and returns the last element; throws {@link NoSuchElementException} if empty. */
+    public double pop() {
+        if (size == 0) {
+            throw new NoSuchElementException("pop from an empty vector");
+        }
+        return data[--size];
+    }
+
+    /** Removes and returns the last element, or returns {@code fallback} if empty. */
+    public double popOr(double fallback) {
+        return size == 0 ? fallback : data[--size];
+    }
+
+    public double get(int index) {
+        return data[checkIndex(index)];
+    }
+
+    /** The element at {@code index}, or {@code fallback} if it is out of bounds. */
+    public double getOr(int index, double fallback) {
+        return index >= 0 && index < size ? data[index] : fallback;
+    }
+
+    /** Replaces the element at {@code index}; returns the old one. */
+    public double set(int index, double value) {
+        double old = data[checkIndex(index)];
+        data[index] = value;
+        return old;
+    }
+
+    /** Inserts at {@code index}, shifting the tail right; O(n). */
+    public void insert(int index, double value) {
+        if (index < 0 || index > size) {
+            throw new IndexOutOfBoundsException("index " + index + ", size " + size);
+        }
+        if (size == data.length) {
+            grow(size + 1);
+        }
+        System.arraycopy(data, index, data, index + 1, size - index);
+        data[index] = value;
+        size++;
+    }
+
+    /** Removes the element at {@code index}, shifting the tail left; O(n). */
+    public double remove(int index) {
+        double old = data[checkIndex(index)];
+        System.arraycopy(data, index + 1, data, index, size - index - 1);
+        size--;
+        return old;
+    }
+
+    /** Removes the element at {@code index}, moving the last element into its place; O(1). */
+    public double swapRemove(int index) {
+        double old = data[checkIndex(index)];
+        data[index] = data[--size];
+        return old;
+    }
+
+    /** Makes room for at least {@code additional} more elements without growing again. */
+    public void reserve(int additional) {
+        if (additional > data.length - size) {
+            grow(size + additional);
+        }
+    }
+
+    public void shrinkToFit() {
+        if (size < data.length) {
+            data = size == 0 ? EMPTY : Arrays.copyOf(data, size);
+        }
+    }
+
+    /** Keeps the first {@code length} elements; does nothing if there are fewer. */
+    public void truncate(int length) {
+        if (length < size) {
+            size = Math.max(length, 0);
+        }
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    public boolean contains(double value) {
+        return indexOf(value) >= 0;
+    }
+
+    public int indexOf(double value) {
+        for (int i = 0; i < size; i++) {
+            if (data[i] == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    public void sort() {
+        Arrays.sort(data, 0, size);
+    }
+
+    public void forEach(DoubleConsumer action) {
+        for (int i = 0; i < size; i++) {
+            action.accept(data[i]);
+        }
+    }
+
+    public double[] toArray() {
+        return Arrays.copyOf(data, size);
+    }
+
+    private int checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("index " + index + ", size " + size);
+        }
+        return index;
+    }
+
+    private void grow(int minCapacity) {
+        if (minCapacity < 0) {
+            throw new OutOfMemoryError("vector too large");
+        }
+        int capacity = Math.max(Math.max(data.length * 2, MIN_CAPACITY), minCapacity);
+        // doubling past the largest array size falls back to the exact request
+        data = Arrays.copyOf(data, capacity < 0 ? minCapacity : capacity);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof VecF64 other && Arrays.equals(data, 0, size, other.data, 0, other.size);
+    }
+
+    @Override
+    public int hashCode() {
+        int h = 1;
+        for (int i = 0; i < size; i++) {
+            h = 31 * h + Double.hashCode(data[i]);
+        }
+        return h;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder s = new StringBuilder("[");
+        for (int i = 0; i < size; i++) {
+            if (i > 0) {
+                s.append(", ");
+            }
+            s.append(data[i]);
+        }
+        return s.append(']').toString();
+    }
+}
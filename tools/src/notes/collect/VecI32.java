@@ -0,0 +1,218 @@
+package notes.collect;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.function.IntConsumer;
+
+/**
+ * A growable array of {@code int}, after rust's {@code Vec<i32>}: elements
+ * live unboxed in one {@code int[]} and nothing is allocated per element.
+ *
+ * Capacity doubles when full, so {@link #push} is amortised O(1);
+ * {@link #reserve} grows it up front when the final size is known.
+ * {@link #remove} and {@link #insert} shift the tail and are O(n);
+ * {@link #swapRemove} moves the last element into the hole instead and is
+ * O(1) when order does not matter. {@link #get} is bounds-checked against
+ * the length, not the capacity, and {@link #getOr} is the form of rust's
+ * {@code get(i).unwrap_or(x)} that never throws. There is no drop: a
+ * vector that is no longer referenced is collected, and {@link #clear}
+ * keeps the capacity for reuse. Not thread-safe.
+ *
+ * {@link VecI64} and {@link VecF64} are the same class for {@code long}
+ * and {@code double}.
+ */
+public final class VecI32 {
+
+    private static final int[] EMPTY = {};
+    private static final int MIN_CAPACITY = 4;
+
+    private int[] data;
+    private int size;
+
+    public VecI32() {
+        data = EMPTY;
+    }
+
+    public VecI32(int capacity) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("capacity " + capacity);
+        }
+        data = capacity == 0 ? EMPTY : new int[capacity];
+    }
+
+    public static VecI32 of(int... values) {
+        VecI32 vec = new VecI32(values.length);
+        System.arraycopy(values, 0, vec.data, 0, values.length);
+        vec.size = values.length;
+        return vec;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int capacity() {
+        return data.length;
+    }
+
+    public void push(int value) {
+        if (size == data.length) {
+            grow(size + 1);
+        }
+        data[size++] = value;
+    }
+
+    /** Removes and returns the last element; throws {@link NoSuchElementException} if empty. */
+    public int pop() {
+        if (size == 0) {
+            throw new NoSuchElementException("pop from an empty vector");
+        }
+        return data[--size];
+    }
+
+    /** Removes and returns the last element, or returns {@code fallback} if empty. */
+    public int popOr(int fallback) {
+        return size == 0 ? fallback : data[--size];
+    }
+
+    public int get(int index) {
+        return data[checkIndex(index)];
+    }
+
+    /** The element at {@code index}, or {@code fallback} if it is out of bounds. */
+    public int getOr(int index, int fallback) {
+        return index >= 0 && index < size ? data[index] : fallback;
+    }
+
+    /** Replaces the element at {@code index}; returns the old one. */
+    public int set(int index, int value) {
+        int old = data[checkIndex(index)];
+        data[index] = value;
+        return old;
+    }
+
+    /** Inserts at {@code index}, shifting the tail right; O(n). */
+    public void insert(int index, int value) {
+        if (index < 0 || index > size) {
+            throw new IndexOutOfBoundsException("index " + index + ", size " + size);
+        }
+        if (size == data.length) {
+            grow(size + 1);
+        }
+        System.arraycopy(data, index, data, index + 1, size - index);
+        data[index] = value;
+        size++;
+    }
+
+    /** Removes the element at {@code index}, shifting the tail left; O(n). */
+    public int remove(int index) {
+        int old = data[checkIndex(index)];
+        System.arraycopy(data, index + 1, data, index, size - index - 1);
+        size--;
+        return old;
+    }
+
+    /** Removes the element at {@code index}, moving the last element into its place; O(1). */
+    public int swapRemove(int index) {
+        int old = data[checkIndex(index)];
+        data[index] = data[--size];
+        return old;
+    }
+
+    /** Makes room for at least {@code additional} more elements without growing again. */
+    public void reserve(int additional) {
+        if (additional > data.length - size) {
+            grow(size + additional);
+        }
+    }
+
+    public void shrinkToFit() {
+        if (size < data.length) {
+            data = size == 0 ? EMPTY : Arrays.copyOf(data, size);
+        }
+    }
+
+    /** Keeps the first {@code length} elements; does nothing if there are fewer. */
+    public void truncate(int length) {
+        if (length < size) {
+            size = Math.max(length, 0);
+        }
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    public boolean contains(int value) {
+        return indexOf(value) >= 0;
+    }
+
+    public int indexOf(int value) {
+        for (int i = 0; i < size; i++) {
+            if (data[i] == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    public void sort() {
+        Arrays.sort(data, 0, size);
+    }
+
+    public void forEach(IntConsumer action) {
+        for (int i = 0; i < size; i++) {
+            action.accept(data[i]);
+        }
+    }
+
+    public int[] toArray() {
+        return Arrays.copyOf(data, size);
+    }
+
+    private int checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("index " + index + ", size " + size);
+        }
+        return index;
+    }
+
+    private void grow(int minCapacity) {
+        if (minCapacity < 0) {
+            throw new OutOfMemoryError("vector too large");
+        }
+        int capacity = Math.max(Math.max(data.length * 2, MIN_CAPACITY), minCapacity);
+        // doubling past the largest array size falls back to the exact request
+        data = Arrays.copyOf(data, capacity < 0 ? minCapacity : capacity);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof VecI32 other && Arrays.equals(data, 0, size, other.data, 0, other.size);
+    }
+
+    @Override
+    public int hashCode() {
+        int h = 1;
+        for (int i = 0; i < size; i++) {
+            h = 31 * h + Integer.hashCode(data[i]);
+        }
+        return h;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder s = new StringBuilder("[");
+        for (int i = 0; i < size; i++) {
+            if (i > 0) {
+                s.append(", ");
+            }
+            s.append(data[i]);
+        }
+        return s.append(']').toString();
+    }
+}
@@ -0,0 +1,210 @@
+package notes.complete;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Weighted prefix completion over a file written by {@link CompletionWriter}.
+ *
+ * Entries are stored sorted (ASCII case folded), so the entries starting
+ * with a prefix form one contiguous range found by two binary searches.
+ * The heaviest entries of that range come out of a segment tree of
+ * arg-max indexes: take the range maximum, then split the range around it
+ * and repeat, which costs {@code O(k log n)} however large the range is.
+ *
+ * Everything is read from the memory-mapped file, so opening is
+ * instant and the structure is shared through the page cache. Safe to
+ * share between threads.
+ */
+public final class Completer implements AutoCloseable {
+
+    private final FileChannel channel;
+    private final MappedByteBuffer map;
+    private final int count;
+    private final int treeSize;
+    private final int offsetsAt;
+    private final int weightsAt;
+    private final int treeAt;
+    private final int textAt;
+
+    public Completer(Path file) throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.READ);
+        map = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        if (map.getInt(0) != CompletionWriter.MAGIC || map.getInt(4) != CompletionWriter.VERSION) {
+            channel.close();
+            throw new IOException("not a completion file: " + file);
+        }
+        count = map.getInt(8);
+        treeSize = map.getInt(12);
+        offsetsAt = CompletionWriter.HEADER;
+        weightsAt = offsetsAt + (count + 1) * 4;
+        treeAt = weightsAt + count * 4;
+        textAt = treeAt + 2 * treeSize * 4;
+    }
+
+    public int size() {
+        return count;
+    }
+
+    /** Up to {@code k} entries starting with {@code prefix} (ASCII case ignored), heaviest first. */
+    public List<Completion> complete(String prefix, int k) {
+        byte[] key = prefix.getBytes(StandardCharsets.UTF_8);
+        int lo = bound(key, false);
+        int hi = bound(key, true);
+        List<Completion> out = new ArrayList<>(Math.min(k, Math.max(0, hi - lo)));
+        if (lo >= hi || k <= 0) {
+            return out;
+        }
+        // each element is {from, to, best}: a sub-range and the index of its heaviest entry
+        PriorityQueue<int[]> queue = new PriorityQueue<>(2 * k + 2, (a, b) -> Integer.compare(weight(b[2]), weight(a[2])));
+        queue.add(new int[] {lo, hi, argmax(lo, hi)});
+        while (!queue.isEmpty() && out.size() < k) {
+            int[] range = queue.poll();
+            int best = range[2];
+            out.add(new Completion(entry(best), weight(best)));
+            if (range[0] < best) {
+                queue.add(new int[] {range[0], best, argmax(range[0], best)});
+            }
+            if (best + 1 < range[1]) {
+                queue.add(new int[] {best + 1, range[1], argmax(best + 1, range[1])});
+            }
+        }
+        return out;
+    }
+
+    /** Index of the heaviest entry in {@code [from, to)}, walking the tree bottom-up. */
+    private int argmax(int from, int to) {
+        int best = -1;
+        int l = from + treeSize;
+        int r = to + treeSize;
+        while (l < r) {
+            if ((l & 1) == 1) {
+                best = heavier(best, node(l++));
+            }
+            if ((r & 1) == 1) {
+                best = heavier(best, node(--r));
+            }
+            l >>>= 1;
+            r >>>= 1;
+        }
+        return best;
+    }
+
+    private int heavier(int a, int b) {
+        if (a < 0) {
+            return b;
+        }
+        if (b < 0) {
+            return a;
+        }
+        int wa = weight(a);
+        int wb = weight(b);
+        return wb > wa || (wb == wa && b < a) ? b : a;
+    }
+
+    /**
+     * First index whose entry is not below {@code key} ({@code upper} false),
+     * or first index whose entry is above every string starting with
+     * {@code key} ({@code upper} true).
+     */
+    private int bound(byte[] key, boolean upper) {
+        int lo = 0;
+        int hi = count;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            int start = offset(mid);
+            int len = offset(mid + 1) - start;
+            int cmp = upper
+                    ? compare(start, Math.min(len, key.length), key)
+                    : compare(start, len, key);
+            if (cmp < 0 || (upper && cmp == 0)) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    private int compare(int start, int len, byte[] key) {
+        int n = Math.min(len, key.length);
+        for (int i = 0; i < n; i++) {
+            int c = fold(map.get(textAt + start + i)) - fold(key[i]);
+            if (c != 0) {
+                return c;
+            }
+        }
+        return len - key.length;
+    }
+
+    /** Sort order of entries: bytes compared unsigned with ASCII letters folded to lower case. */
+    static int compare(byte[] a, int aFrom, int aTo, byte[] b, int bFrom, int bTo) {
+        int n = Math.min(aTo - aFrom, bTo - bFrom);
+        for (int i = 0; i < n; i++) {
+            int c = fold(a[aFrom + i]) - fold(b[bFrom + i]);
+            if (c != 0) {
+                return c;
+            }
+        }
+        int c = (aTo - aFrom) - (bTo - bFrom);
+        // equal when folded: fall back to raw bytes so the order is total
+        return c != 0 ? c : Arrays.compareUnsigned(a, aFrom, aTo, b, bFrom, bTo);
+    }
+
+    private static int fold(byte b) {
+        int c = b & 0xff;
+        return c >= 'A' && c <= 'Z' ? c + 32 : c;
+    }
+
+    private int offset(int i) {
+        return map.getInt(offsetsAt + i * 4);
+    }
+
+    private int weight(int i) {
+        return map.getInt(weightsAt + i * 4);
+    }
+
+    private int node(int i) {
+        return map.getInt(treeAt + i * 4);
+    }
+
+    private String entry(int i) {
+        int start = offset(i);
+        byte[] bytes = new byte[offset(i + 1) - start];
+        map.get(textAt + start, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    public record Completion(String text, int weight) {
+    }
+
+    /** {@code Completer <root> <file> <prefix>...}: builds the file, then completes each prefix. */
+    public static void main(String[] args) throws IOException {
+        Path file = Paths.get(args[1]);
+        CompletionWriter writer = CompletionWriter.fromCorpus(Paths.get(args[0]));
+        writer.write(file);
+        try (Completer completer = new Completer(file)) {
+            System.out.printf("%d entries%n", completer.size());
+            for (int i = 2; i < args.length; i++) {
+                long t0 = System.nanoTime();
+                List<Completion> completions = completer.complete(args[i], 8);
+                long nanos = System.nanoTime() - t0;
+                System.out.printf("%s (%d ns): %s%n", args[i], nanos, completions);
+            }
+        }
+    }
+}
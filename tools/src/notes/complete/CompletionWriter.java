@@ -0,0 +1,180 @@
+package notes.complete;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import notes.corpus.NoteHandler;
+import notes.corpus.NoteWalker;
+import notes.corpus.SegmentParser;
+import notes.syntax.RustLexer;
+
+/**
+ * Collects completion entries and writes the file read by {@link Completer}.
+ *
+ * Entries are note headings and, from rust fences, identifiers, paths
+ * such as {@code HashMap::entry} and {@code impl Trait} phrases; each is
+ * weighted by how often it occurs. Fences are read with {@link RustLexer},
+ * so words inside comments and string literals are not counted. Not
+ * thread-safe.
+ *
+ * <pre>
+ * header   int magic, int version, int count, int treeSize
+ * offsets  int[count + 1] into the text blob
+ * weights  int[count]
+ * tree     int[2 * treeSize] segment tree, index of the heaviest entry per node
+ * text     UTF-8 entries, sorted by {@link Completer#compare}
+ * </pre>
+ */
+public final class CompletionWriter {
+
+    static final int MAGIC = 0x4e434d50; // "NCMP"
+    static final int VERSION = 1;
+    static final int HEADER = 4 * 4;
+
+    private final Map<String, Integer> weights = new HashMap<>();
+    private final RustLexer lexer = new RustLexer();
+    private final RustLexer.Tokens tokens = new RustLexer.Tokens();
+
+    public void add(String entry, int weight) {
+        String e = entry.strip();
+        if (!e.isEmpty() && e.length() <= 200) {
+            weights.merge(e, weight, Integer::sum);
+        }
+    }
+
+    /** Adds identifiers, paths and {@code impl} phrases found in {@code code}; comments and literals are skipped. */
+    public void addCode(String code) {
+        lexer.lex(code, tokens);
+        int n = tokens.size();
+        for (int i = 0; i < n; i++) {
+            int kind = tokens.kind(i);
+            if (kind == RustLexer.KEYWORD && tokens.is(i, code, "impl")) {
+                int j = i + 1;
+                if (j < n && tokens.is(j, code, "<")) {
+                    // skip the impl's own generics, e.g. impl<T: Display>
+                    int depth = 0;
+                    for (; j < n; j++) {
+                        depth += tokens.is(j, code, "<") ? 1 : tokens.is(j, code, ">") ? -1
+                                : tokens.is(j, code, ">>") ? -2 : 0;
+                        if (depth <= 0) {
+                            j++;
+                            break;
+                        }
+                    }
+                }
+                if (j < n && tokens.kind(j) == RustLexer.IDENT && Character.isUpperCase(code.charAt(tokens.start(j)))) {
+                    add("impl " + text(code, j), 1);
+                }
+            } else if (kind == RustLexer.IDENT || kind == RustLexer.KEYWORD) {
+                // the longest path starting here, e.g. std::collections::HashMap
+                int j = i;
+                while (j + 2 < n && tokens.is(j + 1, code, "::") && tokens.kind(j + 2) <= RustLexer.KEYWORD) {
+                    j += 2;
+                }
+                if (j > i && (i == 0 || !tokens.is(i - 1, code, "::"))) {
+                    add(code.substring(tokens.start(i), tokens.end(j)), 1);
+                }
+            }
+            if (kind == RustLexer.IDENT && tokens.end(i) - tokens.start(i) > 1) {
+                add(text(code, i), 1);
+            }
+        }
+    }
+
+    private String text(String code, int token) {
+        return code.substring(tokens.start(token), tokens.end(token));
+    }
+
+    /** Headings and rust identifiers from every note under {@code root}. */
+    public static CompletionWriter fromCorpus(Path root) throws IOException {
+        CompletionWriter writer = new CompletionWriter();
+        SegmentParser parser = new SegmentParser();
+        for (NoteWalker.NoteRef note : new NoteWalker(root).notes()) {
+            byte[] bytes = Files.readAllBytes(note.path());
+            parser.parse(note.path(), new NoteHandler() {
+                @Override
+                public void heading(int level, String text, long start, long end) {
+                    writer.add(text.replace("*", "").replace("`", "").replaceAll(":$", ""), 4);
+                }
+
+                @Override
+                public void fence(String language, long start, long end, long codeStart, long codeEnd) {
+                    if (language.equals("rust")) {
+                        writer.addCode(new String(bytes, (int) codeStart, (int) (codeEnd - codeStart),
+                                StandardCharsets.UTF_8));
+                    }
+                }
+            });
+        }
+        return writer;
+    }
+
+    public int size() {
+        return weights.size();
+    }
+
+    public void write(Path target) throws IOException {
+        List<byte[]> entries = new ArrayList<>();
+        for (String e : weights.keySet()) {
+            entries.add(e.getBytes(StandardCharsets.UTF_8));
+        }
+        entries.sort((a, b) -> Completer.compare(a, 0, a.length, b, 0, b.length));
+        int n = entries.size();
+        int[] weight = new int[n];
+        for (int i = 0; i < n; i++) {
+            weight[i] = weights.get(new String(entries.get(i), StandardCharsets.UTF_8));
+        }
+        int size = Integer.highestOneBit(Math.max(1, n) * 2 - 1);
+        int[] tree = new int[2 * size];
+        for (int i = 0; i < size; i++) {
+            tree[size + i] = i < n ? i : -1;
+        }
+        for (int i = size - 1; i >= 1; i--) {
+            tree[i] = heavier(tree[2 * i], tree[2 * i + 1], weight);
+        }
+
+        Path tmp = target.resolveSibling(target.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(n);
+            out.writeInt(size);
+            int offset = 0;
+            for (byte[] e : entries) {
+                out.writeInt(offset);
+                offset += e.length;
+            }
+            out.writeInt(offset);
+            for (int w : weight) {
+                out.writeInt(w);
+            }
+            for (int t : tree) {
+                out.writeInt(t);
+            }
+            for (byte[] e : entries) {
+                out.write(e);
+            }
+        }
+        Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /** The heavier of two entry indexes; ties go to the earlier (alphabetically first) entry. */
+    static int heavier(int a, int b, int[] weight) {
+        if (a < 0) {
+            return b;
+        }
+        if (b < 0) {
+            return a;
+        }
+        return weight[b] > weight[a] ? b : a;
+    }
+}
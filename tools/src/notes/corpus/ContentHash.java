@@ -0,0 +1,32 @@
+package notes.corpus;
+
+/**
+ * 64-bit FNV-1a over raw bytes. Used to fingerprint notes and answer
+ * segments so unchanged content can be recognised without comparing it.
+ */
+public final class ContentHash {
+
+    private static final long OFFSET = 0xcbf29ce484222325L;
+    private static final long PRIME = 0x100000001b3L;
+
+    private ContentHash() {
+    }
+
+    public static long of(byte[] bytes) {
+        return of(bytes, 0, bytes.length);
+    }
+
+    public static long of(byte[] bytes, int from, int to) {
+        long h = OFFSET;
+        for (int i = from; i < to; i++) {
+            h ^= bytes[i] & 0xff;
+            h *= PRIME;
+        }
+        return h;
+    }
+
+    public static String hex(long hash) {
+        String s = Long.toHexString(hash);
+        return "0".repeat(16 - s.length()) + s;
+    }
+}
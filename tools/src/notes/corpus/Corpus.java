@@ -0,0 +1,80 @@
+package notes.corpus;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The note files under the repository root. Notes are Markdown saved with a
+ * {@code .java} extension (one lost its tail and ends in {@code .ja}); the
+ * {@code tools} tree and hidden directories are not part of the corpus.
+ */
+public final class Corpus {
+
+    private Corpus() {
+    }
+
+    public static boolean isNote(Path relative) {
+        if (relative.getNameCount() == 0) {
+            return false;
+        }
+        String top = relative.getName(0).toString();
+        if (top.equals("tools") || top.startsWith(".")) {
+            return false;
+        }
+        String name = relative.getFileName().toString();
+        return name.endsWith(".java") || name.endsWith(".ja");
+    }
+
+    /** All notes under {@code root}, sorted by path so runs are reproducible. */
+    public static List<Path> notes(Path root) throws IOException {
+        List<Path> notes = new ArrayList<>();
+        new NoteWalker(root).walk(note -> notes.add(note.path()));
+        Collections.sort(notes);
+        return notes;
+    }
+
+    /** Parses every note and prints event counts and the time taken. */
+    public static void main(String[] args) throws IOException {
+        Path root = Paths.get(args.length > 0 ? args[0] : ".");
+        List<Path> notes = notes(root);
+        long[] counts = new long[5];
+        NoteHandler counter = new NoteHandler() {
+            @Override
+            public void segment(int index, long offset) {
+                counts[0]++;
+            }
+
+            @Override
+            public void heading(int level, String text, long start, long end) {
+                counts[1]++;
+            }
+
+            @Override
+            public void fence(String language, long start, long end, long codeStart, long codeEnd) {
+                counts[2]++;
+            }
+
+            @Override
+            public void citation(int number, String url, long start, long end) {
+                counts[3]++;
+            }
+
+            @Override
+            public void prose(long start, long end) {
+                counts[4]++;
+            }
+        };
+        SegmentParser parser = new SegmentParser();
+        long t0 = System.nanoTime();
+        for (Path note : notes) {
+            parser.parse(note, counter);
+        }
+        long micros = (System.nanoTime() - t0) / 1000;
+        System.out.printf("%d notes in %d us: %d segments, %d headings, %d fences, %d citations, %d prose runs%n",
+                notes.size(), micros, counts[0], counts[1], counts[2], counts[3], counts[4]);
+    }
+}
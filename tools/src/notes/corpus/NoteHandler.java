@@ -0,0 +1,40 @@
+package notes.corpus;
+
+/**
+ * Receives the events emitted by {@link SegmentParser} while it streams
+ * through one note. All offsets are byte offsets into the note file; end
+ * offsets are exclusive.
+ *
+ * Every method has an empty default so a handler only overrides the events
+ * it cares about.
+ */
+public interface NoteHandler {
+
+    /** A new answer segment starts at {@code offset}. Segment 0 always starts at 0. */
+    default void segment(int index, long offset) {
+    }
+
+    /** A {@code #}-style heading line; {@code text} has the hashes and spaces stripped. */
+    default void heading(int level, String text, long start, long end) {
+    }
+
+    /**
+     * A fenced code block. {@code start}/{@code end} cover the fence lines
+     * themselves, {@code codeStart}/{@code codeEnd} only the code between them.
+     * {@code language} is empty for a bare fence.
+     */
+    default void fence(String language, long start, long end, long codeStart, long codeEnd) {
+    }
+
+    /** A {@code [Source N](url)} citation outside of fenced code. */
+    default void citation(int number, String url, long start, long end) {
+    }
+
+    /** A run of consecutive non-blank prose lines. */
+    default void prose(long start, long end) {
+    }
+
+    /** The end of the note, {@code length} bytes in. */
+    default void end(long length) {
+    }
+}
@@ -0,0 +1,177 @@
+package notes.corpus;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Walks the note tree with NIO and hands each note to a callback as it is
+ * found. Folder names here contain spaces, commas, {@code ::}, {@code <T>},
+ * {@code &} and even a trailing space; they are only ever handled as
+ * {@link Path} elements, never split or quoted as strings.
+ *
+ * Each folder that holds notes is a topic. The walker gives it a dense
+ * {@code int} id for array indexing and a {@code long} key derived from
+ * its relative path alone, so the key is the same across runs and
+ * machines. Topic paths and file names are interned, so repeated walks
+ * reuse the same strings and downstream code can store the ids instead.
+ *
+ * A walker is not thread-safe, but its {@link Topic}s are immutable.
+ */
+public final class NoteWalker {
+
+    private final Path root;
+    private final Map<Path, Topic> topics = new HashMap<>();
+    private final List<Topic> byId = new ArrayList<>();
+    private final Map<String, String> names = new HashMap<>();
+
+    public NoteWalker(Path root) {
+        this.root = root;
+    }
+
+    public Path root() {
+        return root;
+    }
+
+    /**
+     * Streams every note under the root to {@code sink}. Notes of one folder
+     * arrive together and sorted; a folder's notes follow those of its
+     * subfolders.
+     */
+    public void walk(Consumer<NoteRef> sink) throws IOException {
+        Files.walkFileTree(root, new SimpleFileVisitor<>() {
+            // notes of each open directory, deepest last
+            private final Deque<List<Path>> open = new ArrayDeque<>();
+
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                if (!dir.equals(root)) {
+                    String top = root.relativize(dir).getName(0).toString();
+                    if (top.equals("tools") || top.startsWith(".")) {
+                        return FileVisitResult.SKIP_SUBTREE;
+                    }
+                }
+                open.push(new ArrayList<>());
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                if (attrs.isRegularFile() && Corpus.isNote(root.relativize(file))) {
+                    open.peek().add(file);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path dir, IOException e) throws IOException {
+                if (e != null) {
+                    throw e;
+                }
+                List<Path> files = open.pop();
+                if (!files.isEmpty()) {
+                    Collections.sort(files);
+                    Topic topic = topic(root.relativize(dir));
+                    for (Path file : files) {
+                        sink.accept(new NoteRef(topic, intern(file.getFileName().toString()), file));
+                    }
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    /** All notes, collected; prefer {@link #walk} when a stream will do. */
+    public List<NoteRef> notes() throws IOException {
+        List<NoteRef> notes = new ArrayList<>();
+        walk(notes::add);
+        return notes;
+    }
+
+    /** The topic with dense id {@code id}, as assigned during walks. */
+    public Topic topic(int id) {
+        return byId.get(id);
+    }
+
+    public int topicCount() {
+        return byId.size();
+    }
+
+    private Topic topic(Path relative) {
+        Topic topic = topics.get(relative);
+        if (topic == null) {
+            StringBuilder joined = new StringBuilder();
+            for (Path name : relative) {
+                if (joined.length() > 0) {
+                    joined.append('/');
+                }
+                joined.append(name);
+            }
+            String path = intern(joined.toString());
+            topic = new Topic(byId.size(), ContentHash.of(path.getBytes(StandardCharsets.UTF_8)), path);
+            topics.put(relative, topic);
+            byId.add(topic);
+        }
+        return topic;
+    }
+
+    private String intern(String s) {
+        String known = names.putIfAbsent(s, s);
+        return known == null ? s : known;
+    }
+
+    /**
+     * A folder of notes. {@code path} is relative to the root, joined with
+     * {@code /} on every platform, and empty for notes at the top level;
+     * {@code key} is a hash of it.
+     */
+    public record Topic(int id, long key, String path) {
+    }
+
+    /** A note found by the walker. */
+    public record NoteRef(Topic topic, String name, Path path) {
+
+        /** Path relative to the walk root, joined with {@code /}. */
+        public String relative() {
+            return topic.path().isEmpty() ? name : topic.path() + '/' + name;
+        }
+    }
+
+    /** {@code NoteWalker [root]}: a {@code wc}-style listing that survives the folder names. */
+    public static void main(String[] args) throws IOException {
+        NoteWalker walker = new NoteWalker(Paths.get(args.length > 0 ? args[0] : "."));
+        long[] totals = new long[3];
+        walker.walk(note -> {
+            try {
+                byte[] bytes = Files.readAllBytes(note.path());
+                long lines = 0;
+                for (byte b : bytes) {
+                    if (b == '\n') {
+                        lines++;
+                    }
+                }
+                totals[0]++;
+                totals[1] += lines;
+                totals[2] += bytes.length;
+                System.out.printf("%7d %8d  [%016x] %s%n", lines, bytes.length, note.topic().key(), note.relative());
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        System.out.printf("%7d %8d  %d notes in %d topics%n", totals[1], totals[2], totals[0], walker.topicCount());
+    }
+}
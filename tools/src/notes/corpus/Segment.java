@@ -0,0 +1,11 @@
+package notes.corpus;
+
+import java.nio.file.Path;
+
+/** One answer inside a note: bytes {@code [start, end)} of {@code note}. */
+public record Segment(Path note, int index, int start, int end) {
+
+    public int length() {
+        return end - start;
+    }
+}
@@ -0,0 +1,222 @@
+package notes.corpus;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Single-pass parser for the notes. Each note is a handful of answers
+ * pasted one after another and separated by a long line of dashes; inside
+ * an answer there are headings, fenced code blocks, {@code [Source N](url)}
+ * citations and plain prose.
+ *
+ * The parser reads the file through one fixed read buffer and one line
+ * buffer, so memory use does not depend on the size of the note. Lines
+ * longer than {@link #MAX_LINE} bytes are still counted but only their
+ * first {@code MAX_LINE} bytes are looked at.
+ *
+ * A parser instance keeps its buffers between calls and is not thread-safe;
+ * use one per thread.
+ */
+public final class SegmentParser {
+
+    /** Dash lines at least this long split answers; shorter ones are Markdown rules. */
+    public static final int SEPARATOR_MIN = 20;
+
+    public static final int MAX_LINE = 1 << 16;
+
+    private static final byte[] SOURCE = "[Source ".getBytes(StandardCharsets.US_ASCII);
+
+    private final byte[] read = new byte[1 << 16];
+    private byte[] line = new byte[256];
+
+    // per-note state
+    private NoteHandler handler;
+    private int lineLength;
+    private long lineStart;
+    private int segment;
+    private long proseStart;
+    private long proseEnd;
+    private int fenceTicks;
+    private String fenceLanguage;
+    private long fenceStart;
+    private long codeStart;
+
+    public void parse(Path note, NoteHandler handler) throws IOException {
+        try (InputStream in = Files.newInputStream(note)) {
+            parse(in, handler);
+        }
+    }
+
+    public void parse(InputStream in, NoteHandler handler) throws IOException {
+        this.handler = handler;
+        lineLength = 0;
+        lineStart = 0;
+        segment = 0;
+        proseStart = -1;
+        fenceTicks = 0;
+        handler.segment(0, 0);
+
+        long offset = 0;
+        int n;
+        while ((n = in.read(read)) > 0) {
+            for (int i = 0; i < n; i++) {
+                byte b = read[i];
+                offset++;
+                if (b == '\n') {
+                    line(offset);
+                    lineStart = offset;
+                    lineLength = 0;
+                } else if (lineLength < MAX_LINE) {
+                    append(b);
+                }
+            }
+        }
+        if (offset > lineStart) {
+            line(offset);
+        }
+        if (fenceTicks > 0) {
+            // unterminated fence: report it up to the end of the file
+            handler.fence(fenceLanguage, fenceStart, offset, codeStart, offset);
+            fenceTicks = 0;
+        }
+        flushProse();
+        handler.end(offset);
+        this.handler = null;
+    }
+
+    private void append(byte b) {
+        if (lineLength == line.length) {
+            byte[] grown = new byte[Math.min(line.length * 2, MAX_LINE)];
+            System.arraycopy(line, 0, grown, 0, lineLength);
+            line = grown;
+        }
+        line[lineLength++] = b;
+    }
+
+    /** Handles the line in {@code line[0, lineLength)}, which ends at {@code end}. */
+    private void line(long end) {
+        int len = lineLength;
+        if (len > 0 && line[len - 1] == '\r') {
+            len--;
+        }
+        int first = skipSpaces(0, len);
+        int ticks = run(first, len, (byte) '`');
+
+        if (fenceTicks > 0) {
+            if (ticks >= fenceTicks && skipSpaces(first + ticks, len) == len) {
+                handler.fence(fenceLanguage, fenceStart, end, codeStart, lineStart);
+                fenceTicks = 0;
+            }
+            return;
+        }
+        if (ticks >= 3) {
+            flushProse();
+            fenceTicks = ticks;
+            fenceLanguage = ascii(skipSpaces(first + ticks, len), trimEnd(len));
+            fenceStart = lineStart;
+            codeStart = end;
+            return;
+        }
+        if (first == len) {
+            flushProse();
+            return;
+        }
+        int dashes = run(first, len, (byte) '-');
+        if (dashes >= SEPARATOR_MIN && skipSpaces(first + dashes, len) == len) {
+            flushProse();
+            handler.segment(++segment, end);
+            return;
+        }
+        int hashes = run(first, len, (byte) '#');
+        if (hashes >= 1 && hashes <= 6 && (first + hashes == len || line[first + hashes] == ' ')) {
+            flushProse();
+            int from = skipSpaces(first + hashes, len);
+            handler.heading(hashes, utf8(from, trimEnd(len)), lineStart, end);
+            return;
+        }
+        if (proseStart < 0) {
+            proseStart = lineStart;
+        }
+        proseEnd = end;
+        citations(len);
+    }
+
+    private void citations(int len) {
+        int i = 0;
+        while ((i = indexOf(SOURCE, i, len)) >= 0) {
+            int p = i + SOURCE.length;
+            int number = 0;
+            int digits = 0;
+            while (p < len && line[p] >= '0' && line[p] <= '9' && digits < 9) {
+                number = number * 10 + (line[p++] - '0');
+                digits++;
+            }
+            if (digits > 0 && p + 1 < len && line[p] == ']' && line[p + 1] == '(') {
+                int urlStart = p + 2;
+                int close = urlStart;
+                while (close < len && line[close] != ')' && line[close] != ' ') {
+                    close++;
+                }
+                if (close < len && line[close] == ')') {
+                    handler.citation(number, utf8(urlStart, close), lineStart + i, lineStart + close + 1);
+                    i = close + 1;
+                    continue;
+                }
+            }
+            i = p;
+        }
+    }
+
+    private void flushProse() {
+        if (proseStart >= 0) {
+            handler.prose(proseStart, proseEnd);
+            proseStart = -1;
+        }
+    }
+
+    private int indexOf(byte[] needle, int from, int len) {
+        outer:
+        for (int i = from; i <= len - needle.length; i++) {
+            for (int j = 0; j < needle.length; j++) {
+                if (line[i + j] != needle[j]) {
+                    continue outer;
+                }
+            }
+            return i;
+        }
+        return -1;
+    }
+
+    private int skipSpaces(int from, int len) {
+        while (from < len && (line[from] == ' ' || line[from] == '\t')) {
+            from++;
+        }
+        return from;
+    }
+
+    private int trimEnd(int len) {
+        while (len > 0 && (line[len - 1] == ' ' || line[len - 1] == '\t')) {
+            len--;
+        }
+        return len;
+    }
+
+    private int run(int from, int len, byte b) {
+        int i = from;
+        while (i < len && line[i] == b) {
+            i++;
+        }
+        return i - from;
+    }
+
+    private String ascii(int from, int to) {
+        return from >= to ? "" : new String(line, from, to - from, StandardCharsets.US_ASCII);
+    }
+
+    private String utf8(int from, int to) {
+        return from >= to ? "" : new String(line, from, to - from, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,33 @@
+package notes.corpus;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/** Splits a note into its answer segments using {@link SegmentParser}. */
+public final class Segments {
+
+    private Segments() {
+    }
+
+    public static List<Segment> of(Path note, SegmentParser parser) throws IOException {
+        List<Segment> segments = new ArrayList<>();
+        long[] start = {0};
+        parser.parse(note, new NoteHandler() {
+            @Override
+            public void segment(int index, long offset) {
+                if (index > 0) {
+                    segments.add(new Segment(note, index - 1, (int) start[0], (int) offset));
+                }
+                start[0] = offset;
+            }
+
+            @Override
+            public void end(long length) {
+                segments.add(new Segment(note, segments.size(), (int) start[0], (int) length));
+            }
+        });
+        return segments;
+    }
+}
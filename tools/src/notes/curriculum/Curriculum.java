@@ -0,0 +1,503 @@
+package notes.curriculum;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import notes.corpus.NoteWalker;
+import notes.index.Tokenizer;
+
+/**
+ * Reading order for the notes, as a dependency DAG over notes.
+ *
+ * Edges come from two places. Inside a topic folder, numeric prefixes
+ * ({@code 1_}, {@code 1.1_}, {@code 2_}) put notes in a chain, unprefixed
+ * notes follow the folder's first note, and a subfolder's first note
+ * follows its parent folder's first note; notes at the root, outside any
+ * topic folder, get no such edges. Across topics, a note depends on
+ * another topic when it mentions that topic's name words at least
+ * {@link #MIN_MENTIONS} times on average and the other topic mentions this
+ * one less, relative to length. Each note keeps the {@link #MAX_TOPICS}
+ * such topics it mentions with the most weight, where a word counts
+ * {@code 1 + ln count} times its inverse document frequency: a word most
+ * notes use, such as "function" or "string", weighs little however often
+ * one note repeats it, so it does not crowd out "ownership". An edge
+ * that would close a cycle is dropped, so the strongest links win.
+ *
+ * For every note the closure of its prerequisites is kept as a bitmap
+ * over note ids, so {@link #isPrerequisite} is one bit test and
+ * {@link #prerequisiteCount} a popcount. {@link #update} re-reads one
+ * note, rebuilds the edges from the cached per-note word counts and
+ * recomputes the bitmaps only of notes whose prerequisites can have
+ * changed. Not thread-safe.
+ */
+public final class Curriculum {
+
+    static final int MIN_MENTIONS = 3;
+    static final int MAX_TOPICS = 3;
+
+    private static final Pattern PREFIX = Pattern.compile("^(\\d+(?:\\.\\d+)*)[_ ]");
+    private static final Set<String> STOP = Set.of("a", "an", "and", "are", "c", "due", "e", "for", "in", "into",
+            "is", "of", "or", "rust", "t", "the", "to", "vs", "with");
+
+    private final Path root;
+    private final List<String> notes = new ArrayList<>();
+    private final Map<String, Integer> ids = new HashMap<>();
+    private final List<String> topics = new ArrayList<>();
+    private int[] topicOf;
+    /** Distinct words of all topic names, and each topic's words as indexes into it. */
+    private String[] words;
+    private int[][] topicWords;
+    /** First note of each topic in prefix order. */
+    private int[] entry;
+    /** Per note: how often it uses each of {@link #words}, and its length in terms. */
+    private int[][] counts;
+    private int[] lengths;
+
+    private int[][] parents;
+    private int[] order;
+    private long[][] ancestors;
+
+    private Curriculum(Path root) {
+        this.root = root;
+    }
+
+    public static Curriculum build(Path root) throws IOException {
+        Curriculum c = new Curriculum(root);
+        c.load();
+        return c;
+    }
+
+    private void load() throws IOException {
+        notes.clear();
+        ids.clear();
+        topics.clear();
+        List<NoteWalker.NoteRef> refs = new NoteWalker(root).notes();
+        refs.sort(Comparator.comparing((NoteWalker.NoteRef r) -> r.topic().path())
+                .thenComparing(r -> r.name(), Curriculum::comparePrefixed));
+        Map<String, Integer> topicIds = new LinkedHashMap<>();
+        topicOf = new int[refs.size()];
+        for (NoteWalker.NoteRef ref : refs) {
+            int id = notes.size();
+            notes.add(ref.relative());
+            ids.put(ref.relative(), id);
+            topicOf[id] = topicIds.computeIfAbsent(ref.topic().path(), p -> {
+                topics.add(p);
+                return topics.size() - 1;
+            });
+        }
+        entry = new int[topics.size()];
+        Arrays.fill(entry, -1);
+        Map<String, Integer> wordIds = new LinkedHashMap<>();
+        topicWords = new int[topics.size()][];
+        for (int t = 0; t < topics.size(); t++) {
+            String path = topics.get(t);
+            String name = path.substring(path.lastIndexOf('/') + 1).replace('_', ' ');
+            Set<Integer> mine = new LinkedHashSet<>();
+            Tokenizer.tokenize(name, (term, position) -> {
+                if (term.length() > 1 && !STOP.contains(term)) {
+                    mine.add(wordIds.computeIfAbsent(singular(term), w -> wordIds.size()));
+                }
+            });
+            topicWords[t] = mine.stream().mapToInt(Integer::intValue).toArray();
+        }
+        words = wordIds.keySet().toArray(new String[0]);
+        for (int i = notes.size() - 1; i >= 0; i--) {
+            entry[topicOf[i]] = i;
+        }
+        counts = new int[notes.size()][];
+        lengths = new int[notes.size()];
+        for (int i = 0; i < notes.size(); i++) {
+            read(i);
+        }
+        parents = edges();
+        order = topological(parents);
+        ancestors = new long[notes.size()][];
+        BitSet all = new BitSet();
+        all.set(0, notes.size());
+        closure(all);
+    }
+
+    /**
+     * Re-reads {@code note} (relative, {@code /}-separated) and brings the
+     * DAG and closures up to date. A note that was added or removed makes
+     * the whole tree be re-read. Returns true if any prerequisites changed.
+     */
+    public boolean update(String note) throws IOException {
+        Integer id = ids.get(note);
+        if (id == null || !Files.isRegularFile(root.resolve(note))) {
+            int[][] before = parents;
+            List<String> names = new ArrayList<>(notes);
+            load();
+            return !names.equals(notes) || !Arrays.deepEquals(before, parents);
+        }
+        read(id);
+        int[][] next = edges();
+        BitSet changed = new BitSet();
+        for (int i = 0; i < next.length; i++) {
+            if (!Arrays.equals(next[i], parents[i])) {
+                changed.set(i);
+            }
+        }
+        if (changed.isEmpty()) {
+            return false;
+        }
+        parents = next;
+        order = topological(parents);
+        // a note's closure depends only on its ancestors, so only the changed notes and their descendants move
+        List<List<Integer>> children = children(parents);
+        Deque<Integer> stack = new ArrayDeque<>();
+        changed.stream().forEach(stack::push);
+        BitSet affected = new BitSet();
+        while (!stack.isEmpty()) {
+            int v = stack.pop();
+            if (!affected.get(v)) {
+                affected.set(v);
+                children.get(v).forEach(stack::push);
+            }
+        }
+        closure(affected);
+        return true;
+    }
+
+    /** True if {@code candidate} should be read before {@code note}. Constant time. */
+    public boolean isPrerequisite(String candidate, String note) {
+        int c = id(candidate);
+        return (ancestors[id(note)][c >>> 6] & (1L << c)) != 0;
+    }
+
+    public int prerequisiteCount(String note) {
+        int n = 0;
+        for (long word : ancestors[id(note)]) {
+            n += Long.bitCount(word);
+        }
+        return n;
+    }
+
+    /** Everything to read before {@code note}, in learning order. */
+    public List<String> prerequisites(String note) {
+        long[] bits = ancestors[id(note)];
+        List<String> out = new ArrayList<>();
+        for (int v : order) {
+            if ((bits[v >>> 6] & (1L << v)) != 0) {
+                out.add(notes.get(v));
+            }
+        }
+        return out;
+    }
+
+    /** The direct prerequisites of {@code note}. */
+    public List<String> dependsOn(String note) {
+        List<String> out = new ArrayList<>();
+        for (int p : parents[id(note)]) {
+            out.add(notes.get(p));
+        }
+        return out;
+    }
+
+    /** Every note in an order that respects all prerequisites; ties keep topic and prefix order. */
+    public List<String> learningPath() {
+        List<String> out = new ArrayList<>(order.length);
+        for (int v : order) {
+            out.add(notes.get(v));
+        }
+        return out;
+    }
+
+    private int id(String note) {
+        Integer id = ids.get(note);
+        if (id == null) {
+            throw new IllegalArgumentException("unknown note: " + note);
+        }
+        return id;
+    }
+
+    /** Counts, for note {@code id}, how often it uses each topic name word. */
+    private void read(int id) throws IOException {
+        String text = Files.readString(root.resolve(notes.get(id)), StandardCharsets.UTF_8);
+        Map<String, Integer> terms = new HashMap<>();
+        lengths[id] = Tokenizer.tokenize(text, (term, position) -> terms.merge(singular(term), 1, Integer::sum));
+        int[] c = new int[words.length];
+        for (int w = 0; w < words.length; w++) {
+            c[w] = terms.getOrDefault(words[w], 0);
+        }
+        counts[id] = c;
+    }
+
+    /** Inverse document frequency of each of {@link #words} over the notes; 0 for words no note uses. */
+    private double[] idf() {
+        int n = notes.size();
+        double[] idf = new double[words.length];
+        for (int w = 0; w < words.length; w++) {
+            int df = 0;
+            for (int i = 0; i < n; i++) {
+                if (counts[i][w] > 0) {
+                    df++;
+                }
+            }
+            idf[w] = df == 0 ? 0 : Math.log((double) n / df);
+        }
+        return idf;
+    }
+
+    /**
+     * How often note {@code i} mentions topic {@code t}, averaged over the
+     * words of its name. With {@code idf}, each count is damped to
+     * {@code 1 + ln count} and weighted by the word's inverse document
+     * frequency; without, it is taken as is. A note does not mention its own topic.
+     */
+    private double mention(int i, int t, double[] idf) {
+        if (t == topicOf[i] || topicWords[t].length == 0) {
+            return 0;
+        }
+        double sum = 0;
+        for (int w : topicWords[t]) {
+            int count = counts[i][w];
+            if (idf == null) {
+                sum += count;
+            } else if (count > 0) {
+                sum += (1 + Math.log(count)) * idf[w];
+            }
+        }
+        return sum / topicWords[t].length;
+    }
+
+    /** Parent lists, sorted ascending, from prefixes and from the cached word counts. */
+    private int[][] edges() {
+        int n = notes.size();
+        int topicCount = topics.size();
+        List<List<Integer>> lists = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            lists.add(new ArrayList<>());
+        }
+        for (int i = 0; i < n; i++) {
+            int t = topicOf[i];
+            if (topics.get(t).isEmpty()) {
+                continue; // notes at the root share no folder, so their names say nothing about order
+            }
+            if (i == entry[t]) {
+                int parent = parentTopic(t);
+                if (parent >= 0) {
+                    lists.get(i).add(entry[parent]);
+                }
+            } else if (prefix(notes.get(i)) != null && prefix(notes.get(i - 1)) != null) {
+                lists.get(i).add(i - 1);
+            } else {
+                lists.get(i).add(entry[t]);
+            }
+        }
+
+        double[] idf = idf();
+        double[][] mentions = new double[n][topicCount];
+        double[][] weights = new double[n][topicCount];
+        double[] mentioned = new double[topicCount * topicCount];
+        long[] length = new long[topicCount];
+        for (int i = 0; i < n; i++) {
+            length[topicOf[i]] += lengths[i];
+            for (int t = 0; t < topicCount; t++) {
+                mentions[i][t] = mention(i, t, null);
+                weights[i][t] = mention(i, t, idf);
+                mentioned[topicOf[i] * topicCount + t] += mentions[i][t];
+            }
+        }
+        // candidate cross-topic edges as {note, topic}, heaviest first
+        List<int[]> candidates = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            int a = topicOf[i];
+            double[] weight = weights[i];
+            List<int[]> mine = new ArrayList<>();
+            for (int b = 0; b < topicCount; b++) {
+                if (mentions[i][b] >= MIN_MENTIONS && entry[b] != i
+                        && mentioned[a * topicCount + b] * length[b] > mentioned[b * topicCount + a] * length[a]) {
+                    mine.add(new int[] {i, b});
+                }
+            }
+            mine.sort((x, y) -> Double.compare(weight[y[1]], weight[x[1]]));
+            candidates.addAll(mine.subList(0, Math.min(MAX_TOPICS, mine.size())));
+        }
+        candidates.sort((x, y) -> {
+            int c = Double.compare(weights[y[0]][y[1]], weights[x[0]][x[1]]);
+            return c != 0 ? c : x[0] != y[0] ? Integer.compare(x[0], y[0]) : Integer.compare(x[1], y[1]);
+        });
+        List<List<Integer>> children = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            children.add(new ArrayList<>());
+        }
+        for (int i = 0; i < n; i++) {
+            for (int p : lists.get(i)) {
+                children.get(p).add(i);
+            }
+        }
+        for (int[] c : candidates) {
+            int note = c[0];
+            int from = entry[c[1]];
+            if (!lists.get(note).contains(from) && !reaches(children, note, from)) {
+                lists.get(note).add(from);
+                children.get(from).add(note);
+            }
+        }
+        int[][] out = new int[n][];
+        for (int i = 0; i < n; i++) {
+            out[i] = lists.get(i).stream().mapToInt(Integer::intValue).sorted().toArray();
+        }
+        return out;
+    }
+
+    /** The closest enclosing folder that is itself a topic, or -1. */
+    private int parentTopic(int t) {
+        String path = topics.get(t);
+        for (int slash = path.lastIndexOf('/'); slash > 0; slash = path.lastIndexOf('/', slash - 1)) {
+            int parent = topics.indexOf(path.substring(0, slash));
+            if (parent >= 0) {
+                return parent;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean reaches(List<List<Integer>> children, int from, int to) {
+        BitSet seen = new BitSet();
+        Deque<Integer> stack = new ArrayDeque<>();
+        stack.push(from);
+        while (!stack.isEmpty()) {
+            int v = stack.pop();
+            if (v == to) {
+                return true;
+            }
+            if (!seen.get(v)) {
+                seen.set(v);
+                children.get(v).forEach(stack::push);
+            }
+        }
+        return false;
+    }
+
+    private static List<List<Integer>> children(int[][] parents) {
+        List<List<Integer>> children = new ArrayList<>(parents.length);
+        for (int i = 0; i < parents.length; i++) {
+            children.add(new ArrayList<>());
+        }
+        for (int i = 0; i < parents.length; i++) {
+            for (int p : parents[i]) {
+                children.get(p).add(i);
+            }
+        }
+        return children;
+    }
+
+    /** Kahn's algorithm, taking the lowest ready id first so topic and prefix order survive. */
+    private static int[] topological(int[][] parents) {
+        int n = parents.length;
+        int[] pending = new int[n];
+        List<List<Integer>> children = children(parents);
+        PriorityQueue<Integer> ready = new PriorityQueue<>();
+        for (int i = 0; i < n; i++) {
+            pending[i] = parents[i].length;
+            if (pending[i] == 0) {
+                ready.add(i);
+            }
+        }
+        int[] order = new int[n];
+        int k = 0;
+        while (!ready.isEmpty()) {
+            int v = ready.poll();
+            order[k++] = v;
+            for (int c : children.get(v)) {
+                if (--pending[c] == 0) {
+                    ready.add(c);
+                }
+            }
+        }
+        if (k != n) {
+            throw new IllegalStateException("prerequisite cycle");
+        }
+        return order;
+    }
+
+    /** Recomputes the ancestor bitmaps of {@code affected}, parents before children. */
+    private void closure(BitSet affected) {
+        int words = (notes.size() + 63) >>> 6;
+        for (int v : order) {
+            if (!affected.get(v)) {
+                continue;
+            }
+            long[] bits = new long[words];
+            for (int p : parents[v]) {
+                long[] up = ancestors[p];
+                for (int w = 0; w < words; w++) {
+                    bits[w] |= up[w];
+                }
+                bits[p >>> 6] |= 1L << p;
+            }
+            ancestors[v] = bits;
+        }
+    }
+
+    /** Notes with a numeric prefix sort by it, numerically and part by part, before unprefixed ones. */
+    static int comparePrefixed(String a, String b) {
+        int[] pa = prefix(a);
+        int[] pb = prefix(b);
+        if (pa == null || pb == null) {
+            return pa != null ? -1 : pb != null ? 1 : a.compareTo(b);
+        }
+        int c = Arrays.compare(pa, pb);
+        return c != 0 ? c : a.compareTo(b);
+    }
+
+    private static int[] prefix(String note) {
+        Matcher m = PREFIX.matcher(note.substring(note.lastIndexOf('/') + 1));
+        if (!m.find()) {
+            return null;
+        }
+        return Arrays.stream(m.group(1).split("\\.")).mapToInt(Integer::parseInt).toArray();
+    }
+
+    private static String singular(String term) {
+        return term.length() > 4 && term.endsWith("s") && !term.endsWith("ss")
+                ? term.substring(0, term.length() - 1) : term;
+    }
+
+    /**
+     * {@code Curriculum <root> [note]}: prints the learning path, or what to
+     * read before {@code note}.
+     */
+    public static void main(String[] args) throws IOException {
+        long t0 = System.nanoTime();
+        Curriculum c = build(Paths.get(args[0]));
+        long t1 = System.nanoTime();
+        if (args.length > 1) {
+            System.out.printf("before %s (%d, direct %s):%n", args[1], c.prerequisiteCount(args[1]),
+                    c.dependsOn(args[1]));
+            for (String note : c.prerequisites(args[1])) {
+                System.out.println("  " + note);
+            }
+            long t2 = System.nanoTime();
+            boolean changed = c.update(args[1]);
+            System.out.printf("update %s: %s in %d us%n", args[1], changed ? "changed" : "unchanged",
+                    (System.nanoTime() - t2) / 1000);
+        } else {
+            List<String> path = c.learningPath();
+            for (int i = 0; i < path.size(); i++) {
+                System.out.printf("%3d  %s  <- %s%n", i + 1, path.get(i), c.dependsOn(path.get(i)));
+            }
+        }
+        System.out.printf("built in %d ms%n", (t1 - t0) / 1_000_000);
+    }
+}
@@ -0,0 +1,350 @@
+package notes.index;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import notes.corpus.Corpus;
+import notes.corpus.NoteHandler;
+import notes.corpus.SegmentParser;
+
+/**
+ * Trigram index over the fenced {@code rust} blocks of the corpus.
+ *
+ * Every block is broken into overlapping three-character grams. A
+ * substring query needs all of its grams, so intersecting their block
+ * lists gives a small candidate set and only those blocks are searched.
+ * For a regex the literal runs that every match must contain are pulled
+ * out of the pattern and used the same way; a pattern with no usable
+ * literal (an alternation, say) falls back to checking every block.
+ *
+ * The gram table is a sorted {@code long[]} of keys with the block ids
+ * stored back to back in one {@code int[]}, so a lookup is one binary
+ * search and no boxing.
+ */
+public final class CodeIndex {
+
+    private final List<Block> blocks;
+    private final long[] grams;
+    private final int[] starts;
+    private final int[] ids;
+
+    private CodeIndex(List<Block> blocks) {
+        this.blocks = blocks;
+        Map<Long, WriterList> table = new HashMap<>();
+        for (int id = 0; id < blocks.size(); id++) {
+            String code = blocks.get(id).code;
+            for (int i = 0; i + 3 <= code.length(); i++) {
+                WriterList list = table.computeIfAbsent(gram(code, i), g -> new WriterList());
+                if (list.last != id) {
+                    list.add(id);
+                }
+            }
+        }
+        grams = new long[table.size()];
+        int g = 0;
+        for (long key : table.keySet()) {
+            grams[g++] = key;
+        }
+        Arrays.sort(grams);
+        starts = new int[grams.length + 1];
+        int total = 0;
+        for (int i = 0; i < grams.length; i++) {
+            starts[i] = total;
+            total += table.get(grams[i]).size;
+        }
+        starts[grams.length] = total;
+        ids = new int[total];
+        for (int i = 0; i < grams.length; i++) {
+            WriterList list = table.get(grams[i]);
+            System.arraycopy(list.data, 0, ids, starts[i], list.size);
+        }
+    }
+
+    /** Indexes the {@code rust} fences of every note under {@code root}. */
+    public static CodeIndex build(Path root) throws IOException {
+        List<Block> blocks = new ArrayList<>();
+        SegmentParser parser = new SegmentParser();
+        for (Path note : Corpus.notes(root)) {
+            byte[] bytes = Files.readAllBytes(note);
+            String name = root.relativize(note).toString();
+            parser.parse(note, new NoteHandler() {
+                @Override
+                public void fence(String language, long start, long end, long codeStart, long codeEnd) {
+                    if (language.equals("rust")) {
+                        String code = new String(bytes, (int) codeStart, (int) (codeEnd - codeStart), StandardCharsets.UTF_8);
+                        blocks.add(new Block(name, (int) codeStart, (int) codeEnd, code));
+                    }
+                }
+            });
+        }
+        return new CodeIndex(blocks);
+    }
+
+    public int blockCount() {
+        return blocks.size();
+    }
+
+    public List<Block> blocks() {
+        return blocks;
+    }
+
+    /** Blocks containing {@code literal} verbatim. */
+    public List<Match> contains(String literal) {
+        return search(Pattern.compile(Pattern.quote(literal)), new String[] {literal});
+    }
+
+    /** Blocks matching {@code regex} (Java syntax), first match per block. */
+    public List<Match> search(String regex) {
+        return search(Pattern.compile(regex), literals(regex));
+    }
+
+    private List<Match> search(Pattern pattern, String[] literals) {
+        int[] candidates = null;
+        for (String literal : literals) {
+            for (int i = 0; i + 3 <= literal.length(); i++) {
+                int g = Arrays.binarySearch(grams, gram(literal, i));
+                if (g < 0) {
+                    return List.of();
+                }
+                candidates = candidates == null
+                        ? Arrays.copyOfRange(ids, starts[g], starts[g + 1])
+                        : intersect(candidates, starts[g], starts[g + 1]);
+                if (candidates.length == 0) {
+                    return List.of();
+                }
+            }
+        }
+        List<Match> matches = new ArrayList<>();
+        int n = candidates == null ? blocks.size() : candidates.length;
+        for (int c = 0; c < n; c++) {
+            Block block = blocks.get(candidates == null ? c : candidates[c]);
+            Matcher m = pattern.matcher(block.code);
+            if (m.find()) {
+                matches.add(new Match(block, m.start(), m.end()));
+            }
+        }
+        return matches;
+    }
+
+    private int[] intersect(int[] a, int from, int to) {
+        int[] out = new int[Math.min(a.length, to - from)];
+        int n = 0;
+        int i = 0;
+        int j = from;
+        while (i < a.length && j < to) {
+            if (a[i] < ids[j]) {
+                i++;
+            } else if (a[i] > ids[j]) {
+                j++;
+            } else {
+                out[n++] = a[i];
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(out, n);
+    }
+
+    private static long gram(CharSequence s, int i) {
+        return (long) s.charAt(i) << 32 | (long) s.charAt(i + 1) << 16 | s.charAt(i + 2);
+    }
+
+    /**
+     * Literal runs that any match of {@code regex} must contain. This is
+     * deliberately conservative: groups, classes and escapes end a run, a
+     * quantifier that allows zero repeats drops the character before it,
+     * and any alternation or inline flag means no literal is required.
+     * Only an escaped metacharacter such as {@code \.} stays in the run;
+     * every other escape ends it and its operand is skipped, never taken
+     * as text:
+     *
+     * <pre>
+     * \x63hecked_add     hecked_add
+     * \x{63}hecked       hecked
+     * &#92;u0063hecked   hecked
+     * \0143hecked        hecked
+     * \cMline_end        line_end
+     * \k&lt;n&gt;abc     abc
+     * \p{Lu}abc          abc
+     * \pLabc             abc
+     * \N{SPACE}abc       abc
+     * \b{g}abc           abc
+     * \12abc             abc
+     * \Qa.b\Eabc         abc
+     * \tabc              abc
+     * \.unwrap           .unwrap
+     * </pre>
+     *
+     * A character class is skipped whole, up to its unescaped closing
+     * {@code ]}, so brackets and parentheses inside it mean nothing:
+     * {@code foo[^)]bar} requires {@code foo} and {@code bar}, and
+     * {@code []x]unwrap}, whose first {@code ]} is literal, requires
+     * {@code unwrap}.
+     */
+    static String[] literals(String regex) {
+        if (regex.indexOf('|') >= 0 || regex.contains("(?")) {
+            return new String[0];
+        }
+        List<String> runs = new ArrayList<>();
+        StringBuilder run = new StringBuilder();
+        int depth = 0;
+        for (int i = 0; i < regex.length(); i++) {
+            char c = regex.charAt(i);
+            if (depth > 0) {
+                if (c == '\\' && i + 1 < regex.length()) {
+                    i = skipEscape(regex, i + 1);
+                } else if (c == '[') {
+                    i = skipClass(regex, i);
+                } else if (c == '(') {
+                    depth++;
+                } else if (c == ')') {
+                    depth--;
+                }
+                continue;
+            }
+            if (c == '\\' && i + 1 < regex.length()) {
+                char e = regex.charAt(i + 1);
+                if (Character.isLetterOrDigit(e)) {
+                    flush(runs, run); // \w, \d, \x63 ...
+                    i = skipEscape(regex, i + 1);
+                } else {
+                    run.append(e);
+                    i++;
+                }
+            } else if (c == '*' || c == '?' || (c == '{' && regex.startsWith("{0", i))) {
+                if (run.length() > 0) {
+                    run.setLength(run.length() - 1);
+                }
+                flush(runs, run);
+                if (c == '{') {
+                    i = skipRepeat(regex, i);
+                }
+            } else if (c == '{') {
+                flush(runs, run);
+                i = skipRepeat(regex, i);
+            } else if (".+^$".indexOf(c) >= 0) {
+                flush(runs, run);
+            } else if (c == '[') {
+                flush(runs, run);
+                i = skipClass(regex, i);
+            } else if (c == '(') {
+                flush(runs, run);
+                depth++;
+            } else {
+                run.append(c);
+            }
+        }
+        flush(runs, run);
+        return runs.toArray(new String[0]);
+    }
+
+    /**
+     * The index of the {@code ]} closing the class opened at {@code i}. A
+     * {@code ]} first in the class, after any {@code ^}, is literal, and
+     * classes may nest as in {@code [a-z[0-9]]}.
+     */
+    private static int skipClass(String regex, int i) {
+        int j = i + 1;
+        if (j < regex.length() && regex.charAt(j) == '^') {
+            j++;
+        }
+        if (j < regex.length() && regex.charAt(j) == ']') {
+            j++;
+        }
+        for (; j < regex.length(); j++) {
+            char c = regex.charAt(j);
+            if (c == '\\' && j + 1 < regex.length()) {
+                j = Character.isLetterOrDigit(regex.charAt(j + 1)) ? skipEscape(regex, j + 1) : j + 1;
+            } else if (c == '[') {
+                j = skipClass(regex, j);
+            } else if (c == ']') {
+                return j;
+            }
+        }
+        return regex.length() - 1;
+    }
+
+    /** The index of the last char of the escape whose letter or digit is at {@code i}. */
+    private static int skipEscape(String regex, int i) {
+        char e = regex.charAt(i);
+        return switch (e) {
+            case 'x' -> regex.startsWith("{", i + 1) ? skipRepeat(regex, i + 1) : skipDigits(regex, i, 16, 2);
+            case 'u' -> skipDigits(regex, i, 16, 4);
+            case '0' -> skipDigits(regex, i, 8, 3);
+            case 'c' -> Math.min(i + 1, regex.length() - 1);
+            case 'k' -> regex.indexOf('>', i) < 0 ? regex.length() - 1 : regex.indexOf('>', i);
+            case 'Q' -> regex.indexOf("\\E", i) < 0 ? regex.length() - 1 : regex.indexOf("\\E", i) + 1;
+            case 'p', 'P' -> regex.startsWith("{", i + 1) ? skipRepeat(regex, i + 1)
+                    : Math.min(i + 1, regex.length() - 1);
+            case 'N', 'b', 'B', 'X' -> regex.startsWith("{", i + 1) ? skipRepeat(regex, i + 1) : i;
+            // a back reference takes as many digits as follow
+            default -> e >= '1' && e <= '9' ? skipDigits(regex, i, 10, Integer.MAX_VALUE) : i;
+        };
+    }
+
+    /** The index of the last of up to {@code max} digits in {@code radix} after {@code i}, or {@code i}. */
+    private static int skipDigits(String regex, int i, int radix, int max) {
+        int n = 0;
+        while (n < max && i + 1 < regex.length() && Character.digit(regex.charAt(i + 1), radix) >= 0) {
+            i++;
+            n++;
+        }
+        return i;
+    }
+
+    private static int skipRepeat(String regex, int i) {
+        int close = regex.indexOf('}', i);
+        return close < 0 ? regex.length() : close;
+    }
+
+    private static void flush(List<String> runs, StringBuilder run) {
+        if (run.length() >= 3) {
+            runs.add(run.toString());
+        }
+        run.setLength(0);
+    }
+
+    /** One fenced block; {@code start}/{@code end} are byte offsets of the code in the note. */
+    public record Block(String note, int start, int end, String code) {
+    }
+
+    /** A block and the char range of the first match in its code. */
+    public record Match(Block block, int from, int to) {
+    }
+
+    private static final class WriterList {
+        int[] data = new int[4];
+        int size;
+        int last = -1;
+
+        void add(int id) {
+            if (size == data.length) {
+                data = Arrays.copyOf(data, size * 2);
+            }
+            data[size++] = id;
+            last = id;
+        }
+    }
+
+    /** {@code CodeIndex <root> <regex>}: prints matching blocks and the query time. */
+    public static void main(String[] args) throws IOException {
+        CodeIndex index = build(Paths.get(args[0]));
+        long t0 = System.nanoTime();
+        List<Match> matches = index.search(args[1]);
+        long micros = (System.nanoTime() - t0) / 1000;
+        for (Match m : matches) {
+            System.out.printf("%s @%d: %s%n", m.block().note(), m.block().start(), m.block().code().substring(m.from(), m.to()));
+        }
+        System.out.printf("%d of %d blocks in %d us%n", matches.size(), index.blockCount(), micros);
+    }
+}
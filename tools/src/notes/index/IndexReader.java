@@ -0,0 +1,303 @@
+package notes.index;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Read-only view of an index written by {@link IndexWriter}. The file is
+ * memory-mapped and every lookup reads straight from the mapping; nothing
+ * from the corpus is copied onto the heap except the notes named in hits.
+ *
+ * Searches score with BM25 over answer segments. The reader is safe to
+ * share between threads.
+ */
+public final class IndexReader implements AutoCloseable {
+
+    private static final float K1 = 1.2f;
+    private static final float B = 0.75f;
+
+    private final FileChannel channel;
+    private final MappedByteBuffer map;
+    private final int docs;
+    private final int terms;
+    private final float avgLength;
+    private final int notesAt;
+    private final int docsAt;
+    private final int termsAt;
+    private final int termBytesAt;
+    private final int postingsAt;
+
+    public IndexReader(Path file) throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.READ);
+        map = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        if (map.getInt(0) != IndexWriter.MAGIC || map.getInt(4) != IndexWriter.VERSION) {
+            channel.close();
+            throw new IOException("not a notes index: " + file);
+        }
+        docs = map.getInt(8);
+        terms = map.getInt(12);
+        avgLength = map.getFloat(20);
+        notesAt = map.getInt(24);
+        docsAt = map.getInt(28);
+        termsAt = map.getInt(32);
+        termBytesAt = map.getInt(36);
+        postingsAt = map.getInt(40);
+    }
+
+    public int docCount() {
+        return docs;
+    }
+
+    public int termCount() {
+        return terms;
+    }
+
+    /** Number of segments containing {@code term}, or 0. */
+    public int docFrequency(String term) {
+        int t = find(term);
+        return t < 0 ? 0 : map.getInt(termsAt + t * IndexWriter.TERM_SIZE + 4);
+    }
+
+    /**
+     * Returns a cursor over the postings of {@code term} or {@code null} if the
+     * term is not in the index.
+     */
+    public Postings postings(String term) {
+        int t = find(term);
+        if (t < 0) {
+            return null;
+        }
+        int entry = termsAt + t * IndexWriter.TERM_SIZE;
+        return new Postings(map.getInt(entry + 4), postingsAt + map.getInt(entry + 8));
+    }
+
+    /** The best {@code k} segments for {@code query}, highest score first. */
+    public List<Hit> search(String query, int k) {
+        float[] scores = new float[docs];
+        for (String term : queryTerms(query)) {
+            Postings p = postings(term);
+            if (p == null) {
+                continue;
+            }
+            float idf = idf(docs, p.df);
+            while (p.next()) {
+                scores[p.doc()] += score(idf, p.tf(), docLength(p.doc()), avgLength);
+            }
+        }
+        int[] top = top(scores, k);
+        Hit[] hits = new Hit[top.length];
+        for (int i = 0; i < top.length; i++) {
+            hits[i] = hit(top[i], scores[top[i]]);
+        }
+        return Arrays.asList(hits);
+    }
+
+    /** The distinct terms of {@code query}, in order of first appearance. */
+    static List<String> queryTerms(String query) {
+        List<String> terms = new ArrayList<>();
+        Tokenizer.tokenize(query, (term, position) -> {
+            if (!terms.contains(term)) {
+                terms.add(term);
+            }
+        });
+        return terms;
+    }
+
+    static float idf(int docs, int df) {
+        return (float) Math.log(1 + (docs - df + 0.5) / (df + 0.5));
+    }
+
+    /** One term's BM25 contribution to a segment of {@code length} terms. */
+    static float score(float idf, int tf, int length, float avgLength) {
+        float norm = K1 * (1 - B + B * length / avgLength);
+        return idf * tf * (K1 + 1) / (tf + norm);
+    }
+
+    public Hit hit(int doc, float score) {
+        int at = docsAt + doc * IndexWriter.DOC_SIZE;
+        return new Hit(doc, note(map.getInt(at)), map.getInt(at + 4), map.getInt(at + 8), map.getInt(at + 12), score);
+    }
+
+    int noteCount() {
+        return map.getInt(16);
+    }
+
+    float avgLength() {
+        return avgLength;
+    }
+
+    /** The id of the note that segment {@code doc} belongs to. */
+    int docNote(int doc) {
+        return map.getInt(docsAt + doc * IndexWriter.DOC_SIZE);
+    }
+
+    int docLength(int doc) {
+        return map.getInt(docsAt + doc * IndexWriter.DOC_SIZE + 16);
+    }
+
+    String note(int id) {
+        int at = notesAt + map.getInt(notesAt + id * 4);
+        return string(at);
+    }
+
+    /** The docs of the {@code k} highest positive scores, highest first. */
+    static int[] top(float[] scores, int k) {
+        // small bounded min-heap of doc ids ordered by score
+        int[] heap = new int[Math.max(1, k)];
+        int size = 0;
+        for (int doc = 0; doc < scores.length; doc++) {
+            if (scores[doc] <= 0) {
+                continue;
+            }
+            if (size < k) {
+                heap[size] = doc;
+                siftUp(heap, size++, scores);
+            } else if (k > 0 && scores[doc] > scores[heap[0]]) {
+                heap[0] = doc;
+                siftDown(heap, size, scores);
+            }
+        }
+        int[] top = new int[size];
+        while (size > 0) {
+            top[--size] = heap[0];
+            heap[0] = heap[size];
+            siftDown(heap, size, scores);
+        }
+        return top;
+    }
+
+    private static void siftUp(int[] heap, int i, float[] scores) {
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (scores[heap[parent]] <= scores[heap[i]]) {
+                return;
+            }
+            swap(heap, i, parent);
+            i = parent;
+        }
+    }
+
+    private static void siftDown(int[] heap, int size, float[] scores) {
+        int i = 0;
+        while (true) {
+            int least = i;
+            int l = 2 * i + 1;
+            int r = l + 1;
+            if (l < size && scores[heap[l]] < scores[heap[least]]) {
+                least = l;
+            }
+            if (r < size && scores[heap[r]] < scores[heap[least]]) {
+                least = r;
+            }
+            if (least == i) {
+                return;
+            }
+            swap(heap, i, least);
+            i = least;
+        }
+    }
+
+    private static void swap(int[] heap, int i, int j) {
+        int t = heap[i];
+        heap[i] = heap[j];
+        heap[j] = t;
+    }
+
+    /** Binary search of the sorted term table, comparing UTF-8 bytes in place. */
+    private int find(String term) {
+        byte[] key = term.getBytes(StandardCharsets.UTF_8);
+        int lo = 0;
+        int hi = terms - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int cmp = compare(termBytesAt + map.getInt(termsAt + mid * IndexWriter.TERM_SIZE), key);
+            if (cmp < 0) {
+                lo = mid + 1;
+            } else if (cmp > 0) {
+                hi = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    private int compare(int at, byte[] key) {
+        int len = map.getShort(at) & 0xffff;
+        int n = Math.min(len, key.length);
+        for (int i = 0; i < n; i++) {
+            int c = (map.get(at + 2 + i) & 0xff) - (key[i] & 0xff);
+            if (c != 0) {
+                return c;
+            }
+        }
+        return len - key.length;
+    }
+
+    private String string(int at) {
+        byte[] bytes = new byte[map.getShort(at) & 0xffff];
+        map.get(at + 2, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /** A ranked answer segment. */
+    public record Hit(int doc, String note, int segment, int start, int end, float score) {
+    }
+
+    /** Forward-only cursor over one term's postings, reading from the mapping. */
+    public final class Postings {
+        private final int df;
+        private int next;
+        private int remaining;
+        private int doc = -1;
+        private int tf;
+        private int positionsAt;
+
+        Postings(int df, int at) {
+            this.df = df;
+            this.next = at;
+            this.remaining = df;
+        }
+
+        public int docFrequency() {
+            return df;
+        }
+
+        public boolean next() {
+            if (remaining == 0) {
+                return false;
+            }
+            remaining--;
+            doc = map.getInt(next);
+            tf = map.getInt(next + 4);
+            positionsAt = next + 8;
+            next = positionsAt + tf * 4;
+            return true;
+        }
+
+        public int doc() {
+            return doc;
+        }
+
+        public int tf() {
+            return tf;
+        }
+
+        /** The {@code i}-th position of the term in the current doc, {@code 0 <= i < tf()}. */
+        public int position(int i) {
+            return map.getInt(positionsAt + i * 4);
+        }
+    }
+}
@@ -0,0 +1,184 @@
+package notes.index;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Builds the on-disk inverted index read by {@link IndexReader}. Documents
+ * are answer segments; each one is added with its terms already split out,
+ * so callers that cache tokenized segments can skip the tokenizer.
+ *
+ * <pre>
+ * header   int magic, int version, int docs, int terms, int notes, float avgLength,
+ *          int notesAt, int docsAt, int termsAt, int termBytesAt, int postingsAt
+ * notes    int[notes] offsets, then for each note: short length, UTF-8 path
+ * docs     per doc: int note, int segment, int start, int end, int length
+ * terms    per term, sorted by UTF-8 bytes: int termOffset, int df, int postingsOffset
+ * bytes    for each term: short length, UTF-8 term
+ * postings for each term, for each doc: int doc, int tf, int[tf] positions
+ * </pre>
+ */
+public final class IndexWriter {
+
+    static final int MAGIC = 0x4e494458; // "NIDX"
+    static final int VERSION = 1;
+    static final int HEADER = 11 * 4;
+    static final int DOC_SIZE = 5 * 4;
+    static final int TERM_SIZE = 3 * 4;
+
+    private final Map<String, Integer> noteIds = new HashMap<>();
+    private final List<String> notes = new ArrayList<>();
+    private final IntList docs = new IntList();
+    private final TreeMap<byte[], IntList> postings = new TreeMap<>(Arrays::compareUnsigned);
+    private long totalLength;
+    private int docCount;
+
+    /** Tokenizes {@code text} and adds it as one document; returns its doc id. */
+    public int add(String note, int segment, int start, int end, CharSequence text) {
+        Tokenizer.Terms terms = Tokenizer.terms(text);
+        return add(note, segment, start, end, terms.length(), terms.positions());
+    }
+
+    /** Adds a pre-tokenized document: term to ascending positions. Returns its doc id. */
+    public int add(String note, int segment, int start, int end, int length, Map<String, int[]> positions) {
+        int doc = docCount++;
+        docs.add(addNote(note));
+        docs.add(segment);
+        docs.add(start);
+        docs.add(end);
+        docs.add(length);
+        totalLength += length;
+        for (Map.Entry<String, int[]> e : positions.entrySet()) {
+            IntList list = postings.computeIfAbsent(e.getKey().getBytes(StandardCharsets.UTF_8), t -> new IntList());
+            int[] p = e.getValue();
+            list.add(doc);
+            list.add(p.length);
+            for (int position : p) {
+                list.add(position);
+            }
+        }
+        return doc;
+    }
+
+    /**
+     * Lists {@code note} in the note table even if none of its segments is
+     * added, as a delta does for a note that was removed or lost its last
+     * segment. Returns the note's id.
+     */
+    public int addNote(String note) {
+        return noteIds.computeIfAbsent(note, n -> {
+            notes.add(n);
+            return notes.size() - 1;
+        });
+    }
+
+    public int docCount() {
+        return docCount;
+    }
+
+    /** Writes the index to a temporary file next to {@code target}, then moves it into place. */
+    public void write(Path target) throws IOException {
+        ByteArrayOutputStream noteBytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(noteBytes);
+        int[] noteOffsets = new int[notes.size()];
+        int notesHeader = notes.size() * 4;
+        for (int i = 0; i < notes.size(); i++) {
+            noteOffsets[i] = notesHeader + out.size();
+            writeString(out, notes.get(i));
+        }
+
+        ByteArrayOutputStream termBytes = new ByteArrayOutputStream();
+        DataOutputStream terms = new DataOutputStream(termBytes);
+        ByteArrayOutputStream postingBytes = new ByteArrayOutputStream();
+        DataOutputStream post = new DataOutputStream(postingBytes);
+        int[] termTable = new int[postings.size() * 3];
+        int t = 0;
+        for (Map.Entry<byte[], IntList> e : postings.entrySet()) {
+            termTable[t * 3] = terms.size();
+            terms.writeShort(e.getKey().length);
+            terms.write(e.getKey());
+            IntList list = e.getValue();
+            int df = 0;
+            for (int i = 0; i < list.size; i += 2 + list.data[i + 1]) {
+                df++;
+            }
+            termTable[t * 3 + 1] = df;
+            termTable[t * 3 + 2] = post.size();
+            for (int i = 0; i < list.size; i++) {
+                post.writeInt(list.data[i]);
+            }
+            t++;
+        }
+
+        int notesAt = HEADER;
+        int docsAt = notesAt + notesHeader + noteBytes.size();
+        int termsAt = docsAt + docs.size * 4;
+        int termBytesAt = termsAt + termTable.length * 4;
+        int postingsAt = termBytesAt + termBytes.size();
+
+        Path tmp = target.resolveSibling(target.getFileName() + ".tmp");
+        try (OutputStream file = Files.newOutputStream(tmp);
+             DataOutputStream data = new DataOutputStream(new BufferedOutputStream(file, 1 << 16))) {
+            data.writeInt(MAGIC);
+            data.writeInt(VERSION);
+            data.writeInt(docCount);
+            data.writeInt(postings.size());
+            data.writeInt(notes.size());
+            data.writeFloat(docCount == 0 ? 0f : (float) totalLength / docCount);
+            data.writeInt(notesAt);
+            data.writeInt(docsAt);
+            data.writeInt(termsAt);
+            data.writeInt(termBytesAt);
+            data.writeInt(postingsAt);
+            for (int offset : noteOffsets) {
+                data.writeInt(offset);
+            }
+            noteBytes.writeTo(data);
+            for (int i = 0; i < docs.size; i++) {
+                data.writeInt(docs.data[i]);
+            }
+            for (int value : termTable) {
+                data.writeInt(value);
+            }
+            termBytes.writeTo(data);
+            postingBytes.writeTo(data);
+        }
+        Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeShort(bytes.length);
+        out.write(bytes);
+    }
+
+    /** Growable int array; keeps the postings off boxed lists. */
+    static final class IntList {
+        int[] data = new int[8];
+        int size;
+
+        void add(int value) {
+            if (size == data.length) {
+                data = Arrays.copyOf(data, size * 2);
+            }
+            data[size++] = value;
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(data, size);
+        }
+    }
+}
@@ -0,0 +1,216 @@
+package notes.index;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Stream;
+
+/**
+ * An index file together with the deltas {@link Reindexer} writes beside
+ * it, searched as one index.
+ *
+ * A delta is an ordinary index file named {@code <index>.<n>}, holding the
+ * segments of the notes that changed in one refresh; its note table also
+ * lists notes that were removed. A note listed in a newer layer hides that
+ * note's segments in every older one, so an edit costs a delta the size of
+ * the edited note instead of a rewrite of the whole index. The hidden
+ * segments are found once, when the index is opened; BM25 statistics then
+ * count only the segments that are still live, so scores match those of a
+ * freshly built index.
+ *
+ * With no deltas this is the plain {@link IndexReader}. Safe to share
+ * between threads.
+ */
+public final class LayeredIndex implements AutoCloseable {
+
+    private final IndexReader[] layers;
+    private final int[] offsets;
+    private final boolean[][] hidden;
+    private final int docs;
+    private final float avgLength;
+
+    private LayeredIndex(IndexReader[] layers) {
+        this.layers = layers;
+        this.offsets = new int[layers.length + 1];
+        this.hidden = new boolean[layers.length][];
+        for (int i = 0; i < layers.length; i++) {
+            offsets[i + 1] = offsets[i] + layers[i].docCount();
+        }
+        int live = 0;
+        double length = 0;
+        Set<String> newer = new HashSet<>();
+        for (int i = layers.length - 1; i >= 0; i--) {
+            IndexReader layer = layers[i];
+            boolean[] replaced = new boolean[layer.noteCount()];
+            boolean any = false;
+            for (int note = 0; note < replaced.length && i < layers.length - 1; note++) {
+                replaced[note] = newer.contains(layer.note(note));
+                any |= replaced[note];
+            }
+            for (int note = 0; note < replaced.length && i > 0; note++) {
+                newer.add(layer.note(note));
+            }
+            live += layer.docCount();
+            length += (double) layer.avgLength() * layer.docCount();
+            if (any) {
+                hidden[i] = new boolean[layer.docCount()];
+                for (int doc = 0; doc < hidden[i].length; doc++) {
+                    if (replaced[layer.docNote(doc)]) {
+                        hidden[i][doc] = true;
+                        live--;
+                        length -= layer.docLength(doc);
+                    }
+                }
+            }
+        }
+        this.docs = live;
+        this.avgLength = live == 0 ? 0f : (float) (length / live);
+    }
+
+    /** Opens {@code index} and every delta beside it. */
+    public static LayeredIndex open(Path index) throws IOException {
+        List<IndexReader> layers = new ArrayList<>();
+        try {
+            layers.add(new IndexReader(index));
+            for (Path delta : deltas(index)) {
+                layers.add(new IndexReader(delta));
+            }
+        } catch (IOException e) {
+            for (IndexReader layer : layers) {
+                layer.close();
+            }
+            throw e;
+        }
+        return new LayeredIndex(layers.toArray(new IndexReader[0]));
+    }
+
+    /** The deltas of {@code index} on disk, oldest first. */
+    static List<Path> deltas(Path index) throws IOException {
+        String prefix = index.getFileName() + ".";
+        Path dir = index.toAbsolutePath().getParent();
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.filter(f -> deltaNumber(f.getFileName().toString(), prefix) > 0)
+                    .sorted(Comparator.comparingInt(f -> deltaNumber(f.getFileName().toString(), prefix)))
+                    .toList();
+        }
+    }
+
+    /** The path for a delta newer than all of {@code existing}. */
+    static Path nextDelta(Path index, List<Path> existing) {
+        String prefix = index.getFileName() + ".";
+        int last = 0;
+        if (!existing.isEmpty()) {
+            last = deltaNumber(existing.get(existing.size() - 1).getFileName().toString(), prefix);
+        }
+        return index.resolveSibling(prefix + (last + 1));
+    }
+
+    /** The {@code n} of a file named {@code <prefix><n>}, or 0 for any other name. */
+    private static int deltaNumber(String name, String prefix) {
+        if (!name.startsWith(prefix) || name.length() == prefix.length() || name.length() - prefix.length() > 9) {
+            return 0;
+        }
+        int n = 0;
+        for (int i = prefix.length(); i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (c < '0' || c > '9') {
+                return 0;
+            }
+            n = n * 10 + (c - '0');
+        }
+        return n;
+    }
+
+    /** Number of live segments, those not replaced by a newer layer. */
+    public int docCount() {
+        return docs;
+    }
+
+    public int layerCount() {
+        return layers.length;
+    }
+
+    /** The best {@code k} segments for {@code query}, highest score first. */
+    public List<IndexReader.Hit> search(String query, int k) {
+        if (layers.length == 1) {
+            return layers[0].search(query, k);
+        }
+        float[] scores = new float[offsets[layers.length]];
+        for (String term : IndexReader.queryTerms(query)) {
+            int df = 0;
+            for (int i = 0; i < layers.length; i++) {
+                IndexReader.Postings p = layers[i].postings(term);
+                if (p == null) {
+                    continue;
+                }
+                if (hidden[i] == null) {
+                    df += p.docFrequency();
+                    continue;
+                }
+                while (p.next()) {
+                    if (!hidden[i][p.doc()]) {
+                        df++;
+                    }
+                }
+            }
+            if (df == 0) {
+                continue;
+            }
+            float idf = IndexReader.idf(docs, df);
+            for (int i = 0; i < layers.length; i++) {
+                IndexReader.Postings p = layers[i].postings(term);
+                if (p == null) {
+                    continue;
+                }
+                while (p.next()) {
+                    if (hidden[i] == null || !hidden[i][p.doc()]) {
+                        scores[offsets[i] + p.doc()] += IndexReader.score(idf, p.tf(), layers[i].docLength(p.doc()),
+                                avgLength);
+                    }
+                }
+            }
+        }
+        int[] top = IndexReader.top(scores, k);
+        IndexReader.Hit[] hits = new IndexReader.Hit[top.length];
+        for (int n = 0; n < top.length; n++) {
+            int doc = top[n];
+            int i = layer(doc);
+            IndexReader.Hit hit = layers[i].hit(doc - offsets[i], scores[doc]);
+            hits[n] = new IndexReader.Hit(doc, hit.note(), hit.segment(), hit.start(), hit.end(), hit.score());
+        }
+        return Arrays.asList(hits);
+    }
+
+    private int layer(int doc) {
+        int i = Arrays.binarySearch(offsets, doc);
+        // an exact match may be the start of an empty layer; the doc is in the last layer starting there
+        if (i >= 0) {
+            while (i + 1 < layers.length && offsets[i + 1] == doc) {
+                i++;
+            }
+            return i;
+        }
+        return -i - 2;
+    }
+
+    @Override
+    public void close() throws IOException {
+        IOException failure = null;
+        for (IndexReader layer : layers) {
+            try {
+                layer.close();
+            } catch (IOException e) {
+                failure = e;
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+}
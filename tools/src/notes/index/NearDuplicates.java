@@ -0,0 +1,202 @@
+package notes.index;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import notes.corpus.Corpus;
+import notes.corpus.Segment;
+import notes.corpus.SegmentParser;
+import notes.corpus.Segments;
+
+/**
+ * Groups answer segments that are near-copies of each other, such as the
+ * same answer filed under both {@code Enum/} and a top-level folder.
+ *
+ * Each segment becomes a set of hashed five-word shingles and then a
+ * MinHash signature. Signatures are split into bands; segments that agree
+ * on a whole band land in the same bucket and become candidate pairs, so
+ * only those pairs are compared instead of all of them. Pairs whose
+ * estimated Jaccard similarity reaches the threshold are merged with
+ * union-find, and every segment ends up pointing at one representative.
+ */
+public final class NearDuplicates {
+
+    public static final int SHINGLE = 5;
+    public static final int HASHES = 128;
+    public static final int BANDS = 32;
+    public static final double THRESHOLD = 0.8;
+
+    private static final int ROWS = HASHES / BANDS;
+    private static final long[] SEEDS = new long[HASHES];
+
+    static {
+        long s = 0x9e3779b97f4a7c15L;
+        for (int i = 0; i < HASHES; i++) {
+            SEEDS[i] = mix(s += 0x9e3779b97f4a7c15L);
+        }
+    }
+
+    private final int[] parent;
+
+    private NearDuplicates(int n) {
+        parent = new int[n];
+        for (int i = 0; i < n; i++) {
+            parent[i] = i;
+        }
+    }
+
+    /** Clusters {@code texts}; the result is indexed like the input. */
+    public static NearDuplicates of(List<String> texts) {
+        int n = texts.size();
+        long[][] signatures = new long[n][];
+        for (int i = 0; i < n; i++) {
+            signatures[i] = signature(texts.get(i));
+        }
+        NearDuplicates result = new NearDuplicates(n);
+        for (int band = 0; band < BANDS; band++) {
+            Map<Long, List<Integer>> buckets = new HashMap<>();
+            for (int i = 0; i < n; i++) {
+                if (signatures[i] == null) {
+                    continue;
+                }
+                long key = band;
+                for (int r = band * ROWS; r < (band + 1) * ROWS; r++) {
+                    key = mix(key ^ signatures[i][r]);
+                }
+                buckets.computeIfAbsent(key, k -> new ArrayList<>()).add(i);
+            }
+            for (List<Integer> bucket : buckets.values()) {
+                for (int a = 0; a < bucket.size(); a++) {
+                    for (int b = a + 1; b < bucket.size(); b++) {
+                        int x = bucket.get(a);
+                        int y = bucket.get(b);
+                        if (result.find(x) != result.find(y)
+                                && similarity(signatures[x], signatures[y]) >= THRESHOLD) {
+                            result.union(x, y);
+                        }
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    /** MinHash signature of the text's shingles, or {@code null} if it is too short to have any. */
+    static long[] signature(String text) {
+        List<String> words = new ArrayList<>();
+        Tokenizer.tokenize(text, (term, position) -> words.add(term));
+        if (words.size() < SHINGLE) {
+            return null;
+        }
+        long[] sig = new long[HASHES];
+        Arrays.fill(sig, Long.MAX_VALUE);
+        for (int i = 0; i + SHINGLE <= words.size(); i++) {
+            long h = 0;
+            for (int j = i; j < i + SHINGLE; j++) {
+                h = mix(h * 31 + words.get(j).hashCode());
+            }
+            for (int k = 0; k < HASHES; k++) {
+                long v = mix(h ^ SEEDS[k]);
+                if (v < sig[k]) {
+                    sig[k] = v;
+                }
+            }
+        }
+        return sig;
+    }
+
+    static double similarity(long[] a, long[] b) {
+        int same = 0;
+        for (int i = 0; i < HASHES; i++) {
+            if (a[i] == b[i]) {
+                same++;
+            }
+        }
+        return (double) same / HASHES;
+    }
+
+    /** The representative of {@code i}'s cluster; {@code i} itself if it has no near-duplicate. */
+    public int representative(int i) {
+        return find(i);
+    }
+
+    public boolean isRepresentative(int i) {
+        return find(i) == i;
+    }
+
+    /** Clusters with more than one member, each sorted, representative first. */
+    public List<int[]> clusters() {
+        Map<Integer, List<Integer>> groups = new HashMap<>();
+        for (int i = 0; i < parent.length; i++) {
+            groups.computeIfAbsent(find(i), r -> new ArrayList<>()).add(i);
+        }
+        List<int[]> clusters = new ArrayList<>();
+        for (List<Integer> group : groups.values()) {
+            if (group.size() > 1) {
+                clusters.add(group.stream().mapToInt(Integer::intValue).toArray());
+            }
+        }
+        clusters.sort((x, y) -> Integer.compare(x[0], y[0]));
+        return clusters;
+    }
+
+    private int find(int i) {
+        while (parent[i] != i) {
+            parent[i] = parent[parent[i]];
+            i = parent[i];
+        }
+        return i;
+    }
+
+    private void union(int a, int b) {
+        int ra = find(a);
+        int rb = find(b);
+        // the lower index wins so the first copy in path order is kept
+        if (ra < rb) {
+            parent[rb] = ra;
+        } else {
+            parent[ra] = rb;
+        }
+    }
+
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+
+    /** {@code NearDuplicates <root>}: prints the near-duplicate segment clusters. */
+    public static void main(String[] args) throws IOException {
+        Path root = Paths.get(args.length > 0 ? args[0] : ".");
+        List<Segment> segments = new ArrayList<>();
+        List<String> texts = new ArrayList<>();
+        SegmentParser parser = new SegmentParser();
+        for (Path note : Corpus.notes(root)) {
+            byte[] bytes = Files.readAllBytes(note);
+            for (Segment s : Segments.of(note, parser)) {
+                segments.add(s);
+                texts.add(new String(bytes, s.start(), s.length(), StandardCharsets.UTF_8));
+            }
+        }
+        long t0 = System.nanoTime();
+        NearDuplicates dups = of(texts);
+        long millis = (System.nanoTime() - t0) / 1_000_000;
+        List<int[]> clusters = dups.clusters();
+        for (int[] cluster : clusters) {
+            System.out.println("cluster:");
+            for (int i : cluster) {
+                Segment s = segments.get(i);
+                System.out.printf("  %s #%d%n", root.relativize(s.note()), s.index());
+            }
+        }
+        System.out.printf("%d segments, %d clusters in %d ms%n", segments.size(), clusters.size(), millis);
+    }
+}
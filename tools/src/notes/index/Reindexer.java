@@ -0,0 +1,340 @@
+package notes.index;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import notes.corpus.ContentHash;
+import notes.corpus.Corpus;
+import notes.corpus.Segment;
+import notes.corpus.SegmentParser;
+import notes.corpus.Segments;
+
+/**
+ * Keeps the index in step with the notes without redoing work for notes
+ * that did not change.
+ *
+ * The manifest records, for every note, its size, modification time and
+ * content hash, and for every answer segment its hash and tokenized terms.
+ * On {@link #refresh()} a note whose size and time match is not even read;
+ * a note that did change is re-parsed, and only segments whose hash is not
+ * already known are tokenized again.
+ *
+ * The notes that changed are written as a delta beside the index (see
+ * {@link LayeredIndex}) and appended to the manifest as one record each,
+ * so a one-note edit writes that note's postings and manifest entry and
+ * nothing else. Deltas are merged lazily: once there are more than
+ * {@link #MAX_DELTAS}, or a refresh changes more than one note in
+ * {@link #MERGE_FRACTION}, the index is rewritten from the manifest, the
+ * deltas are deleted and the manifest is compacted. A manifest that ends
+ * partway through a record, as after a crash during an append, is
+ * discarded and the index rebuilt from the notes.
+ */
+public final class Reindexer {
+
+    /** Deltas kept before they are merged into the index. */
+    public static final int MAX_DELTAS = 8;
+    /** A refresh that changes more than one note in this many rewrites the index instead of writing a delta. */
+    public static final int MERGE_FRACTION = 8;
+
+    private static final int MAGIC = 0x4e4d4654; // "NMFT"
+    private static final int VERSION = 2;
+    private static final int NOTE = 1;
+    private static final int TOUCH = 2;
+    private static final int REMOVE = 3;
+
+    private final Path root;
+    private final Path manifest;
+    private final Path index;
+    private Map<String, NoteEntry> notes = new TreeMap<>();
+    private int records;
+    private boolean rebuild;
+
+    public Reindexer(Path root, Path dir) throws IOException {
+        this.root = root;
+        this.manifest = dir.resolve("manifest.bin");
+        this.index = dir.resolve("index.bin");
+        Files.createDirectories(dir);
+        load();
+    }
+
+    /** The index file; open it with {@link LayeredIndex#open} to see the deltas too. */
+    public Path index() {
+        return index;
+    }
+
+    /** Brings the manifest and index up to date with the notes on disk. */
+    public Report refresh() throws IOException {
+        Map<String, NoteEntry> next = new TreeMap<>();
+        List<String> changed = new ArrayList<>();
+        Set<String> terms = new HashSet<>();
+        ByteArrayOutputStream log = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(log);
+        int appended = 0;
+        SegmentParser parser = new SegmentParser();
+        int tokenized = 0;
+        int reused = 0;
+        for (Path note : Corpus.notes(root)) {
+            String name = root.relativize(note).toString();
+            BasicFileAttributes attrs = Files.readAttributes(note, BasicFileAttributes.class);
+            long size = attrs.size();
+            long modified = attrs.lastModifiedTime().toMillis();
+            NoteEntry old = notes.get(name);
+            if (old != null && old.size == size && old.modified == modified) {
+                next.put(name, old);
+                continue;
+            }
+            byte[] bytes = Files.readAllBytes(note);
+            long hash = ContentHash.of(bytes);
+            if (old != null && old.hash == hash) {
+                next.put(name, new NoteEntry(size, modified, hash, old.segments));
+                out.writeByte(TOUCH);
+                out.writeUTF(name);
+                out.writeLong(size);
+                out.writeLong(modified);
+                appended++;
+                continue;
+            }
+            Map<Long, SegmentEntry> known = new HashMap<>();
+            if (old != null) {
+                for (SegmentEntry s : old.segments) {
+                    known.put(s.hash, s);
+                }
+            }
+            List<SegmentEntry> segments = new ArrayList<>();
+            Set<Long> kept = new HashSet<>();
+            for (Segment s : Segments.of(note, parser)) {
+                long segmentHash = ContentHash.of(bytes, s.start(), s.end());
+                SegmentEntry prior = known.get(segmentHash);
+                if (prior != null) {
+                    segments.add(new SegmentEntry(s.index(), s.start(), s.end(), segmentHash, prior.length, prior.terms));
+                    kept.add(segmentHash);
+                    reused++;
+                } else {
+                    SegmentEntry fresh = tokenize(s, segmentHash, bytes);
+                    segments.add(fresh);
+                    terms.addAll(fresh.terms.keySet());
+                    tokenized++;
+                }
+            }
+            for (SegmentEntry s : known.values()) {
+                if (!kept.contains(s.hash)) {
+                    terms.addAll(s.terms.keySet());
+                }
+            }
+            NoteEntry entry = new NoteEntry(size, modified, hash, segments);
+            next.put(name, entry);
+            changed.add(name);
+            writeNote(out, name, entry);
+            appended++;
+        }
+        for (String name : notes.keySet()) {
+            if (!next.containsKey(name)) {
+                changed.add(name);
+                for (SegmentEntry s : notes.get(name).segments) {
+                    terms.addAll(s.terms.keySet());
+                }
+                out.writeByte(REMOVE);
+                out.writeUTF(name);
+                appended++;
+            }
+        }
+        notes = next;
+        List<Path> deltas = LayeredIndex.deltas(index);
+        if (rebuild || !Files.exists(index) || changed.size() > next.size() / MERGE_FRACTION
+                || !changed.isEmpty() && deltas.size() >= MAX_DELTAS) {
+            merge(deltas);
+        } else {
+            if (!changed.isEmpty()) {
+                writeDelta(changed, LayeredIndex.nextDelta(index, deltas));
+            }
+            if (appended > 0) {
+                append(log, appended);
+            }
+        }
+        return new Report(next.size(), changed, terms, tokenized, reused);
+    }
+
+    private static SegmentEntry tokenize(Segment s, long hash, byte[] bytes) {
+        Tokenizer.Terms terms = Tokenizer.terms(new String(bytes, s.start(), s.length(), StandardCharsets.UTF_8));
+        return new SegmentEntry(s.index(), s.start(), s.end(), hash, terms.length(), terms.positions());
+    }
+
+    /** Writes the segments of {@code changed} as a delta; notes that are gone are listed with none. */
+    private void writeDelta(List<String> changed, Path delta) throws IOException {
+        IndexWriter writer = new IndexWriter();
+        for (String name : changed) {
+            writer.addNote(name);
+            NoteEntry note = notes.get(name);
+            if (note != null) {
+                for (SegmentEntry s : note.segments) {
+                    writer.add(name, s.index, s.start, s.end, s.length, s.terms);
+                }
+            }
+        }
+        writer.write(delta);
+    }
+
+    /** Rewrites the index from the manifest, then drops the deltas it replaces and compacts the manifest. */
+    private void merge(List<Path> deltas) throws IOException {
+        IndexWriter writer = new IndexWriter();
+        for (Map.Entry<String, NoteEntry> e : notes.entrySet()) {
+            for (SegmentEntry s : e.getValue().segments) {
+                writer.add(e.getKey(), s.index, s.start, s.end, s.length, s.terms);
+            }
+        }
+        writer.write(index);
+        // oldest first, so a crash part way leaves only deltas newer than those deleted
+        for (Path delta : deltas) {
+            Files.delete(delta);
+        }
+        save();
+        rebuild = false;
+    }
+
+    private void load() throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(manifest), 1 << 16))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                rebuild = true; // unknown format: start from scratch
+                return;
+            }
+            for (int type = in.read(); type != -1; type = in.read()) {
+                String name = in.readUTF();
+                if (type == NOTE) {
+                    notes.put(name, readNote(in));
+                } else if (type == TOUCH) {
+                    NoteEntry old = notes.get(name);
+                    long size = in.readLong();
+                    long modified = in.readLong();
+                    if (old == null) {
+                        throw new IOException("touch of unknown note " + name);
+                    }
+                    notes.put(name, new NoteEntry(size, modified, old.hash, old.segments));
+                } else if (type == REMOVE) {
+                    notes.remove(name);
+                } else {
+                    throw new IOException("unknown manifest record " + type);
+                }
+                records++;
+            }
+        } catch (NoSuchFileException e) {
+            rebuild = true; // first run
+        } catch (IOException e) {
+            // cut short or corrupt: what was read cannot be trusted to match the index
+            notes.clear();
+            records = 0;
+            rebuild = true;
+        }
+    }
+
+    private static NoteEntry readNote(DataInputStream in) throws IOException {
+        long size = in.readLong();
+        long modified = in.readLong();
+        long hash = in.readLong();
+        int segmentCount = in.readInt();
+        List<SegmentEntry> segments = new ArrayList<>(segmentCount);
+        for (int s = 0; s < segmentCount; s++) {
+            int index = in.readInt();
+            int start = in.readInt();
+            int end = in.readInt();
+            long segmentHash = in.readLong();
+            int length = in.readInt();
+            int termCount = in.readInt();
+            Map<String, int[]> terms = new LinkedHashMap<>(termCount * 2);
+            for (int t = 0; t < termCount; t++) {
+                String term = in.readUTF();
+                int[] positions = new int[in.readInt()];
+                for (int p = 0; p < positions.length; p++) {
+                    positions[p] = in.readInt();
+                }
+                terms.put(term, positions);
+            }
+            segments.add(new SegmentEntry(index, start, end, segmentHash, length, terms));
+        }
+        return new NoteEntry(size, modified, hash, segments);
+    }
+
+    private static void writeNote(DataOutputStream out, String name, NoteEntry note) throws IOException {
+        out.writeByte(NOTE);
+        out.writeUTF(name);
+        out.writeLong(note.size);
+        out.writeLong(note.modified);
+        out.writeLong(note.hash);
+        out.writeInt(note.segments.size());
+        for (SegmentEntry s : note.segments) {
+            out.writeInt(s.index);
+            out.writeInt(s.start);
+            out.writeInt(s.end);
+            out.writeLong(s.hash);
+            out.writeInt(s.length);
+            out.writeInt(s.terms.size());
+            for (Map.Entry<String, int[]> t : s.terms.entrySet()) {
+                out.writeUTF(t.getKey());
+                out.writeInt(t.getValue().length);
+                for (int p : t.getValue()) {
+                    out.writeInt(p);
+                }
+            }
+        }
+    }
+
+    /** Appends one refresh's records in a single write; compacts instead once the log is mostly superseded. */
+    private void append(ByteArrayOutputStream log, int count) throws IOException {
+        records += count;
+        if (records > 2 * notes.size() + MAX_DELTAS) {
+            save();
+            return;
+        }
+        try (OutputStream out = Files.newOutputStream(manifest, StandardOpenOption.APPEND)) {
+            log.writeTo(out);
+        }
+    }
+
+    /** Writes the manifest afresh, one record per note. */
+    private void save() throws IOException {
+        Path tmp = manifest.resolveSibling(manifest.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            for (Map.Entry<String, NoteEntry> e : notes.entrySet()) {
+                writeNote(out, e.getKey(), e.getValue());
+            }
+        }
+        Files.move(tmp, manifest, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        records = notes.size();
+    }
+
+    /**
+     * What one {@link #refresh()} did. {@code changed} lists added, edited and
+     * removed notes; {@code terms} holds every term of a segment that was
+     * added or dropped, i.e. the terms whose postings changed.
+     */
+    public record Report(int notes, List<String> changed, Set<String> terms, int segmentsTokenized,
+                         int segmentsReused) {
+    }
+
+    private record NoteEntry(long size, long modified, long hash, List<SegmentEntry> segments) {
+    }
+
+    private record SegmentEntry(int index, int start, int end, long hash, int length, Map<String, int[]> terms) {
+    }
+}
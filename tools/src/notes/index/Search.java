@@ -0,0 +1,86 @@
+package notes.index;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import notes.corpus.Corpus;
+import notes.corpus.Segment;
+import notes.corpus.SegmentParser;
+import notes.corpus.Segments;
+
+/**
+ * Command line entry point for the full-text index.
+ *
+ * <pre>
+ * Search build &lt;root&gt; &lt;index&gt; [--dedupe]
+ * Search update &lt;root&gt; &lt;dir&gt;
+ * Search query &lt;index&gt; &lt;words...&gt;
+ * </pre>
+ */
+public final class Search {
+
+    private Search() {
+    }
+
+    /**
+     * Indexes every answer segment under {@code root} into {@code index}.
+     * With {@code dedupe}, only the first segment of each near-duplicate
+     * cluster (see {@link NearDuplicates}) is indexed.
+     */
+    public static void build(Path root, Path index, boolean dedupe) throws IOException {
+        List<Segment> segments = new ArrayList<>();
+        List<String> texts = new ArrayList<>();
+        SegmentParser parser = new SegmentParser();
+        for (Path note : Corpus.notes(root)) {
+            byte[] bytes = Files.readAllBytes(note);
+            for (Segment s : Segments.of(note, parser)) {
+                segments.add(s);
+                texts.add(new String(bytes, s.start(), s.length(), StandardCharsets.UTF_8));
+            }
+        }
+        NearDuplicates dups = dedupe ? NearDuplicates.of(texts) : null;
+        IndexWriter writer = new IndexWriter();
+        for (int i = 0; i < segments.size(); i++) {
+            if (dups != null && !dups.isRepresentative(i)) {
+                continue;
+            }
+            Segment s = segments.get(i);
+            writer.add(root.relativize(s.note()).toString(), s.index(), s.start(), s.end(), texts.get(i));
+        }
+        writer.write(index);
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length >= 3 && args[0].equals("build")) {
+            long t0 = System.nanoTime();
+            build(Paths.get(args[1]), Paths.get(args[2]), args.length > 3 && args[3].equals("--dedupe"));
+            System.out.printf("built %s in %d ms%n", args[2], (System.nanoTime() - t0) / 1_000_000);
+        } else if (args.length >= 3 && args[0].equals("update")) {
+            long t0 = System.nanoTime();
+            Reindexer.Report report = new Reindexer(Paths.get(args[1]), Paths.get(args[2])).refresh();
+            System.out.printf("%d notes, %d changed, %d segments tokenized, %d reused in %d ms%n",
+                    report.notes(), report.changed().size(), report.segmentsTokenized(), report.segmentsReused(),
+                    (System.nanoTime() - t0) / 1_000_000);
+        } else if (args.length >= 3 && args[0].equals("query")) {
+            String query = String.join(" ", Arrays.copyOfRange(args, 2, args.length));
+            try (LayeredIndex reader = LayeredIndex.open(Paths.get(args[1]))) {
+                long t0 = System.nanoTime();
+                List<IndexReader.Hit> hits = reader.search(query, 10);
+                long micros = (System.nanoTime() - t0) / 1000;
+                for (IndexReader.Hit hit : hits) {
+                    System.out.printf("%8.3f  %s #%d [%d, %d)%n", hit.score(), hit.note(), hit.segment(), hit.start(), hit.end());
+                }
+                System.out.printf("%d hits in %d us%n", hits.size(), micros);
+            }
+        } else {
+            System.err.println("usage: Search build <root> <index> [--dedupe] | Search update <root> <dir> | Search query <index> <words...>");
+            System.exit(2);
+        }
+    }
+}
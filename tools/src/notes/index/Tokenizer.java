@@ -0,0 +1,66 @@
+package notes.index;
+
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Splits text into lower-cased terms made of letters, digits and
+ * underscores, so {@code checked_add} and {@code HashMap} stay whole.
+ * Terms longer than {@link #MAX_TERM} characters are dropped.
+ */
+public final class Tokenizer {
+
+    public static final int MAX_TERM = 64;
+
+    /** Receives each term and its position (0, 1, 2, ...) within the text. */
+    @FunctionalInterface
+    public interface Sink {
+        void term(String term, int position);
+    }
+
+    private Tokenizer() {
+    }
+
+    /** Tokenizes {@code text} and returns the number of terms produced. */
+    public static int tokenize(CharSequence text, Sink sink) {
+        int position = 0;
+        int n = text.length();
+        int i = 0;
+        while (i < n) {
+            while (i < n && !isTermChar(text.charAt(i))) {
+                i++;
+            }
+            int start = i;
+            while (i < n && isTermChar(text.charAt(i))) {
+                i++;
+            }
+            if (i > start && i - start <= MAX_TERM) {
+                sink.term(lower(text, start, i), position++);
+            }
+        }
+        return position;
+    }
+
+    /** Tokenizes {@code text} and groups the positions of each term, in first-seen order. */
+    public static Terms terms(CharSequence text) {
+        Map<String, IndexWriter.IntList> lists = new LinkedHashMap<>();
+        int length = tokenize(text, (term, position) ->
+                lists.computeIfAbsent(term, t -> new IndexWriter.IntList()).add(position));
+        Map<String, int[]> positions = new LinkedHashMap<>(lists.size() * 2);
+        lists.forEach((term, list) -> positions.put(term, list.toArray()));
+        return new Terms(length, positions);
+    }
+
+    /** A tokenized text: its term count and each distinct term's ascending positions. */
+    public record Terms(int length, Map<String, int[]> positions) {
+    }
+
+    private static boolean isTermChar(char c) {
+        return c == '_' || Character.isLetterOrDigit(c);
+    }
+
+    private static String lower(CharSequence text, int start, int end) {
+        return text.subSequence(start, end).toString().toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,161 @@
+package notes.lang;
+
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.OptionalInt;
+import java.util.function.IntConsumer;
+import java.util.function.IntFunction;
+import java.util.function.IntPredicate;
+import java.util.function.IntSupplier;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * An {@code Option<i32>}: either {@code Some(value)} or {@code None}, with
+ * the combinators of the rust type and no boxing.
+ *
+ * Instances are immutable, two fields, with small final methods. Every
+ * combinator builds its result at a single allocation site and copies
+ * fields rather than returning one of two objects, because C2's escape
+ * analysis gives up on an object that meets another at a merge point.
+ * With that, a chain such as {@code find(x).map(f).unwrapOr(0)} is
+ * scalar-replaced once inlined and allocates nothing. Code producing
+ * options should do the same: {@code of(found, value)} rather than
+ * {@code found ? some(value) : none()}. For storing options in a field or
+ * an array, {@link #pack} encodes one in a {@code long}.
+ *
+ * The {@code ?} operator has no Java form; {@link #andThen} chains a step
+ * that may fail without allocating, while an early
+ * {@code if (o.isNone()) return o;} works but lets the option escape.
+ */
+public final class OptionI32 {
+
+    private static final OptionI32 NONE = new OptionI32(false, 0);
+
+    /** {@link #pack} of {@code None}; every packed {@code Some} has the high word zero. */
+    public static final long PACKED_NONE = -1L;
+
+    private final boolean present;
+    private final int value;
+
+    private OptionI32(boolean present, int value) {
+        this.present = present;
+        this.value = value;
+    }
+
+    public static OptionI32 some(int value) {
+        return new OptionI32(true, value);
+    }
+
+    /** {@code Some(value)} if {@code present}, else {@code None}, from a single allocation site. */
+    public static OptionI32 of(boolean present, int value) {
+        return new OptionI32(present, present ? value : 0);
+    }
+
+    public static OptionI32 none() {
+        return NONE;
+    }
+
+    public static OptionI32 of(OptionalInt optional) {
+        return of(optional.isPresent(), optional.orElse(0));
+    }
+
+    /** The option encoded by {@link #pack}. */
+    public static OptionI32 unpack(long packed) {
+        return of(packed != PACKED_NONE, (int) packed);
+    }
+
+    public boolean isSome() {
+        return present;
+    }
+
+    public boolean isNone() {
+        return !present;
+    }
+
+    /** The value; throws {@link NoSuchElementException} on {@code None}. */
+    public int unwrap() {
+        if (!present) {
+            throw new NoSuchElementException("called unwrap on None");
+        }
+        return value;
+    }
+
+    /** The value; throws {@link NoSuchElementException} with {@code message} on {@code None}. */
+    public int expect(String message) {
+        if (!present) {
+            throw new NoSuchElementException(message);
+        }
+        return value;
+    }
+
+    public int unwrapOr(int fallback) {
+        return present ? value : fallback;
+    }
+
+    public int unwrapOrElse(IntSupplier fallback) {
+        return present ? value : fallback.getAsInt();
+    }
+
+    public OptionI32 map(IntUnaryOperator f) {
+        return new OptionI32(present, present ? f.applyAsInt(value) : 0);
+    }
+
+    public int mapOr(int fallback, IntUnaryOperator f) {
+        return present ? f.applyAsInt(value) : fallback;
+    }
+
+    public OptionI32 andThen(IntFunction<OptionI32> f) {
+        // copy the fields out rather than return either object, so neither escapes
+        boolean p = false;
+        int v = 0;
+        if (present) {
+            OptionI32 next = f.apply(value);
+            p = next.present;
+            v = next.value;
+        }
+        return new OptionI32(p, v);
+    }
+
+    public OptionI32 filter(IntPredicate p) {
+        return of(present && p.test(value), value);
+    }
+
+    public OptionI32 or(OptionI32 other) {
+        return new OptionI32(present || other.present, present ? value : other.value);
+    }
+
+    public void ifSome(IntConsumer action) {
+        if (present) {
+            action.accept(value);
+        }
+    }
+
+    /** {@code Ok(value)} or {@code Err(error)}, as rust's {@code ok_or}. */
+    public <E> ResultLong<E> okOr(E error) {
+        return ResultLong.of(value, present ? null : Objects.requireNonNull(error, "error"));
+    }
+
+    public OptionalInt toOptional() {
+        return present ? OptionalInt.of(value) : OptionalInt.empty();
+    }
+
+    /** The value zero-extended into a {@code long}, or {@link #PACKED_NONE}. */
+    public long pack() {
+        return present ? value & 0xffffffffL : PACKED_NONE;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof OptionI32 other && present == other.present && value == other.value;
+    }
+
+    @Override
+    public int hashCode() {
+        return present ? Integer.hashCode(value) : -1;
+    }
+
+    @Override
+    public String toString() {
+        return present ? "Some(" + value + ")" : "None";
+    }
+}
@@ -0,0 +1,131 @@
+package notes.lang;
+
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.function.Function;
+import java.util.function.LongFunction;
+import java.util.function.LongUnaryOperator;
+import java.util.function.ToLongFunction;
+
+/**
+ * A {@code Result<i64, E>}: either {@code Ok(value)} or {@code Err(error)},
+ * with the combinators of the rust type and no boxed value.
+ *
+ * Built like {@link OptionI32}: each combinator allocates its result at
+ * one site and never returns one of two objects, so an inlined chain of
+ * {@link #of}, {@link #map}, {@link #andThen} and {@link #unwrapOr} is
+ * scalar-replaced and allocates nothing on the {@code Ok} path. The
+ * error is an ordinary reference and costs what it costs.
+ *
+ * {@link #andThen} is the allocation-free form of {@code ?}: the step
+ * runs only on {@code Ok} and an {@code Err} passes through. An early
+ * {@code if (r.isErr()) return r;} also works but lets the result escape;
+ * {@link #propagate} converts the error for a method of another type.
+ */
+public final class ResultLong<E> {
+
+    private final long value;
+    private final E error;
+
+    private ResultLong(long value, E error) {
+        this.value = value;
+        this.error = error;
+    }
+
+    public static <E> ResultLong<E> ok(long value) {
+        return new ResultLong<>(value, null);
+    }
+
+    /** {@code Ok(value)} if {@code error} is null, else {@code Err(error)}, from a single allocation site. */
+    public static <E> ResultLong<E> of(long value, E error) {
+        return new ResultLong<>(error == null ? value : 0, error);
+    }
+
+    public static <E> ResultLong<E> err(E error) {
+        return new ResultLong<>(0, Objects.requireNonNull(error, "error"));
+    }
+
+    public boolean isOk() {
+        return error == null;
+    }
+
+    public boolean isErr() {
+        return error != null;
+    }
+
+    /** The value; throws {@link NoSuchElementException} naming the error on {@code Err}. */
+    public long unwrap() {
+        if (error != null) {
+            throw new NoSuchElementException("called unwrap on Err(" + error + ")");
+        }
+        return value;
+    }
+
+    /** The value; throws {@link NoSuchElementException} with {@code message} on {@code Err}. */
+    public long expect(String message) {
+        if (error != null) {
+            throw new NoSuchElementException(message + ": " + error);
+        }
+        return value;
+    }
+
+    /** The error; throws {@link NoSuchElementException} on {@code Ok}. */
+    public E unwrapErr() {
+        if (error == null) {
+            throw new NoSuchElementException("called unwrapErr on Ok(" + value + ")");
+        }
+        return error;
+    }
+
+    public long unwrapOr(long fallback) {
+        return error == null ? value : fallback;
+    }
+
+    public long unwrapOrElse(ToLongFunction<? super E> fallback) {
+        return error == null ? value : fallback.applyAsLong(error);
+    }
+
+    public ResultLong<E> map(LongUnaryOperator f) {
+        return new ResultLong<>(error == null ? f.applyAsLong(value) : 0, error);
+    }
+
+    public <F> ResultLong<F> mapErr(Function<? super E, ? extends F> f) {
+        return new ResultLong<>(value, error == null ? null : Objects.requireNonNull(f.apply(error), "error"));
+    }
+
+    public ResultLong<E> andThen(LongFunction<ResultLong<E>> f) {
+        // copy the fields out rather than return either object, so neither escapes
+        long v = 0;
+        E e = error;
+        if (e == null) {
+            ResultLong<E> next = f.apply(value);
+            v = next.value;
+            e = next.error;
+        }
+        return new ResultLong<>(v, e);
+    }
+
+    public ResultLong<E> or(ResultLong<E> other) {
+        return new ResultLong<>(error == null ? value : other.value, error == null ? null : other.error);
+    }
+
+    /** This {@code Err} as a result of another type, for an early return; throws on {@code Ok}. */
+    public <T> T propagate(Function<? super E, T> asErr) {
+        return asErr.apply(unwrapErr());
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof ResultLong<?> other && value == other.value && Objects.equals(error, other.error);
+    }
+
+    @Override
+    public int hashCode() {
+        return error == null ? Long.hashCode(value) : ~error.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return error == null ? "Ok(" + value + ")" : "Err(" + error + ")";
+    }
+}
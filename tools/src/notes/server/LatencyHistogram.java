@@ -0,0 +1,64 @@
+package notes.server;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free latency histogram with log-spaced buckets, eight per power of
+ * two, from 1 microsecond up to about 70 minutes. Recording is one atomic
+ * increment; percentiles are read from a snapshot of the counts and are
+ * accurate to the bucket width (about 9%).
+ */
+public final class LatencyHistogram {
+
+    private static final int SUB = 8;
+    private static final int BUCKETS = 32 * SUB;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+    public void record(long nanos) {
+        counts.incrementAndGet(bucket(Math.max(1, nanos / 1000)));
+    }
+
+    static int bucket(long micros) {
+        int exp = 63 - Long.numberOfLeadingZeros(micros);
+        int sub = exp < 3 ? (int) (micros << (3 - exp)) & (SUB - 1) : (int) (micros >>> (exp - 3)) & (SUB - 1);
+        return Math.min(BUCKETS - 1, exp * SUB + sub);
+    }
+
+    /** Upper bound in microseconds of {@code bucket}. */
+    static long upper(int bucket) {
+        int exp = bucket / SUB;
+        int sub = bucket % SUB;
+        return exp < 3 ? Math.max(1, (SUB + sub + 1L) >> (3 - exp)) : (SUB + sub + 1L) << (exp - 3);
+    }
+
+    public long count() {
+        long n = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            n += counts.get(i);
+        }
+        return n;
+    }
+
+    /** The latency in microseconds below which {@code p} (0..1) of the recorded samples fall. */
+    public long percentile(double p) {
+        long[] snapshot = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = counts.get(i);
+            total += snapshot[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(p * total);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                return upper(i);
+            }
+        }
+        return upper(BUCKETS - 1);
+    }
+}
@@ -0,0 +1,312 @@
+package notes.server;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import notes.cache.CachedSearch;
+import notes.cache.TinyLfuCache;
+import notes.corpus.Corpus;
+import notes.index.IndexReader;
+import notes.index.LayeredIndex;
+import notes.index.Reindexer;
+
+/**
+ * Embedded HTTP service over the notes and their index.
+ *
+ * <pre>
+ * GET /search?q=words&amp;k=10           ranked segments as JSON
+ * GET /note?path=Ownership/1_Ownership.java           raw note
+ * GET /snippet?path=...&amp;start=0&amp;end=120          raw byte range of a note
+ * GET /stats                           count, p50 and p99 per endpoint, cache counters
+ * POST /reindex                        refresh the index now; what changed as JSON
+ * </pre>
+ *
+ * Searches go through a {@link CachedSearch} and, on a miss, read straight
+ * from the memory-mapped {@link LayeredIndex}. The index is kept by a
+ * {@link Reindexer}: {@link #refresh}, run by {@code /reindex} and by the
+ * watcher {@link #watch} starts, reindexes the notes that changed on disk,
+ * swaps in the new index and drops only the cached results that depended
+ * on those notes or on terms they gained or lost. Note
+ * and snippet bodies are copied with {@link FileChannel#transferTo}, which
+ * avoids staging them on the heap; {@code com.sun.net.httpserver} does not
+ * expose its socket, so this is the closest it gets to sendfile.
+ *
+ * Handlers block on I/O and are meant to run one request per thread. The
+ * executor is passed in: on JDK 21 that is a virtual-thread-per-task
+ * executor, on this JDK the CLI uses a cached pool.
+ */
+public final class QueryServer {
+
+    private final Path root;
+    private final Reindexer reindexer;
+    private final CachedSearch search;
+    private final HttpServer server;
+    private final Map<String, LatencyHistogram> latency = new LinkedHashMap<>();
+    private ScheduledExecutorService watcher;
+
+    /** Serves the notes under {@code root}; {@code reindexer} is refreshed once before the index is opened. */
+    public QueryServer(Path root, Reindexer reindexer, InetSocketAddress address, ExecutorService executor)
+            throws IOException {
+        this.root = root.toAbsolutePath().normalize();
+        this.reindexer = reindexer;
+        reindexer.refresh();
+        this.search = new CachedSearch(LayeredIndex.open(reindexer.index()), 10_000);
+        this.server = HttpServer.create(address, 1024);
+        server.setExecutor(executor);
+        route("/search", "GET", this::search);
+        route("/note", "GET", this::note);
+        route("/snippet", "GET", this::snippet);
+        route("/stats", "GET", this::stats);
+        route("/reindex", "POST", this::reindex);
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    /** Refreshes the index every {@code periodMillis} until {@link #stop}. */
+    public synchronized void watch(long periodMillis) {
+        if (watcher != null) {
+            return;
+        }
+        watcher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "reindex-watcher");
+            t.setDaemon(true);
+            return t;
+        });
+        watcher.scheduleWithFixedDelay(() -> {
+            try {
+                refresh();
+            } catch (IOException | RuntimeException e) {
+                System.err.println("reindex failed: " + e); // keep serving the index we have; try again next time
+            }
+        }, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Reindexes the notes that changed on disk and, if any did, swaps the
+     * new index into the cache and drops the entries that depend on them.
+     */
+    public synchronized Refresh refresh() throws IOException {
+        Reindexer.Report report = reindexer.refresh();
+        int dropped = 0;
+        if (!report.changed().isEmpty()) {
+            dropped = search.invalidate(LayeredIndex.open(reindexer.index()), report.changed(), report.terms());
+        }
+        return new Refresh(report, dropped, search.generation());
+    }
+
+    public void stop() {
+        server.stop(0);
+        // refresh holds the lock, so the index is not closed under a swap in progress
+        synchronized (this) {
+            if (watcher != null) {
+                watcher.shutdownNow();
+            }
+            search.close();
+        }
+    }
+
+    public int port() {
+        return server.getAddress().getPort();
+    }
+
+    private interface Endpoint {
+        void handle(HttpExchange exchange, Map<String, String> params) throws IOException;
+    }
+
+    private void route(String path, String method, Endpoint endpoint) {
+        LatencyHistogram histogram = new LatencyHistogram();
+        latency.put(path, histogram);
+        HttpHandler handler = exchange -> {
+            long start = System.nanoTime();
+            try {
+                if (!exchange.getRequestMethod().equals(method)) {
+                    send(exchange, 405, "text/plain", method + " only\n");
+                    return;
+                }
+                endpoint.handle(exchange, params(exchange.getRequestURI().getRawQuery()));
+            } catch (IllegalArgumentException e) {
+                send(exchange, 400, "text/plain", e.getMessage() + "\n");
+            } finally {
+                exchange.close();
+                histogram.record(System.nanoTime() - start);
+            }
+        };
+        server.createContext(path, handler);
+    }
+
+    private void search(HttpExchange exchange, Map<String, String> params) throws IOException {
+        String q = required(params, "q");
+        int k = Integer.parseInt(params.getOrDefault("k", "10"));
+        List<IndexReader.Hit> hits = search.search(q, Math.max(1, Math.min(k, 100)));
+        StringBuilder json = new StringBuilder("[");
+        for (IndexReader.Hit hit : hits) {
+            if (json.length() > 1) {
+                json.append(',');
+            }
+            json.append("{\"note\":").append(quote(hit.note()))
+                    .append(",\"segment\":").append(hit.segment())
+                    .append(",\"start\":").append(hit.start())
+                    .append(",\"end\":").append(hit.end())
+                    .append(",\"score\":").append(hit.score()).append('}');
+        }
+        send(exchange, 200, "application/json", json.append("]\n").toString());
+    }
+
+    private void note(HttpExchange exchange, Map<String, String> params) throws IOException {
+        Path note = resolve(required(params, "path"));
+        transfer(exchange, note, 0, Files.size(note));
+    }
+
+    private void snippet(HttpExchange exchange, Map<String, String> params) throws IOException {
+        Path note = resolve(required(params, "path"));
+        long size = Files.size(note);
+        long start = Long.parseLong(required(params, "start"));
+        long end = Long.parseLong(params.getOrDefault("end", Long.toString(size)));
+        if (start < 0 || end < start || end > size) {
+            throw new IllegalArgumentException("range outside note");
+        }
+        transfer(exchange, note, start, end - start);
+    }
+
+    private void stats(HttpExchange exchange, Map<String, String> params) throws IOException {
+        StringBuilder json = new StringBuilder("{");
+        latency.forEach((path, h) -> {
+            if (json.length() > 1) {
+                json.append(',');
+            }
+            json.append(quote(path)).append(":{\"count\":").append(h.count())
+                    .append(",\"p50_us\":").append(h.percentile(0.50))
+                    .append(",\"p99_us\":").append(h.percentile(0.99)).append('}');
+        });
+        TinyLfuCache.Stats cache = search.stats();
+        json.append(",\"cache\":{\"hit_rate\":").append(cache.hitRate())
+                .append(",\"hits\":").append(cache.hits())
+                .append(",\"misses\":").append(cache.misses())
+                .append(",\"evictions\":").append(cache.evictions())
+                .append(",\"rejections\":").append(cache.rejections())
+                .append(",\"invalidations\":").append(cache.invalidations())
+                .append(",\"generation\":").append(search.generation()).append('}');
+        send(exchange, 200, "application/json", json.append("}\n").toString());
+    }
+
+    private void reindex(HttpExchange exchange, Map<String, String> params) throws IOException {
+        Refresh refresh = refresh();
+        Reindexer.Report report = refresh.report();
+        StringBuilder json = new StringBuilder("{\"notes\":").append(report.notes())
+                .append(",\"changed\":[");
+        for (int i = 0; i < report.changed().size(); i++) {
+            json.append(i > 0 ? "," : "").append(quote(report.changed().get(i)));
+        }
+        json.append("],\"segments_tokenized\":").append(report.segmentsTokenized())
+                .append(",\"cache_dropped\":").append(refresh.dropped())
+                .append(",\"generation\":").append(refresh.generation()).append('}');
+        send(exchange, 200, "application/json", json.append('\n').toString());
+    }
+
+    /** Resolves a note path from a request, refusing anything outside the corpus. */
+    private Path resolve(String relative) {
+        Path note = root.resolve(relative).normalize();
+        if (!note.startsWith(root) || !Corpus.isNote(root.relativize(note)) || !Files.isRegularFile(note)) {
+            throw new IllegalArgumentException("no such note: " + relative);
+        }
+        return note;
+    }
+
+    private static void transfer(HttpExchange exchange, Path file, long position, long count) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "text/markdown; charset=utf-8");
+        exchange.sendResponseHeaders(200, count == 0 ? -1 : count);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+             OutputStream body = exchange.getResponseBody()) {
+            WritableByteChannel out = Channels.newChannel(body);
+            long sent = 0;
+            while (sent < count) {
+                sent += channel.transferTo(position + sent, count - sent, out);
+            }
+        }
+    }
+
+    private static void send(HttpExchange exchange, int status, String type, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", type + "; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private static String required(Map<String, String> params, String name) {
+        String value = params.get(name);
+        if (value == null || value.isEmpty()) {
+            throw new IllegalArgumentException("missing parameter " + name);
+        }
+        return value;
+    }
+
+    private static Map<String, String> params(String query) {
+        Map<String, String> params = new HashMap<>();
+        if (query == null) {
+            return params;
+        }
+        for (String pair : query.split("&")) {
+            int eq = pair.indexOf('=');
+            String name = eq < 0 ? pair : pair.substring(0, eq);
+            String value = eq < 0 ? "" : pair.substring(eq + 1);
+            params.put(URLDecoder.decode(name, StandardCharsets.UTF_8), URLDecoder.decode(value, StandardCharsets.UTF_8));
+        }
+        return params;
+    }
+
+    private static String quote(String s) {
+        StringBuilder out = new StringBuilder(s.length() + 2).append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '"' || c == '\\') {
+                out.append('\\').append(c);
+            } else if (c < 0x20) {
+                out.append(String.format("\\u%04x", (int) c));
+            } else {
+                out.append(c);
+            }
+        }
+        return out.append('"').toString();
+    }
+
+    /** What one {@link #refresh} did: the reindex, the cache entries it dropped and the index generation now served. */
+    public record Refresh(Reindexer.Report report, int dropped, long generation) {
+    }
+
+    /** {@code QueryServer <root> <index-dir> [port]}: serves the notes and reindexes them as they change. */
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 2 ? Integer.parseInt(args[2]) : 8080;
+        Path root = Paths.get(args[0]);
+        QueryServer server = new QueryServer(root, new Reindexer(root, Paths.get(args[1])), new InetSocketAddress(port),
+                Executors.newCachedThreadPool());
+        server.watch(2_000);
+        server.start();
+        System.out.println("listening on http://localhost:" + server.port() + "/");
+    }
+}
@@ -0,0 +1,134 @@
+package notes.site;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import notes.syntax.RustLexer;
+
+/**
+ * Syntax highlighting for the fence languages that occur in the notes:
+ * {@code rust}, {@code toml}, {@code bash} and {@code cpp}. Rust goes
+ * through {@link RustLexer}; each other language is one alternation of
+ * comment, string, number and keyword patterns. Highlighted tokens are
+ * wrapped in {@code <span class="...">} and everything else is escaped.
+ * Unknown languages are only escaped.
+ */
+public final class Highlighter {
+
+    private static final String[] CLASSES = {"comment", "string", "number", "keyword", "macro", "lifetime"};
+
+    /** Span class per {@link RustLexer} token kind; null for tokens left plain. */
+    private static final String[] RUST_CLASSES = new String[RustLexer.UNKNOWN + 1];
+
+    private static final RustLexer RUST = new RustLexer();
+    private static final ThreadLocal<RustLexer.Tokens> TOKENS = ThreadLocal.withInitial(RustLexer.Tokens::new);
+
+    static {
+        RUST_CLASSES[RustLexer.COMMENT] = "comment";
+        RUST_CLASSES[RustLexer.STRING] = "string";
+        RUST_CLASSES[RustLexer.CHAR] = "string";
+        RUST_CLASSES[RustLexer.NUMBER] = "number";
+        RUST_CLASSES[RustLexer.KEYWORD] = "keyword";
+        RUST_CLASSES[RustLexer.MACRO] = "macro";
+        RUST_CLASSES[RustLexer.LIFETIME] = "lifetime";
+    }
+
+    private static final Map<String, Language> LANGUAGES = Map.of(
+            "toml", compile(
+                    "#[^\\n]*",
+                    "\"(?:\\\\.|[^\"\\\\])*\"|'[^'\\n]*'",
+                    "\\b\\d[\\d_.]*\\b",
+                    "^\\s*\\[[^\\]\\n]+\\]|\\b(?:true|false)\\b",
+                    null, null),
+            "bash", compile(
+                    "(?<![\\w$])#[^\\n]*",
+                    "\"(?:\\\\.|[^\"\\\\])*\"|'[^']*'",
+                    "\\b\\d+\\b",
+                    words("if then else elif fi for while do done case esac function in export local return cd echo"),
+                    null, null),
+            "cpp", compile(
+                    "//[^\\n]*|/\\*[\\s\\S]*?\\*/",
+                    "\"(?:\\\\.|[^\"\\\\])*\"|'(?:\\\\.|[^'\\\\])'",
+                    "\\b\\d[\\d.]*[uUlLfF]*\\b",
+                    words("auto bool break case char class const delete do double else enum false float for if include "
+                            + "int long namespace new nullptr private public return sizeof static std struct switch "
+                            + "template this true typename unsigned using virtual void while"),
+                    "#\\s*\\w+", null));
+
+    private Highlighter() {
+    }
+
+    public static String highlight(String language, String code) {
+        if (language.equals("rust")) {
+            return rust(code);
+        }
+        Language lang = LANGUAGES.get(language);
+        if (lang == null) {
+            return Markdown.escape(code);
+        }
+        StringBuilder out = new StringBuilder(code.length() * 2);
+        Matcher m = lang.pattern.matcher(code);
+        int last = 0;
+        while (m.find()) {
+            out.append(Markdown.escape(code.substring(last, m.start())));
+            String cls = "plain";
+            for (String name : lang.classes) {
+                if (m.start(name) >= 0) {
+                    cls = name;
+                    break;
+                }
+            }
+            out.append("<span class=\"").append(cls).append("\">").append(Markdown.escape(m.group())).append("</span>");
+            last = m.end();
+        }
+        out.append(Markdown.escape(code.substring(last)));
+        return out.toString();
+    }
+
+    private static String rust(String code) {
+        RustLexer.Tokens tokens = TOKENS.get();
+        RUST.lex(code, tokens);
+        StringBuilder out = new StringBuilder(code.length() * 2);
+        int last = 0;
+        for (int i = 0; i < tokens.size(); i++) {
+            String cls = RUST_CLASSES[tokens.kind(i)];
+            if (cls == null) {
+                continue;
+            }
+            out.append(Markdown.escape(code.substring(last, tokens.start(i))));
+            out.append("<span class=\"").append(cls).append("\">")
+                    .append(Markdown.escape(code.substring(tokens.start(i), tokens.end(i)))).append("</span>");
+            last = tokens.end(i);
+        }
+        out.append(Markdown.escape(code.substring(last)));
+        return out.toString();
+    }
+
+    private static String words(String list) {
+        return "\\b(?:" + list.replace(' ', '|') + ")\\b";
+    }
+
+    private static Language compile(String comment, String string, String number, String keyword, String macro,
+                                    String lifetime) {
+        StringBuilder p = new StringBuilder();
+        List<String> classes = new ArrayList<>();
+        String[] parts = {comment, string, number, keyword, macro, lifetime};
+        for (int i = 0; i < parts.length; i++) {
+            if (parts[i] != null) {
+                if (p.length() > 0) {
+                    p.append('|');
+                }
+                p.append("(?<").append(CLASSES[i]).append('>').append(parts[i]).append(')');
+                classes.add(CLASSES[i]);
+            }
+        }
+        return new Language(Pattern.compile(p.toString(), Pattern.MULTILINE), classes.toArray(new String[0]));
+    }
+
+    /** A language's pattern and the names of the groups it actually has, in {@link #CLASSES} order. */
+    private record Language(Pattern pattern, String[] classes) {
+    }
+}
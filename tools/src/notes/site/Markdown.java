@@ -0,0 +1,260 @@
+package notes.site;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Renders the Markdown used in the notes to HTML: headings, paragraphs,
+ * bullet and numbered lists, pipe tables, fenced code (highlighted by
+ * {@link Highlighter}), answer separators and the inline forms
+ * {@code `code`}, {@code **bold**} and {@code [text](url)}.
+ *
+ * It is line based and forgiving: anything it does not recognise ends up
+ * as an escaped paragraph, never dropped.
+ */
+public final class Markdown {
+
+    private Markdown() {
+    }
+
+    public static String render(String text) {
+        return render(text, new HashMap<>());
+    }
+
+    /**
+     * Renders {@code text}, taking highlighted fences from {@code highlighted}
+     * (keyed by language and code) and adding the ones it had to highlight,
+     * so a block copied across many notes is highlighted once per map.
+     */
+    public static String render(String text, Map<String, String> highlighted) {
+        StringBuilder html = new StringBuilder(text.length() + text.length() / 2);
+        String[] lines = text.split("\r?\n", -1);
+        List<String> paragraph = new ArrayList<>();
+        String list = null;
+        int i = 0;
+        while (i < lines.length) {
+            String line = lines[i];
+            String trimmed = line.strip();
+
+            if (trimmed.startsWith("```")) {
+                flush(html, paragraph);
+                list = closeList(html, list);
+                int ticks = 0;
+                while (ticks < trimmed.length() && trimmed.charAt(ticks) == '`') {
+                    ticks++;
+                }
+                String language = trimmed.substring(ticks).strip();
+                StringBuilder code = new StringBuilder();
+                i++;
+                while (i < lines.length && !isClosingFence(lines[i], ticks)) {
+                    code.append(lines[i]).append('\n');
+                    i++;
+                }
+                i++; // closing fence
+                html.append("<pre><code");
+                if (!language.isEmpty()) {
+                    html.append(" class=\"language-").append(escape(language)).append('"');
+                }
+                String source = code.toString();
+                html.append('>').append(highlighted.computeIfAbsent(language + '\0' + source,
+                        k -> Highlighter.highlight(language, source))).append("</code></pre>\n");
+                continue;
+            }
+            if (trimmed.isEmpty()) {
+                flush(html, paragraph);
+                i++;
+                continue;
+            }
+            if (trimmed.length() >= 3 && trimmed.chars().allMatch(c -> c == '-')) {
+                flush(html, paragraph);
+                list = closeList(html, list);
+                html.append(trimmed.length() >= 20 ? "<hr class=\"answer\">\n" : "<hr>\n");
+                i++;
+                continue;
+            }
+            int hashes = 0;
+            while (hashes < trimmed.length() && trimmed.charAt(hashes) == '#') {
+                hashes++;
+            }
+            if (hashes >= 1 && hashes <= 6 && (hashes == trimmed.length() || trimmed.charAt(hashes) == ' ')) {
+                flush(html, paragraph);
+                list = closeList(html, list);
+                html.append("<h").append(hashes).append('>').append(inline(trimmed.substring(hashes).strip()))
+                        .append("</h").append(hashes).append(">\n");
+                i++;
+                continue;
+            }
+            if (trimmed.startsWith("|") && i + 1 < lines.length && lines[i + 1].strip().matches("\\|?[\\s:|-]+\\|?")
+                    && lines[i + 1].contains("-")) {
+                flush(html, paragraph);
+                list = closeList(html, list);
+                html.append("<table>\n<tr>");
+                for (String cell : cells(trimmed)) {
+                    html.append("<th>").append(inline(cell)).append("</th>");
+                }
+                html.append("</tr>\n");
+                i += 2;
+                while (i < lines.length && lines[i].strip().startsWith("|")) {
+                    html.append("<tr>");
+                    for (String cell : cells(lines[i].strip())) {
+                        html.append("<td>").append(inline(cell)).append("</td>");
+                    }
+                    html.append("</tr>\n");
+                    i++;
+                }
+                html.append("</table>\n");
+                continue;
+            }
+            String item = listItem(trimmed);
+            if (item != null) {
+                flush(html, paragraph);
+                String kind = Character.isDigit(trimmed.charAt(0)) ? "ol" : "ul";
+                if (!kind.equals(list)) {
+                    closeList(html, list);
+                    html.append('<').append(kind).append(">\n");
+                    list = kind;
+                }
+                html.append("<li>").append(inline(item)).append("</li>\n");
+                i++;
+                continue;
+            }
+            if (list != null && Character.isWhitespace(line.charAt(0))) {
+                // indented continuation under a list item
+                html.append("<p class=\"cont\">").append(inline(trimmed)).append("</p>\n");
+                i++;
+                continue;
+            }
+            list = closeList(html, list);
+            paragraph.add(trimmed);
+            i++;
+        }
+        flush(html, paragraph);
+        closeList(html, list);
+        return html.toString();
+    }
+
+    static boolean isClosingFence(String line, int ticks) {
+        String t = line.strip();
+        return t.length() >= ticks && t.chars().allMatch(c -> c == '`');
+    }
+
+    private static String listItem(String trimmed) {
+        if ((trimmed.startsWith("- ") || trimmed.startsWith("* ") || trimmed.startsWith("+ ")) && trimmed.length() > 2) {
+            return trimmed.substring(2);
+        }
+        int d = 0;
+        while (d < trimmed.length() && Character.isDigit(trimmed.charAt(d))) {
+            d++;
+        }
+        if (d > 0 && d + 1 < trimmed.length() && trimmed.charAt(d) == '.' && trimmed.charAt(d + 1) == ' ') {
+            return trimmed.substring(d + 2);
+        }
+        return null;
+    }
+
+    private static List<String> cells(String row) {
+        String inner = row;
+        if (inner.startsWith("|")) {
+            inner = inner.substring(1);
+        }
+        if (inner.endsWith("|")) {
+            inner = inner.substring(0, inner.length() - 1);
+        }
+        List<String> cells = new ArrayList<>();
+        for (String cell : inner.split("\\|", -1)) {
+            cells.add(cell.strip());
+        }
+        return cells;
+    }
+
+    private static String closeList(StringBuilder html, String list) {
+        if (list != null) {
+            html.append("</").append(list).append(">\n");
+        }
+        return null;
+    }
+
+    private static void flush(StringBuilder html, List<String> paragraph) {
+        if (!paragraph.isEmpty()) {
+            html.append("<p>").append(inline(String.join(" ", paragraph))).append("</p>\n");
+            paragraph.clear();
+        }
+    }
+
+    /** Inline code, bold and links; everything else is escaped. */
+    static String inline(String text) {
+        StringBuilder out = new StringBuilder(text.length() + 16);
+        int i = 0;
+        boolean bold = false;
+        while (i < text.length()) {
+            char c = text.charAt(i);
+            if (c == '`') {
+                int close = text.indexOf('`', i + 1);
+                if (close > i) {
+                    out.append("<code>").append(escape(text.substring(i + 1, close))).append("</code>");
+                    i = close + 1;
+                    continue;
+                }
+            } else if (c == '*' && text.startsWith("**", i)) {
+                if (bold || text.indexOf("**", i + 2) > 0) {
+                    out.append(bold ? "</strong>" : "<strong>");
+                    bold = !bold;
+                    i += 2;
+                    continue;
+                }
+            } else if (c == '[') {
+                int close = closingBracket(text, i);
+                int end = close < 0 || !text.startsWith("(", close + 1) ? -1 : text.indexOf(')', close + 2);
+                if (end > close && text.substring(i, end).indexOf('\n') < 0) {
+                    String url = text.substring(close + 2, end);
+                    if (url.startsWith("http://") || url.startsWith("https://")) {
+                        out.append("<a href=\"").append(escape(url)).append("\">")
+                                .append(inline(text.substring(i + 1, close))).append("</a>");
+                        i = end + 1;
+                        continue;
+                    }
+                }
+            }
+            escape(out, c);
+            i++;
+        }
+        if (bold) {
+            out.append("</strong>");
+        }
+        return out.toString();
+    }
+
+    /** Index of the {@code ]} that closes the {@code [} at {@code open}, counting nested pairs; -1 if none. */
+    private static int closingBracket(String text, int open) {
+        int depth = 0;
+        for (int i = open; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '[') {
+                depth++;
+            } else if (c == ']' && --depth == 0) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    static String escape(String s) {
+        StringBuilder out = new StringBuilder(s.length() + 8);
+        for (int i = 0; i < s.length(); i++) {
+            escape(out, s.charAt(i));
+        }
+        return out.toString();
+    }
+
+    private static void escape(StringBuilder out, char c) {
+        switch (c) {
+            case '<' -> out.append("&lt;");
+            case '>' -> out.append("&gt;");
+            case '&' -> out.append("&amp;");
+            case '"' -> out.append("&quot;");
+            default -> out.append(c);
+        }
+    }
+}
@@ -0,0 +1,223 @@
+package notes.site;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import notes.corpus.ContentHash;
+import notes.corpus.NoteWalker;
+
+/**
+ * Renders the notes into a static HTML site, one page per note plus an
+ * {@code index.html} listing every topic.
+ *
+ * Pages are rendered in parallel. A cache file in the output directory
+ * remembers the content hash each page was built from; a note whose hash
+ * is unchanged is skipped, and pages of deleted notes are removed. The
+ * index is regenerated every run but only written when its bytes differ,
+ * so a one-note edit rewrites exactly one page. Code blocks repeated
+ * across notes are highlighted once per run and shared between pages.
+ * Bump {@link #VERSION} whenever the rendering changes so every page is
+ * rebuilt once.
+ */
+public final class SiteGenerator {
+
+    static final int VERSION = 3;
+    private static final String CACHE = ".site-cache";
+
+    private final Path root;
+    private final Path out;
+
+    public SiteGenerator(Path root, Path out) {
+        this.root = root;
+        this.out = out;
+    }
+
+    public Report generate() throws IOException {
+        Files.createDirectories(out);
+        Map<String, Long> previous = loadCache();
+        Map<String, Long> current = new ConcurrentHashMap<>();
+        Map<String, String> titles = new ConcurrentHashMap<>();
+        Map<String, String> highlighted = new ConcurrentHashMap<>();
+        AtomicInteger rendered = new AtomicInteger();
+        List<NoteWalker.NoteRef> notes = new NoteWalker(root).notes();
+
+        notes.parallelStream().forEach(note -> {
+            try {
+                byte[] bytes = Files.readAllBytes(note.path());
+                String relative = note.relative();
+                long hash = ContentHash.of(bytes) * 31 + VERSION;
+                String text = new String(bytes, StandardCharsets.UTF_8);
+                titles.put(relative, title(text, note.name()));
+                current.put(relative, hash);
+                Path page = out.resolve(pagePath(relative));
+                Long before = previous.get(relative);
+                if (before == null || before != hash || !Files.exists(page)) {
+                    Files.createDirectories(page.getParent());
+                    Files.writeString(page, page(relative, titles.get(relative), text, highlighted), StandardCharsets.UTF_8);
+                    rendered.incrementAndGet();
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+
+        int removed = 0;
+        for (String gone : previous.keySet()) {
+            if (!current.containsKey(gone) && Files.deleteIfExists(out.resolve(pagePath(gone)))) {
+                removed++;
+            }
+        }
+        boolean index = writeIfChanged(out.resolve("index.html"), index(titles));
+        writeIfChanged(out.resolve("style.css"), STYLE);
+        saveCache(current);
+        return new Report(notes.size(), rendered.get(), removed, index);
+    }
+
+    static String pagePath(String relative) {
+        int dot = relative.lastIndexOf('.');
+        return (dot > relative.lastIndexOf('/') ? relative.substring(0, dot) : relative) + ".html";
+    }
+
+    /** Percent-encodes each path segment so names with spaces, {@code <T>} or {@code &} link correctly. */
+    static String href(String relative) {
+        StringBuilder href = new StringBuilder();
+        for (String segment : relative.split("/", -1)) {
+            if (href.length() > 0) {
+                href.append('/');
+            }
+            href.append(URLEncoder.encode(segment, StandardCharsets.UTF_8).replace("+", "%20"));
+        }
+        return href.toString();
+    }
+
+    /**
+     * The first heading outside code fences, read the way {@link Markdown}
+     * reads one: one to six {@code #}s and a space. Falls back to the file
+     * name without its extension.
+     */
+    private static String title(String text, String fallback) {
+        int fence = 0;
+        for (String line : text.split("\n", 200)) {
+            String t = line.strip();
+            if (fence > 0) {
+                if (Markdown.isClosingFence(line, fence)) {
+                    fence = 0;
+                }
+                continue;
+            }
+            if (t.startsWith("```")) {
+                while (fence < t.length() && t.charAt(fence) == '`') {
+                    fence++;
+                }
+                continue;
+            }
+            int hashes = 0;
+            while (hashes < t.length() && t.charAt(hashes) == '#') {
+                hashes++;
+            }
+            if (hashes >= 1 && hashes <= 6 && hashes < t.length() && t.charAt(hashes) == ' ') {
+                String heading = t.substring(hashes).strip();
+                if (!heading.isEmpty()) {
+                    return heading;
+                }
+            }
+        }
+        int dot = fallback.lastIndexOf('.');
+        return dot > 0 ? fallback.substring(0, dot) : fallback;
+    }
+
+    private static String page(String relative, String title, String text, Map<String, String> highlighted) {
+        String up = "../".repeat((int) relative.chars().filter(c -> c == '/').count());
+        return "<!DOCTYPE html>\n<html><head><meta charset=\"utf-8\"><title>" + Markdown.escape(title)
+                + "</title>\n<link rel=\"stylesheet\" href=\"" + up + "style.css\"></head><body>\n"
+                + "<nav><a href=\"" + up + "index.html\">All topics</a> / " + Markdown.escape(relative) + "</nav>\n"
+                + "<main>\n" + Markdown.render(text, highlighted) + "</main>\n</body></html>\n";
+    }
+
+    private static String index(Map<String, String> titles) {
+        Map<String, Map<String, String>> topics = new TreeMap<>();
+        titles.forEach((relative, title) -> {
+            int slash = relative.lastIndexOf('/');
+            String topic = slash < 0 ? "" : relative.substring(0, slash);
+            topics.computeIfAbsent(topic, t -> new TreeMap<>()).put(relative, title);
+        });
+        StringBuilder html = new StringBuilder("<!DOCTYPE html>\n<html><head><meta charset=\"utf-8\">"
+                + "<title>Rust notes</title>\n<link rel=\"stylesheet\" href=\"style.css\"></head><body>\n"
+                + "<h1>Rust notes</h1>\n");
+        topics.forEach((topic, pages) -> {
+            html.append("<h2>").append(Markdown.escape(topic.isEmpty() ? "Misc" : topic)).append("</h2>\n<ul>\n");
+            pages.forEach((relative, title) -> html.append("<li><a href=\"").append(href(pagePath(relative)))
+                    .append("\">").append(Markdown.escape(title)).append("</a></li>\n"));
+            html.append("</ul>\n");
+        });
+        return html.append("</body></html>\n").toString();
+    }
+
+    private static boolean writeIfChanged(Path file, String content) throws IOException {
+        byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+        try {
+            if (ContentHash.of(Files.readAllBytes(file)) == ContentHash.of(bytes)) {
+                return false;
+            }
+        } catch (NoSuchFileException e) {
+            // first build
+        }
+        Files.write(file, bytes);
+        return true;
+    }
+
+    private Map<String, Long> loadCache() throws IOException {
+        Map<String, Long> cache = new TreeMap<>();
+        try {
+            for (String line : Files.readAllLines(out.resolve(CACHE), StandardCharsets.UTF_8)) {
+                int tab = line.indexOf('\t');
+                if (tab > 0) {
+                    cache.put(line.substring(tab + 1), Long.parseUnsignedLong(line.substring(0, tab), 16));
+                }
+            }
+        } catch (NoSuchFileException e) {
+            // first build
+        }
+        return cache;
+    }
+
+    private void saveCache(Map<String, Long> hashes) throws IOException {
+        StringBuilder text = new StringBuilder();
+        new TreeMap<>(hashes).forEach((relative, hash) ->
+                text.append(ContentHash.hex(hash)).append('\t').append(relative).append('\n'));
+        writeIfChanged(out.resolve(CACHE), text.toString());
+    }
+
+    /** Notes seen, pages written, pages deleted, and whether the index was rewritten. */
+    public record Report(int notes, int rendered, int removed, boolean index) {
+    }
+
+    private static final String STYLE = """
+            body { font: 16px/1.5 system-ui, sans-serif; max-width: 52rem; margin: 2rem auto; padding: 0 1rem; }
+            pre { background: #f6f8fa; padding: .75rem; overflow-x: auto; }
+            hr.answer { border: 0; border-top: 3px double #999; margin: 2.5rem 0; }
+            table { border-collapse: collapse; } td, th { border: 1px solid #ccc; padding: .25rem .5rem; }
+            .comment { color: #6a737d; } .string { color: #032f62; } .number { color: #005cc5; }
+            .keyword { color: #d73a49; } .macro { color: #6f42c1; } .lifetime { color: #e36209; }
+            """;
+
+    /** {@code SiteGenerator <root> <out>} */
+    public static void main(String[] args) throws IOException {
+        long t0 = System.nanoTime();
+        Report report = new SiteGenerator(Paths.get(args[0]), Paths.get(args[1])).generate();
+        System.out.printf("%d notes: %d pages rendered, %d removed, index %s in %d ms%n", report.notes(),
+                report.rendered(), report.removed(), report.index() ? "rewritten" : "unchanged",
+                (System.nanoTime() - t0) / 1_000_000);
+    }
+}
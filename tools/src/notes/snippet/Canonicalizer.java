@@ -0,0 +1,257 @@
+package notes.snippet;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import notes.corpus.ContentHash;
+import notes.syntax.RustLexer;
+
+/**
+ * Reduces a fenced block to a canonical form, so copies of an example that
+ * differ only in layout, comments or local names compare equal.
+ *
+ * Rust code is lexed with {@link RustLexer}; comments are dropped and the
+ * remaining tokens are joined by single spaces. Names the snippet itself
+ * introduces, in {@code let}, {@code for}, closure and match arm patterns,
+ * as {@code fn} parameters or as the name of a {@code fn}, are renamed
+ * {@code $0}, {@code $1}, ... in order of first appearance wherever they
+ * are used outside a path or a field access; {@code $} cannot occur in a
+ * rust identifier, so the names never collide with real ones. Everything
+ * else keeps its text: types, primitive ones included, paths such as
+ * {@code String::from}, methods, macros, literals, and functions the
+ * snippet calls but does not define. So
+ * {@code let s1 = String::from("hello"); let s2 = s1;} and
+ * {@code let a = String::from("hello"); let b = a;} are the same snippet,
+ * but {@code let x: u8 = 5;} and {@code let x: i32 = 5;} are not, nor are
+ * {@code drop(s)} and {@code takes_ownership(s)}. Other languages only
+ * have their whitespace collapsed.
+ *
+ * Not thread-safe: the lexer's token buffer is reused between calls.
+ */
+public final class Canonicalizer {
+
+    private static final Set<String> PRIMITIVES = Set.of("i8", "i16", "i32", "i64", "i128", "isize", "u8", "u16",
+            "u32", "u64", "u128", "usize", "f32", "f64", "bool", "char", "str");
+
+    private final RustLexer lexer = new RustLexer();
+    private final RustLexer.Tokens tokens = new RustLexer.Tokens();
+    private final Set<String> bound = new HashSet<>();
+    private final Map<String, String> names = new HashMap<>();
+
+    /** The canonical text of {@code code} fenced as {@code language}. */
+    public String canonical(String language, String code) {
+        return language.equals("rust") ? rust(code) : whitespace(code);
+    }
+
+    /** Hash of the language and canonical text; equal for snippets that differ only in layout and names. */
+    public long hash(String language, String code) {
+        return ContentHash.of((language + '\0' + canonical(language, code)).getBytes(StandardCharsets.UTF_8));
+    }
+
+    private String rust(String code) {
+        lexer.lex(code, tokens);
+        int n = tokens.size();
+        bound.clear();
+        bindings(code, n);
+        names.clear();
+        StringBuilder out = new StringBuilder(code.length());
+        for (int i = 0; i < n; i++) {
+            int kind = tokens.kind(i);
+            if (kind == RustLexer.COMMENT) {
+                continue;
+            }
+            if (out.length() > 0) {
+                out.append(' ');
+            }
+            String text = code.substring(tokens.start(i), tokens.end(i));
+            if (kind == RustLexer.IDENT && bound.contains(text) && !inPath(code, i, n)) {
+                text = names.computeIfAbsent(text, t -> "$" + names.size());
+            }
+            out.append(text);
+        }
+        return out.toString();
+    }
+
+    /**
+     * Collects into {@link #bound} the names the snippet introduces: the
+     * identifiers of {@code let}, {@code for}, closure and match arm
+     * patterns, {@code fn} names and {@code fn} parameters.
+     */
+    private void bindings(String code, int n) {
+        for (int i = 0; i < n; i++) {
+            if (tokens.kind(i) == RustLexer.KEYWORD) {
+                if (tokens.is(i, code, "let") || tokens.is(i, code, "for")) {
+                    i = pattern(code, i + 1, n) - 1;
+                } else if (tokens.is(i, code, "fn") && i + 1 < n && tokens.kind(i + 1) == RustLexer.IDENT) {
+                    bind(code, i + 1, n);
+                    int k = i + 2;
+                    while (k < n && !tokens.is(k, code, "(") && !tokens.is(k, code, "{")) {
+                        k++;
+                    }
+                    if (k < n && tokens.is(k, code, "(")) {
+                        i = parameters(code, k + 1, n, ")") - 1;
+                    }
+                }
+            } else if (tokens.is(i, code, "|") && startsClosure(code, i)) {
+                i = parameters(code, i + 1, n, "|");
+            } else if (tokens.is(i, code, "=>")) {
+                // an arm may list alternatives with '|'; a guard after 'if' binds nothing
+                int k = pattern(code, armStart(code, i), i);
+                while (k < i && tokens.is(k, code, "|")) {
+                    k = pattern(code, k + 1, i);
+                }
+            }
+        }
+    }
+
+    /**
+     * Binds the identifiers of the pattern starting at token {@code i}, up
+     * to the first {@code :}, {@code =}, {@code ;}, {@code ,}, {@code |},
+     * {@code in} or {@code if} outside brackets. Returns the token that ends it.
+     */
+    private int pattern(String code, int i, int n) {
+        int depth = 0;
+        for (; i < n; i++) {
+            if (opens(code, i)) {
+                depth++;
+            } else if (closes(code, i)) {
+                if (depth == 0) {
+                    break;
+                }
+                depth--;
+            } else if (depth == 0 && (tokens.is(i, code, ":") || tokens.is(i, code, "=")
+                    || tokens.is(i, code, ";") || tokens.is(i, code, ",") || tokens.is(i, code, "|")
+                    || tokens.is(i, code, "in") || tokens.is(i, code, "if"))) {
+                break;
+            } else if (tokens.kind(i) == RustLexer.IDENT && !(depth > 0 && i + 1 < n && tokens.is(i + 1, code, ":"))) {
+                // a name followed by ':' inside a struct pattern is the field, not the binding
+                bind(code, i, n);
+            }
+        }
+        return i;
+    }
+
+    /** Binds a parameter list starting at token {@code i}, skipping the types; returns the closing token. */
+    private int parameters(String code, int i, int n, String close) {
+        while (i < n && !tokens.is(i, code, close)) {
+            i = pattern(code, i, n);
+            if (i < n && tokens.is(i, code, ":")) {
+                i = skipType(code, i + 1, n);
+            }
+            if (i < n && tokens.is(i, code, ",")) {
+                i++;
+            } else {
+                break;
+            }
+        }
+        return i;
+    }
+
+    /** Skips a type up to the {@code ,} or closing token that follows it outside brackets. */
+    private int skipType(String code, int i, int n) {
+        int depth = 0;
+        for (; i < n; i++) {
+            if (opens(code, i) || tokens.is(i, code, "<")) {
+                depth++;
+            } else if (tokens.is(i, code, ">>")) {
+                depth -= 2;
+            } else if (closes(code, i) || tokens.is(i, code, ">")) {
+                if (depth == 0) {
+                    break;
+                }
+                depth--;
+            } else if (depth <= 0 && (tokens.is(i, code, ",") || tokens.is(i, code, "|")
+                    || tokens.is(i, code, "=") || tokens.is(i, code, ";"))) {
+                break;
+            }
+        }
+        return i;
+    }
+
+    /** The first token of the match arm whose {@code =>} is token {@code arrow}. */
+    private int armStart(String code, int arrow) {
+        int k = arrow - 1;
+        while (k >= 0) {
+            if (tokens.is(k, code, ",") || opens(code, k)) {
+                break;
+            }
+            if (closes(code, k)) {
+                int open = matchingOpen(code, k);
+                // the block body of the previous arm ends here
+                if (open <= 0 || tokens.is(open - 1, code, "=>")) {
+                    break;
+                }
+                k = open;
+            }
+            k--;
+        }
+        return k + 1;
+    }
+
+    private int matchingOpen(String code, int close) {
+        int depth = 0;
+        for (int k = close; k >= 0; k--) {
+            if (closes(code, k)) {
+                depth++;
+            } else if (opens(code, k) && --depth == 0) {
+                return k;
+            }
+        }
+        return -1;
+    }
+
+    /** True if the {@code |} at token {@code i} opens a closure's parameter list rather than an or. */
+    private boolean startsClosure(String code, int i) {
+        return i == 0 || tokens.is(i - 1, code, "(") || tokens.is(i - 1, code, "=") || tokens.is(i - 1, code, ",")
+                || tokens.is(i - 1, code, "{") || tokens.is(i - 1, code, ";") || tokens.is(i - 1, code, "move");
+    }
+
+    private void bind(String code, int i, int n) {
+        String text = code.substring(tokens.start(i), tokens.end(i));
+        char first = text.charAt(0);
+        if ((Character.isLowerCase(first) || first == '_') && !PRIMITIVES.contains(text) && !inPath(code, i, n)) {
+            bound.add(text);
+        }
+    }
+
+    /** True if identifier token {@code i} is a path segment or a member rather than a name on its own. */
+    private boolean inPath(String code, int i, int n) {
+        if (i > 0 && (tokens.is(i - 1, code, "::") || tokens.is(i - 1, code, "."))) {
+            return true;
+        }
+        return i + 1 < n && tokens.is(i + 1, code, "::");
+    }
+
+    private boolean opens(String code, int i) {
+        return tokens.is(i, code, "(") || tokens.is(i, code, "[") || tokens.is(i, code, "{");
+    }
+
+    private boolean closes(String code, int i) {
+        return tokens.is(i, code, ")") || tokens.is(i, code, "]") || tokens.is(i, code, "}");
+    }
+
+    private static String whitespace(String code) {
+        StringBuilder out = new StringBuilder(code.length());
+        int n = code.length();
+        int i = 0;
+        while (i < n) {
+            while (i < n && Character.isWhitespace(code.charAt(i))) {
+                i++;
+            }
+            int start = i;
+            while (i < n && !Character.isWhitespace(code.charAt(i))) {
+                i++;
+            }
+            if (i > start) {
+                if (out.length() > 0) {
+                    out.append(' ');
+                }
+                out.append(code, start, i);
+            }
+        }
+        return out.toString();
+    }
+}
@@ -0,0 +1,250 @@
+package notes.snippet;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+
+import notes.corpus.ContentHash;
+
+/**
+ * Column reader over a snippet catalog written by {@link SnippetCatalogWriter}.
+ *
+ * Row accessors read one cell straight from the memory-mapped file.
+ * Queries such as {@link #declaring} and {@link #inLanguage} scan a single
+ * int column, a few kilobytes for the whole corpus, without touching the
+ * notes or the other columns; {@link #distinct} likewise reads only the
+ * canonical hashes. {@link #find} binary searches the rows ordered by id.
+ * Only the two small dictionaries, note paths and languages, are decoded
+ * onto the heap. Safe to share between threads.
+ */
+public final class SnippetCatalog implements AutoCloseable {
+
+    /** Kinds of declared items counted per rust snippet. */
+    public enum Item {
+        FN("fn"), STRUCT("struct"), ENUM("enum"), TRAIT("trait"), IMPL("impl");
+
+        private final String keyword;
+
+        Item(String keyword) {
+            this.keyword = keyword;
+        }
+
+        public String keyword() {
+            return keyword;
+        }
+    }
+
+    private static final int ITEM_COUNT = Item.values().length;
+
+    private final FileChannel channel;
+    private final MappedByteBuffer map;
+    private final int rows;
+    private final int[] column = new int[SnippetCatalogWriter.COLUMNS];
+    private final String[] notes;
+    private final String[] languages;
+
+    public SnippetCatalog(Path file) throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.READ);
+        map = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        if (map.getInt(0) != SnippetCatalogWriter.MAGIC || map.getInt(4) != SnippetCatalogWriter.VERSION
+                || map.getInt(12) != SnippetCatalogWriter.COLUMNS) {
+            channel.close();
+            throw new IOException("not a snippet catalog: " + file);
+        }
+        rows = map.getInt(8);
+        for (int c = 0; c < column.length; c++) {
+            column[c] = map.getInt(SnippetCatalogWriter.HEADER + c * 4);
+        }
+        notes = dictionary(column[SnippetCatalogWriter.NOTES]);
+        languages = dictionary(column[SnippetCatalogWriter.LANGUAGES]);
+    }
+
+    public int size() {
+        return rows;
+    }
+
+    public long id(int row) {
+        return map.getLong(column[SnippetCatalogWriter.ID] + row * 8);
+    }
+
+    public long hash(int row) {
+        return map.getLong(column[SnippetCatalogWriter.HASH] + row * 8);
+    }
+
+    /** {@link Canonicalizer} hash; equal for copies that differ only in layout and local names. */
+    public long canonical(int row) {
+        return map.getLong(column[SnippetCatalogWriter.CANONICAL] + row * 8);
+    }
+
+    public String note(int row) {
+        return notes[intAt(SnippetCatalogWriter.NOTE, row)];
+    }
+
+    /** Fence language, empty for a bare fence. */
+    public String language(int row) {
+        return languages[intAt(SnippetCatalogWriter.LANGUAGE, row)];
+    }
+
+    public int segment(int row) {
+        return intAt(SnippetCatalogWriter.SEGMENT, row);
+    }
+
+    public int startLine(int row) {
+        return intAt(SnippetCatalogWriter.START_LINE, row);
+    }
+
+    public int endLine(int row) {
+        return intAt(SnippetCatalogWriter.END_LINE, row);
+    }
+
+    /** How many items of {@code kind} the snippet declares. */
+    public int count(int row, Item kind) {
+        return map.getShort(column[SnippetCatalogWriter.COUNTS] + (row * ITEM_COUNT + kind.ordinal()) * 2);
+    }
+
+    /** The declared items, e.g. {@code "struct Point, impl Display for Point, fn main"}. */
+    public String items(int row) {
+        int at = column[SnippetCatalogWriter.NAMES];
+        int base = at + (rows + 1) * 4;
+        int start = map.getInt(at + row * 4);
+        byte[] bytes = new byte[map.getInt(at + row * 4 + 4) - start];
+        map.get(base + start, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /** Rows declaring at least one item of {@code kind}; scans the items column only. */
+    public int[] declaring(Item kind) {
+        int at = column[SnippetCatalogWriter.ITEMS];
+        int bit = 1 << kind.ordinal();
+        int[] out = new int[16];
+        int n = 0;
+        for (int row = 0; row < rows; row++) {
+            if ((map.getInt(at + row * 4) & bit) != 0) {
+                if (n == out.length) {
+                    out = Arrays.copyOf(out, n * 2);
+                }
+                out[n++] = row;
+            }
+        }
+        return Arrays.copyOf(out, n);
+    }
+
+    /** Rows fenced as {@code language}; scans the language column only. */
+    public int[] inLanguage(String language) {
+        int code = Arrays.asList(languages).indexOf(language);
+        if (code < 0) {
+            return new int[0];
+        }
+        int at = column[SnippetCatalogWriter.LANGUAGE];
+        int[] out = new int[16];
+        int n = 0;
+        for (int row = 0; row < rows; row++) {
+            if (map.getInt(at + row * 4) == code) {
+                if (n == out.length) {
+                    out = Arrays.copyOf(out, n * 2);
+                }
+                out[n++] = row;
+            }
+        }
+        return Arrays.copyOf(out, n);
+    }
+
+    /**
+     * Rows whose canonical hash has not appeared in an earlier row: one per
+     * distinct snippet, for work that only needs to see each example once.
+     * Scans the canonical column only.
+     */
+    public int[] distinct() {
+        int at = column[SnippetCatalogWriter.CANONICAL];
+        Set<Long> seen = new HashSet<>();
+        int[] out = new int[16];
+        int n = 0;
+        for (int row = 0; row < rows; row++) {
+            if (seen.add(map.getLong(at + row * 8))) {
+                if (n == out.length) {
+                    out = Arrays.copyOf(out, n * 2);
+                }
+                out[n++] = row;
+            }
+        }
+        return Arrays.copyOf(out, n);
+    }
+
+    /** The row with snippet id {@code id}, or -1. */
+    public int find(long id) {
+        int at = column[SnippetCatalogWriter.BY_ID];
+        int lo = 0;
+        int hi = rows - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int row = map.getInt(at + mid * 4);
+            int c = Long.compare(id(row), id);
+            if (c == 0) {
+                return row;
+            }
+            if (c < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return -1;
+    }
+
+    private int intAt(int c, int row) {
+        return map.getInt(column[c] + row * 4);
+    }
+
+    private String[] dictionary(int at) {
+        int count = map.getInt(at);
+        int offsets = at + 4;
+        int base = offsets + (count + 1) * 4;
+        String[] out = new String[count];
+        for (int i = 0; i < count; i++) {
+            int start = map.getInt(offsets + i * 4);
+            byte[] bytes = new byte[map.getInt(offsets + i * 4 + 4) - start];
+            map.get(base + start, bytes);
+            out[i] = new String(bytes, StandardCharsets.UTF_8);
+        }
+        return out;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /** {@code SnippetCatalog <root> <file> [fn|struct|enum|trait|impl]}: builds the catalog and lists matching snippets. */
+    public static void main(String[] args) throws IOException {
+        Path file = Paths.get(args[1]);
+        long t0 = System.nanoTime();
+        SnippetCatalogWriter writer = SnippetCatalogWriter.fromCorpus(Paths.get(args[0]));
+        writer.write(file);
+        long t1 = System.nanoTime();
+        try (SnippetCatalog catalog = new SnippetCatalog(file)) {
+            System.out.printf("%d snippets (%d distinct) cataloged in %d ms%n", catalog.size(),
+                    catalog.distinct().length, (t1 - t0) / 1_000_000);
+            for (String language : catalog.languages) {
+                System.out.printf("  %-6s %d%n", language.isEmpty() ? "(bare)" : language,
+                        catalog.inLanguage(language).length);
+            }
+            Item kind = Item.valueOf((args.length > 2 ? args[2] : "impl").toUpperCase(Locale.ROOT));
+            long t2 = System.nanoTime();
+            int[] matches = catalog.declaring(kind);
+            long micros = (System.nanoTime() - t2) / 1000;
+            for (int row : matches) {
+                System.out.printf("%s  %s #%d lines %d-%d: %s%n", ContentHash.hex(catalog.id(row)), catalog.note(row),
+                        catalog.segment(row), catalog.startLine(row), catalog.endLine(row), catalog.items(row));
+            }
+            System.out.printf("%d snippets declare %s, column scan in %d us%n", matches.length, kind.keyword(), micros);
+        }
+    }
+}
@@ -0,0 +1,318 @@
+package notes.snippet;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import notes.corpus.ContentHash;
+import notes.corpus.NoteHandler;
+import notes.corpus.NoteWalker;
+import notes.corpus.SegmentParser;
+import notes.syntax.RustLexer;
+
+/**
+ * Extracts every fenced block of the notes and writes the columnar file
+ * read by {@link SnippetCatalog}.
+ *
+ * A snippet's id is a hash of its note path, its content hash and how
+ * many identical blocks come before it in that note. It survives edits
+ * anywhere else in the note, moves within it, and changes to other
+ * notes. The declared items of rust blocks (fns, structs, enums, traits
+ * and impls) are read off the {@link RustLexer} token stream, and the
+ * {@link Canonicalizer} hash ties together copies that differ only in
+ * layout and local names.
+ *
+ * Each column is stored contiguously, so a query touches only the columns
+ * it filters on:
+ *
+ * <pre>
+ * header     int magic, version, rows, columns
+ * directory  int[columns + 1] column offsets, padded to 8 bytes
+ * id         long[rows]
+ * hash       long[rows]   content hash of the code
+ * canonical  long[rows]   {@link Canonicalizer} hash of the language and code
+ * note       int[rows]    into the notes dictionary
+ * language   int[rows]    into the languages dictionary
+ * segment    int[rows]
+ * startLine  int[rows]    1-based line of the opening fence
+ * endLine    int[rows]    line of the closing fence
+ * items      int[rows]    bit set of {@link SnippetCatalog.Item}s declared
+ * counts     short[rows * items]
+ * names      int[rows + 1] offsets, then UTF-8 "fn main, struct Point, ..."
+ * notes      int count, int[count + 1] offsets, then UTF-8
+ * languages  int count, int[count + 1] offsets, then UTF-8
+ * byId       int[rows]    rows ordered by id, for lookups
+ * </pre>
+ */
+public final class SnippetCatalogWriter {
+
+    static final int MAGIC = 0x4e534e50; // "NSNP"
+    static final int VERSION = 2;
+    static final int HEADER = 4 * 4;
+
+    static final int ID = 0;
+    static final int HASH = 1;
+    static final int CANONICAL = 2;
+    static final int NOTE = 3;
+    static final int LANGUAGE = 4;
+    static final int SEGMENT = 5;
+    static final int START_LINE = 6;
+    static final int END_LINE = 7;
+    static final int ITEMS = 8;
+    static final int COUNTS = 9;
+    static final int NAMES = 10;
+    static final int NOTES = 11;
+    static final int LANGUAGES = 12;
+    static final int BY_ID = 13;
+    static final int COLUMNS = 14;
+
+    private static final SnippetCatalog.Item[] ITEM_KINDS = SnippetCatalog.Item.values();
+
+    private final List<String> notes = new ArrayList<>();
+    private final Map<String, Integer> noteIds = new HashMap<>();
+    private final List<String> languages = new ArrayList<>();
+    private final Map<String, Integer> languageIds = new HashMap<>();
+    private final List<Row> rows = new ArrayList<>();
+    private final RustLexer lexer = new RustLexer();
+    private final RustLexer.Tokens tokens = new RustLexer.Tokens();
+    private final Canonicalizer canonicalizer = new Canonicalizer();
+
+    private record Row(long id, long hash, long canonical, int note, int language, int segment, int startLine, int endLine,
+                       int items, short[] counts, String names) {
+    }
+
+    /** Every fenced block of every note under {@code root}. */
+    public static SnippetCatalogWriter fromCorpus(Path root) throws IOException {
+        SnippetCatalogWriter writer = new SnippetCatalogWriter();
+        SegmentParser parser = new SegmentParser();
+        for (NoteWalker.NoteRef note : new NoteWalker(root).notes()) {
+            writer.addNote(note.relative(), Files.readAllBytes(note.path()), parser);
+        }
+        return writer;
+    }
+
+    /** Adds the fenced blocks of one note, given its bytes. */
+    public void addNote(String note, byte[] bytes, SegmentParser parser) throws IOException {
+        int count = 1;
+        for (byte b : bytes) {
+            if (b == '\n') {
+                count++;
+            }
+        }
+        int[] lines = new int[count];
+        for (int i = 0, line = 1; i < bytes.length; i++) {
+            if (bytes[i] == '\n') {
+                lines[line++] = i + 1;
+            }
+        }
+        int noteId = id(noteIds, notes, note);
+        Map<Long, Integer> seen = new HashMap<>();
+        parser.parse(new ByteArrayInputStream(bytes), new NoteHandler() {
+            int segment;
+
+            @Override
+            public void segment(int index, long offset) {
+                segment = index;
+            }
+
+            @Override
+            public void fence(String language, long start, long end, long codeStart, long codeEnd) {
+                long hash = ContentHash.of(bytes, (int) codeStart, (int) codeEnd);
+                int occurrence = seen.merge(hash, 1, Integer::sum) - 1;
+                String key = note + '\0' + ContentHash.hex(hash) + '\0' + occurrence;
+                long id = ContentHash.of(key.getBytes(StandardCharsets.UTF_8));
+                String code = new String(bytes, (int) codeStart, (int) (codeEnd - codeStart), StandardCharsets.UTF_8);
+                short[] counts = new short[ITEM_KINDS.length];
+                StringBuilder names = new StringBuilder();
+                if (language.equals("rust")) {
+                    declared(code, counts, names);
+                }
+                int items = 0;
+                for (int k = 0; k < counts.length; k++) {
+                    if (counts[k] > 0) {
+                        items |= 1 << k;
+                    }
+                }
+                rows.add(new Row(id, hash, canonicalizer.hash(language, code), noteId, id(languageIds, languages, language), segment,
+                        line(lines, start), line(lines, Math.max(start, end - 1)), items, counts, names.toString()));
+            }
+        });
+    }
+
+    public int size() {
+        return rows.size();
+    }
+
+    /** Counts and names the items declared at any depth in {@code code}. */
+    private void declared(String code, short[] counts, StringBuilder names) {
+        lexer.lex(code, tokens);
+        int n = tokens.size();
+        for (int i = 0; i < n; i++) {
+            if (tokens.kind(i) != RustLexer.KEYWORD) {
+                continue;
+            }
+            SnippetCatalog.Item item = null;
+            for (SnippetCatalog.Item k : ITEM_KINDS) {
+                if (tokens.is(i, code, k.keyword())) {
+                    item = k;
+                    break;
+                }
+            }
+            if (item == null) {
+                continue;
+            }
+            String name;
+            if (item == SnippetCatalog.Item.IMPL) {
+                if (i > 0 && !startsItem(code, i - 1)) {
+                    continue; // impl Trait in argument or return position
+                }
+                // "impl<T: Display> Summary for Pair<T> {" is named "Summary for Pair<T>"
+                int j = skipGenerics(code, i + 1, n);
+                int end = j;
+                while (end < n && !tokens.is(end, code, "{") && !tokens.is(end, code, ";")
+                        && !(tokens.kind(end) == RustLexer.KEYWORD && tokens.is(end, code, "where"))) {
+                    end++;
+                }
+                if (j >= end) {
+                    continue;
+                }
+                name = code.substring(tokens.start(j), tokens.end(end - 1)).replaceAll("\\s+", " ");
+            } else if (i + 1 < n && tokens.kind(i + 1) == RustLexer.IDENT) {
+                name = code.substring(tokens.start(i + 1), tokens.end(i + 1));
+            } else {
+                continue; // fn pointer types, trait objects and the like
+            }
+            counts[item.ordinal()]++;
+            if (names.length() > 0) {
+                names.append(", ");
+            }
+            names.append(item.keyword()).append(' ').append(name);
+        }
+    }
+
+    /** True if an item may start right after token {@code i}. */
+    private boolean startsItem(String code, int i) {
+        return tokens.kind(i) == RustLexer.COMMENT || tokens.is(i, code, "}") || tokens.is(i, code, "{")
+                || tokens.is(i, code, ";") || tokens.is(i, code, "]") || tokens.is(i, code, "unsafe");
+    }
+
+    private int skipGenerics(String code, int j, int n) {
+        if (j < n && tokens.is(j, code, "<")) {
+            int depth = 0;
+            for (; j < n; j++) {
+                depth += tokens.is(j, code, "<") ? 1 : tokens.is(j, code, ">") ? -1 : tokens.is(j, code, ">>") ? -2 : 0;
+                if (depth <= 0) {
+                    return j + 1;
+                }
+            }
+        }
+        return j;
+    }
+
+    /** 1-based line holding byte {@code offset}. */
+    private static int line(int[] lineStarts, long offset) {
+        int i = Arrays.binarySearch(lineStarts, (int) offset);
+        return (i >= 0 ? i : -i - 2) + 1;
+    }
+
+    private static int id(Map<String, Integer> ids, List<String> values, String value) {
+        return ids.computeIfAbsent(value, v -> {
+            values.add(v);
+            return values.size() - 1;
+        });
+    }
+
+    public void write(Path target) throws IOException {
+        int n = rows.size();
+        ByteArrayOutputStream[] columns = new ByteArrayOutputStream[COLUMNS];
+        DataOutputStream[] out = new DataOutputStream[COLUMNS];
+        for (int c = 0; c < COLUMNS; c++) {
+            columns[c] = new ByteArrayOutputStream();
+            out[c] = new DataOutputStream(columns[c]);
+        }
+        List<String> names = new ArrayList<>(n);
+        for (Row r : rows) {
+            out[ID].writeLong(r.id());
+            out[HASH].writeLong(r.hash());
+            out[CANONICAL].writeLong(r.canonical());
+            out[NOTE].writeInt(r.note());
+            out[LANGUAGE].writeInt(r.language());
+            out[SEGMENT].writeInt(r.segment());
+            out[START_LINE].writeInt(r.startLine());
+            out[END_LINE].writeInt(r.endLine());
+            out[ITEMS].writeInt(r.items());
+            for (short count : r.counts()) {
+                out[COUNTS].writeShort(count);
+            }
+            names.add(r.names());
+        }
+        writeStrings(out[NAMES], names, false);
+        writeStrings(out[NOTES], notes, true);
+        writeStrings(out[LANGUAGES], languages, true);
+        Integer[] byId = new Integer[n];
+        for (int i = 0; i < n; i++) {
+            byId[i] = i;
+        }
+        Arrays.sort(byId, (a, b) -> Long.compare(rows.get(a).id(), rows.get(b).id()));
+        for (int row : byId) {
+            out[BY_ID].writeInt(row);
+        }
+
+        Path tmp = target.resolveSibling(target.getFileName() + ".tmp");
+        try (DataOutputStream file = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp), 1 << 16))) {
+            file.writeInt(MAGIC);
+            file.writeInt(VERSION);
+            file.writeInt(n);
+            file.writeInt(COLUMNS);
+            int directoryEnd = HEADER + (COLUMNS + 1) * 4;
+            int offset = (directoryEnd + 7) & ~7;
+            for (int c = 0; c < COLUMNS; c++) {
+                file.writeInt(offset);
+                // keep every column 8-byte aligned so long columns can be read directly
+                offset += (columns[c].size() + 7) & ~7;
+            }
+            file.writeInt(offset);
+            for (int pad = directoryEnd; pad % 8 != 0; pad++) {
+                file.write(0);
+            }
+            for (int c = 0; c < COLUMNS; c++) {
+                columns[c].writeTo(file);
+                for (int pad = columns[c].size(); pad % 8 != 0; pad++) {
+                    file.write(0);
+                }
+            }
+        }
+        Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /** A string column: optional count, {@code int[size + 1]} offsets, then the UTF-8 bytes. */
+    private static void writeStrings(DataOutputStream out, List<String> values, boolean counted) throws IOException {
+        List<byte[]> bytes = new ArrayList<>(values.size());
+        for (String v : values) {
+            bytes.add(v.getBytes(StandardCharsets.UTF_8));
+        }
+        if (counted) {
+            out.writeInt(values.size());
+        }
+        int offset = 0;
+        for (byte[] b : bytes) {
+            out.writeInt(offset);
+            offset += b.length;
+        }
+        out.writeInt(offset);
+        for (byte[] b : bytes) {
+            out.write(b);
+        }
+    }
+}
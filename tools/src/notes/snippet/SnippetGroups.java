@@ -0,0 +1,183 @@
+package notes.snippet;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import notes.corpus.NoteHandler;
+import notes.corpus.NoteWalker;
+import notes.corpus.SegmentParser;
+import notes.index.NearDuplicates;
+
+/**
+ * Groups the fenced blocks of the notes by their {@link Canonicalizer}
+ * form, so work done per snippet can be done once per group.
+ *
+ * Snippets with the same canonical hash are exact duplicates; the first
+ * in path order represents the group. The representatives' canonical
+ * texts are then clustered with {@link NearDuplicates}, which catches
+ * copies with a changed literal or an extra line. Indexes follow the
+ * input order throughout.
+ */
+public final class SnippetGroups {
+
+    /** One fenced block: its note, answer segment, fence language and code. */
+    public record Snippet(String note, int segment, String language, String code) {
+    }
+
+    private final List<Snippet> snippets;
+    private final long[] canonical;
+    private final int[] exact;
+    private final int[] representatives;
+    private final NearDuplicates near;
+
+    private SnippetGroups(List<Snippet> snippets, long[] canonical, int[] exact, int[] representatives,
+                          NearDuplicates near) {
+        this.snippets = snippets;
+        this.canonical = canonical;
+        this.exact = exact;
+        this.representatives = representatives;
+        this.near = near;
+    }
+
+    /** Every fenced block of every note under {@code root}, grouped. */
+    public static SnippetGroups fromCorpus(Path root) throws IOException {
+        List<Snippet> snippets = new ArrayList<>();
+        SegmentParser parser = new SegmentParser();
+        for (NoteWalker.NoteRef note : new NoteWalker(root).notes()) {
+            byte[] bytes = Files.readAllBytes(note.path());
+            parser.parse(new ByteArrayInputStream(bytes), new NoteHandler() {
+                int segment;
+
+                @Override
+                public void segment(int index, long offset) {
+                    segment = index;
+                }
+
+                @Override
+                public void fence(String language, long start, long end, long codeStart, long codeEnd) {
+                    snippets.add(new Snippet(note.relative(), segment, language,
+                            new String(bytes, (int) codeStart, (int) (codeEnd - codeStart), StandardCharsets.UTF_8)));
+                }
+            });
+        }
+        return of(snippets);
+    }
+
+    public static SnippetGroups of(List<Snippet> snippets) {
+        int n = snippets.size();
+        Canonicalizer canonicalizer = new Canonicalizer();
+        long[] canonical = new long[n];
+        int[] exact = new int[n];
+        Map<Long, Integer> first = new HashMap<>();
+        List<Integer> representatives = new ArrayList<>();
+        List<String> texts = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            Snippet s = snippets.get(i);
+            canonical[i] = canonicalizer.hash(s.language(), s.code());
+            Integer rep = first.putIfAbsent(canonical[i], i);
+            exact[i] = rep == null ? i : rep;
+            if (rep == null) {
+                representatives.add(i);
+                texts.add(canonicalizer.canonical(s.language(), s.code()));
+            }
+        }
+        return new SnippetGroups(snippets, canonical, exact,
+                representatives.stream().mapToInt(Integer::intValue).toArray(), NearDuplicates.of(texts));
+    }
+
+    public int size() {
+        return snippets.size();
+    }
+
+    public Snippet snippet(int i) {
+        return snippets.get(i);
+    }
+
+    /** Canonical hash of snippet {@code i}. */
+    public long canonical(int i) {
+        return canonical[i];
+    }
+
+    /** The first snippet with the same canonical form as {@code i}. */
+    public int representative(int i) {
+        return exact[i];
+    }
+
+    public boolean isRepresentative(int i) {
+        return exact[i] == i;
+    }
+
+    /** Number of distinct canonical snippets. */
+    public int distinct() {
+        return representatives.length;
+    }
+
+    /** The representative of {@code i}'s near-duplicate cluster, an exact representative itself. */
+    public int nearRepresentative(int i) {
+        int r = Arrays.binarySearch(representatives, exact[i]);
+        return representatives[near.representative(r)];
+    }
+
+    /** Exact groups with more than one member, each ascending, representative first. */
+    public List<int[]> groups() {
+        Map<Integer, List<Integer>> members = new HashMap<>();
+        for (int i = 0; i < exact.length; i++) {
+            members.computeIfAbsent(exact[i], r -> new ArrayList<>()).add(i);
+        }
+        List<int[]> groups = new ArrayList<>();
+        for (List<Integer> group : members.values()) {
+            if (group.size() > 1) {
+                groups.add(group.stream().mapToInt(Integer::intValue).toArray());
+            }
+        }
+        groups.sort((x, y) -> Integer.compare(x[0], y[0]));
+        return groups;
+    }
+
+    /** Near-duplicate clusters of exact representatives, each ascending. */
+    public List<int[]> clusters() {
+        List<int[]> clusters = new ArrayList<>();
+        for (int[] cluster : near.clusters()) {
+            int[] members = new int[cluster.length];
+            for (int k = 0; k < cluster.length; k++) {
+                members[k] = representatives[cluster[k]];
+            }
+            clusters.add(members);
+        }
+        return clusters;
+    }
+
+    /** {@code SnippetGroups <root>}: prints the duplicate groups and near-duplicate clusters of the snippets. */
+    public static void main(String[] args) throws IOException {
+        long t0 = System.nanoTime();
+        SnippetGroups groups = fromCorpus(Paths.get(args[0]));
+        long millis = (System.nanoTime() - t0) / 1_000_000;
+        List<int[]> exact = groups.groups();
+        for (int[] group : exact) {
+            System.out.println("duplicates:");
+            for (int i : group) {
+                Snippet s = groups.snippet(i);
+                System.out.printf("  %s #%d %s%n", s.note(), s.segment(), s.language());
+            }
+        }
+        List<int[]> clusters = groups.clusters();
+        for (int[] cluster : clusters) {
+            System.out.println("near duplicates:");
+            for (int i : cluster) {
+                Snippet s = groups.snippet(i);
+                System.out.printf("  %s #%d %s%n", s.note(), s.segment(), s.language());
+            }
+        }
+        System.out.printf("%d snippets, %d distinct, %d duplicate groups, %d near-duplicate clusters in %d ms%n",
+                groups.size(), groups.distinct(), exact.size(), clusters.size(), millis);
+    }
+}
@@ -0,0 +1,227 @@
+package notes.store;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import notes.server.LatencyHistogram;
+
+/**
+ * Random access to the answer segments in a file written by
+ * {@link SegmentStoreWriter}.
+ *
+ * Fetching a segment inflates only its block, and only up to the end of
+ * the segment, so the cost is bounded by the block size rather than the
+ * corpus. The tables and compressed data stay in the memory-mapped file;
+ * the heap holds the note names and one inflater and buffer per thread.
+ * Decode times go into a {@link LatencyHistogram} and are reported with
+ * the compression ratio by {@link #stats()}. Safe to share between threads.
+ */
+public final class SegmentStore implements AutoCloseable {
+
+    private final FileChannel channel;
+    private final MappedByteBuffer map;
+    private final int segments;
+    private final int blocks;
+    private final int dictLength;
+    private final long rawBytes;
+    private final int segmentsAt;
+    private final int blocksAt;
+    private final int dictAt;
+    private final int dataAt;
+    private final String[] notes;
+    private final Map<String, Integer> firstSegment = new HashMap<>();
+    private final byte[] dictionary;
+    private final ThreadLocal<Decoder> decoders;
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final LongAdder inflated = new LongAdder();
+
+    public SegmentStore(Path file) throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.READ);
+        map = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        if (map.getInt(0) != SegmentStoreWriter.MAGIC || map.getInt(4) != SegmentStoreWriter.VERSION) {
+            channel.close();
+            throw new IOException("not a segment store: " + file);
+        }
+        segments = map.getInt(8);
+        blocks = map.getInt(12);
+        int noteCount = map.getInt(16);
+        dictLength = map.getInt(20);
+        rawBytes = map.getInt(24) & 0xffffffffL;
+        int notesAt = map.getInt(28);
+        segmentsAt = map.getInt(32);
+        blocksAt = map.getInt(36);
+        dictAt = map.getInt(40);
+        dataAt = map.getInt(44);
+
+        notes = new String[noteCount];
+        for (int i = 0; i < noteCount; i++) {
+            int at = notesAt + map.getInt(notesAt + i * 4);
+            byte[] b = new byte[map.getShort(at) & 0xffff];
+            map.get(at + 2, b);
+            notes[i] = new String(b, StandardCharsets.UTF_8);
+        }
+        for (int s = segments - 1; s >= 0; s--) {
+            firstSegment.put(notes[map.getInt(segmentsAt + s * 20)], s);
+        }
+        dictionary = new byte[dictLength];
+        map.get(dictAt, dictionary);
+        decoders = ThreadLocal.withInitial(Decoder::new);
+    }
+
+    public int size() {
+        return segments;
+    }
+
+    public String note(int segment) {
+        return notes[field(segment, 0)];
+    }
+
+    /** Answer number of {@code segment} within its note. */
+    public int index(int segment) {
+        return field(segment, 1);
+    }
+
+    /** The segment for answer {@code index} of {@code note}, or -1. */
+    public int find(String note, int index) {
+        Integer first = firstSegment.get(note);
+        if (first == null) {
+            return -1;
+        }
+        for (int s = first; s < segments && notes[field(s, 0)].equals(note); s++) {
+            if (field(s, 1) == index) {
+                return s;
+            }
+        }
+        return -1;
+    }
+
+    public String text(int segment) {
+        return new String(bytes(segment), StandardCharsets.UTF_8);
+    }
+
+    /** The UTF-8 bytes of {@code segment}, inflated from its block. */
+    public byte[] bytes(int segment) {
+        long start = System.nanoTime();
+        int block = field(segment, 2);
+        int offset = field(segment, 3);
+        int length = field(segment, 4);
+        int row = blocksAt + block * 12;
+        int compressedAt = dataAt + map.getInt(row);
+        int compressedLength = map.getInt(row + 4);
+        int end = offset + length;
+
+        Decoder d = decoders.get();
+        if (d.buffer.length < end) {
+            d.buffer = new byte[Math.max(end, SegmentStoreWriter.BLOCK)];
+        }
+        Inflater inflater = d.inflater;
+        inflater.reset();
+        inflater.setInput(map.slice(compressedAt, compressedLength));
+        try {
+            int n = 0;
+            // stop as soon as the segment is out; the rest of the block is never inflated
+            while (n < end) {
+                int k = inflater.inflate(d.buffer, n, end - n);
+                if (k == 0) {
+                    if (inflater.needsDictionary()) {
+                        inflater.setDictionary(dictionary);
+                    } else if (inflater.finished() || inflater.needsInput()) {
+                        throw new IllegalStateException("block " + block + " ends early");
+                    }
+                }
+                n += k;
+            }
+        } catch (DataFormatException e) {
+            throw new IllegalStateException("corrupt block " + block, e);
+        }
+        inflated.add(end);
+        byte[] out = Arrays.copyOfRange(d.buffer, offset, end);
+        latency.record(System.nanoTime() - start);
+        return out;
+    }
+
+    public Stats stats() {
+        long compressed = channel.isOpen() ? map.capacity() - dataAt : 0;
+        return new Stats(segments, blocks, rawBytes, compressed, dictLength, latency.count(), inflated.sum(),
+                latency.percentile(0.50), latency.percentile(0.99));
+    }
+
+    private int field(int segment, int i) {
+        return map.getInt(segmentsAt + segment * 20 + i * 4);
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Size and decode counters. {@code compressedBytes} is the block data
+     * alone; {@code inflatedBytes} counts what fetches actually inflated,
+     * including the part of each block before the segment.
+     */
+    public record Stats(int segments, int blocks, long rawBytes, long compressedBytes, int dictionaryBytes,
+                        long decodes, long inflatedBytes, long p50Micros, long p99Micros) {
+
+        public double ratio() {
+            return compressedBytes == 0 ? 0 : (double) rawBytes / (compressedBytes + dictionaryBytes);
+        }
+    }
+
+    private static final class Decoder {
+        final Inflater inflater = new Inflater();
+        byte[] buffer = new byte[SegmentStoreWriter.BLOCK];
+    }
+
+    /** {@code SegmentStore <root> <file>}: builds the store, then fetches every segment in random order. */
+    public static void main(String[] args) throws IOException {
+        Path root = Paths.get(args[0]);
+        Path file = Paths.get(args[1]);
+        Path plain = file.resolveSibling(file.getFileName() + ".nodict");
+        long t0 = System.nanoTime();
+        SegmentStoreWriter.fromCorpus(root, SegmentStoreWriter.DICTIONARY).write(file);
+        long t1 = System.nanoTime();
+        SegmentStoreWriter.fromCorpus(root, 0).write(plain);
+        try (SegmentStore store = new SegmentStore(file); SegmentStore baseline = new SegmentStore(plain)) {
+            int[] order = new int[store.size()];
+            Arrays.setAll(order, i -> i);
+            Random random = new Random(42);
+            for (int i = order.length - 1; i > 0; i--) {
+                int j = random.nextInt(i + 1);
+                int t = order[i];
+                order[i] = order[j];
+                order[j] = t;
+            }
+            long chars = 0;
+            for (int round = 0; round < 5; round++) {
+                for (int s : order) {
+                    chars += store.bytes(s).length;
+                }
+            }
+            Stats stats = store.stats();
+            System.out.printf("built in %d ms; %d segments, %d blocks, %d chars fetched%n",
+                    (t1 - t0) / 1_000_000, stats.segments(), stats.blocks(), chars);
+            System.out.printf("raw %d bytes -> %d + %d dictionary = ratio %.2f (without dictionary %.2f)%n",
+                    stats.rawBytes(), stats.compressedBytes(), stats.dictionaryBytes(), stats.ratio(),
+                    baseline.stats().ratio());
+            System.out.printf("%d decodes, p50 %d us, p99 %d us, %.1f KB inflated per fetch%n", stats.decodes(),
+                    stats.p50Micros(), stats.p99Micros(), stats.inflatedBytes() / 1024.0 / stats.decodes());
+        } finally {
+            Files.deleteIfExists(plain);
+        }
+    }
+}
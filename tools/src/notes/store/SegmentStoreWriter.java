@@ -0,0 +1,358 @@
+package notes.store;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.Deflater;
+
+import notes.corpus.Corpus;
+import notes.corpus.Segment;
+import notes.corpus.SegmentParser;
+import notes.corpus.Segments;
+
+/**
+ * Writes the file read by {@link SegmentStore}: every answer segment,
+ * deflated in small blocks that share a trained preset dictionary.
+ *
+ * The dictionary is built from text that recurs across segments: whole
+ * lines, runs of four words and citation links, ranked by how many bytes
+ * they would save. The best candidates go last, closest to the data, where
+ * deflate's back references are cheapest. Segments are packed in order into
+ * blocks of about {@link #BLOCK} bytes and never split; each block is
+ * deflated on its own, so any segment can be decoded from its block alone.
+ *
+ * The dictionary is stored once and must pay for itself, and on a corpus
+ * as small as the notes a large one does not: at 32 KB it saves about what
+ * it costs. The writer therefore tries the requested size, its halves down
+ * to {@link #MIN_DICTIONARY} and no dictionary at all, deflating a sample
+ * of blocks with each, and keeps whichever gives the fewest bytes of data
+ * plus dictionary.
+ *
+ * <pre>
+ * header    int magic, version, segments, blocks, notes, dictLength, rawBytes,
+ *           notesAt, segmentsAt, blocksAt, dictAt, dataAt
+ * notes     int[notes] offsets, then (short length, UTF-8) paths
+ * segments  (int note, int index, int block, int offset, int length) per segment
+ * blocks    (int dataOffset, int compressedLength, int rawLength) per block
+ * dict      preset dictionary
+ * data      deflated blocks
+ * </pre>
+ */
+public final class SegmentStoreWriter {
+
+    static final int MAGIC = 0x4e534547; // "NSEG"
+    static final int VERSION = 1;
+    static final int HEADER = 12 * 4;
+
+    /** Target uncompressed size of a block. */
+    static final int BLOCK = 16 * 1024;
+    /** Deflate looks back at most 32 KB, so a larger dictionary would not be used. */
+    static final int MAX_DICTIONARY = 32 * 1024;
+    /** Default upper bound on the dictionary. */
+    static final int DICTIONARY = 8 * 1024;
+    /** Smallest dictionary size tried before going without. */
+    static final int MIN_DICTIONARY = 1024;
+    /** Bytes of segment text sampled for training. */
+    private static final int TRAINING_SAMPLE = 2 * 1024 * 1024;
+
+    private static final Pattern CITATION = Pattern.compile("\\[Source \\d+]\\([^)\\s]*\\)");
+
+    private final int dictionarySize;
+    private final List<String> notes = new ArrayList<>();
+    private final Map<String, Integer> noteIds = new HashMap<>();
+    private final List<int[]> keys = new ArrayList<>();
+    private final List<byte[]> texts = new ArrayList<>();
+
+    public SegmentStoreWriter() {
+        this(DICTIONARY);
+    }
+
+    /**
+     * A writer with a dictionary of at most {@code dictionarySize} bytes,
+     * or none where that compresses better; 0 disables it.
+     */
+    public SegmentStoreWriter(int dictionarySize) {
+        this.dictionarySize = Math.min(dictionarySize, MAX_DICTIONARY);
+    }
+
+    public void add(String note, int index, byte[] text) {
+        int id = noteIds.computeIfAbsent(note, n -> {
+            notes.add(n);
+            return notes.size() - 1;
+        });
+        keys.add(new int[] {id, index});
+        texts.add(text);
+    }
+
+    /** Every answer segment of every note under {@code root}. */
+    public static SegmentStoreWriter fromCorpus(Path root, int dictionarySize) throws IOException {
+        SegmentStoreWriter writer = new SegmentStoreWriter(dictionarySize);
+        SegmentParser parser = new SegmentParser();
+        for (Path note : Corpus.notes(root)) {
+            byte[] bytes = Files.readAllBytes(note);
+            String name = root.relativize(note).toString();
+            for (Segment s : Segments.of(note, parser)) {
+                writer.add(name, s.index(), Arrays.copyOfRange(bytes, s.start(), s.end()));
+            }
+        }
+        return writer;
+    }
+
+    public int size() {
+        return texts.size();
+    }
+
+    /** Trains the dictionary, compresses the blocks and moves the file into place. */
+    public void write(Path target) throws IOException {
+        byte[] dictionary = chooseDictionary();
+
+        ByteArrayOutputStream noteBytes = new ByteArrayOutputStream();
+        DataOutputStream notesOut = new DataOutputStream(noteBytes);
+        int[] noteOffsets = new int[notes.size()];
+        for (int i = 0; i < notes.size(); i++) {
+            noteOffsets[i] = notes.size() * 4 + notesOut.size();
+            byte[] b = notes.get(i).getBytes(StandardCharsets.UTF_8);
+            notesOut.writeShort(b.length);
+            notesOut.write(b);
+        }
+
+        int n = texts.size();
+        int[] segmentTable = new int[n * 5];
+        List<int[]> blockTable = new ArrayList<>();
+        ByteArrayOutputStream data = new ByteArrayOutputStream();
+        ByteArrayOutputStream block = new ByteArrayOutputStream(BLOCK * 2);
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+        byte[] buffer = new byte[BLOCK * 2];
+        long raw = 0;
+        try {
+            for (int i = 0; i < n; i++) {
+                byte[] text = texts.get(i);
+                if (block.size() > 0 && block.size() + text.length > BLOCK) {
+                    blockTable.add(flush(block, data, deflater, dictionary, buffer));
+                }
+                segmentTable[i * 5] = keys.get(i)[0];
+                segmentTable[i * 5 + 1] = keys.get(i)[1];
+                segmentTable[i * 5 + 2] = blockTable.size();
+                segmentTable[i * 5 + 3] = block.size();
+                segmentTable[i * 5 + 4] = text.length;
+                block.write(text);
+                raw += text.length;
+            }
+            if (block.size() > 0) {
+                blockTable.add(flush(block, data, deflater, dictionary, buffer));
+            }
+        } finally {
+            deflater.end();
+        }
+
+        int notesAt = HEADER;
+        int segmentsAt = notesAt + notes.size() * 4 + noteBytes.size();
+        int blocksAt = segmentsAt + segmentTable.length * 4;
+        int dictAt = blocksAt + blockTable.size() * 12;
+        int dataAt = dictAt + dictionary.length;
+
+        Path tmp = target.resolveSibling(target.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(n);
+            out.writeInt(blockTable.size());
+            out.writeInt(notes.size());
+            out.writeInt(dictionary.length);
+            out.writeInt((int) Math.min(raw, Integer.MAX_VALUE));
+            out.writeInt(notesAt);
+            out.writeInt(segmentsAt);
+            out.writeInt(blocksAt);
+            out.writeInt(dictAt);
+            out.writeInt(dataAt);
+            for (int offset : noteOffsets) {
+                out.writeInt(offset);
+            }
+            noteBytes.writeTo(out);
+            for (int v : segmentTable) {
+                out.writeInt(v);
+            }
+            for (int[] b : blockTable) {
+                out.writeInt(b[0]);
+                out.writeInt(b[1]);
+                out.writeInt(b[2]);
+            }
+            out.write(dictionary);
+            data.writeTo(out);
+        }
+        Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /** Deflates the pending block into {@code data}; returns its block table row. */
+    private static int[] flush(ByteArrayOutputStream block, ByteArrayOutputStream data, Deflater deflater,
+                               byte[] dictionary, byte[] buffer) {
+        byte[] raw = block.toByteArray();
+        deflater.reset();
+        if (dictionary.length > 0) {
+            deflater.setDictionary(dictionary);
+        }
+        deflater.setInput(raw);
+        deflater.finish();
+        int offset = data.size();
+        while (!deflater.finished()) {
+            int len = deflater.deflate(buffer);
+            data.write(buffer, 0, len);
+        }
+        block.reset();
+        return new int[] {offset, data.size() - offset, raw.length};
+    }
+
+    /**
+     * The trained dictionary, of {@link #dictionarySize} or one of its
+     * halves, or none, whichever minimises the estimated data plus
+     * dictionary bytes. The estimate deflates every block of the training
+     * sample and scales the result up to the whole corpus.
+     */
+    private byte[] chooseDictionary() {
+        byte[] best = new byte[0];
+        if (dictionarySize == 0 || texts.isEmpty()) {
+            return best;
+        }
+        long total = 0;
+        for (byte[] t : texts) {
+            total += t.length;
+        }
+        List<byte[]> sample = new ArrayList<>();
+        long sampled = 0;
+        ByteArrayOutputStream block = new ByteArrayOutputStream(BLOCK * 2);
+        int blocks = 0;
+        int step = (int) Math.max(1, total / TRAINING_SAMPLE);
+        for (int i = 0; i <= texts.size(); i++) {
+            if (block.size() > 0 && (i == texts.size() || block.size() + texts.get(i).length > BLOCK)) {
+                if (blocks++ % step == 0) {
+                    sample.add(block.toByteArray());
+                    sampled += block.size();
+                }
+                block.reset();
+            }
+            if (i < texts.size()) {
+                block.writeBytes(texts.get(i));
+            }
+        }
+        double scale = (double) total / sampled;
+        double bestBytes = deflated(sample, best) * scale;
+        for (int size = dictionarySize; size >= MIN_DICTIONARY; size /= 2) {
+            byte[] dictionary = train(texts, size);
+            double bytes = deflated(sample, dictionary) * scale + dictionary.length;
+            if (bytes < bestBytes) {
+                best = dictionary;
+                bestBytes = bytes;
+            }
+        }
+        return best;
+    }
+
+    /** Total deflated size of {@code blocks}, each compressed on its own against {@code dictionary}. */
+    private static long deflated(List<byte[]> blocks, byte[] dictionary) {
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+        byte[] buffer = new byte[BLOCK * 2];
+        long bytes = 0;
+        try {
+            for (byte[] raw : blocks) {
+                deflater.reset();
+                if (dictionary.length > 0) {
+                    deflater.setDictionary(dictionary);
+                }
+                deflater.setInput(raw);
+                deflater.finish();
+                while (!deflater.finished()) {
+                    bytes += deflater.deflate(buffer);
+                }
+            }
+        } finally {
+            deflater.end();
+        }
+        return bytes;
+    }
+
+    /**
+     * Picks recurring lines, four-word runs and citation links from a sample
+     * of {@code texts}, most bytes saved first, until {@code size} bytes are
+     * taken; returns them with the most valuable at the end.
+     */
+    static byte[] train(List<byte[]> texts, int size) {
+        Map<String, Integer> counts = new HashMap<>();
+        long total = 0;
+        for (byte[] t : texts) {
+            total += t.length;
+        }
+        int step = (int) Math.max(1, total / TRAINING_SAMPLE);
+        for (int i = 0; i < texts.size(); i += step) {
+            String text = new String(texts.get(i), StandardCharsets.UTF_8);
+            Set<String> seen = new HashSet<>();
+            for (String line : text.split("\n")) {
+                String l = line.strip();
+                if (l.length() >= 12) {
+                    seen.add(l);
+                }
+                String[] words = l.split(" +");
+                for (int w = 0; w + 4 <= words.length; w++) {
+                    seen.add(String.join(" ", Arrays.asList(words).subList(w, w + 4)));
+                }
+            }
+            Matcher m = CITATION.matcher(text);
+            while (m.find()) {
+                seen.add(m.group());
+            }
+            // count each candidate once per segment, so one repetitive segment cannot dominate
+            for (String candidate : seen) {
+                counts.merge(candidate, 1, Integer::sum);
+            }
+        }
+        List<Map.Entry<String, Integer>> ranked = new ArrayList<>();
+        for (Map.Entry<String, Integer> e : counts.entrySet()) {
+            if (e.getValue() >= 3) {
+                ranked.add(e);
+            }
+        }
+        ranked.sort((a, b) -> Long.compare(saving(b), saving(a)));
+        List<String> chosen = new ArrayList<>();
+        StringBuilder all = new StringBuilder();
+        int bytes = 0;
+        for (Map.Entry<String, Integer> e : ranked) {
+            if (bytes > size - 16) {
+                break;
+            }
+            String candidate = e.getKey();
+            int len = candidate.getBytes(StandardCharsets.UTF_8).length + 1;
+            if (bytes + len > size) {
+                continue;
+            }
+            if (all.indexOf(candidate) >= 0) {
+                continue;
+            }
+            chosen.add(candidate);
+            all.append(candidate).append('\n');
+            bytes += len;
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream(bytes);
+        for (int i = chosen.size() - 1; i >= 0; i--) {
+            out.writeBytes(chosen.get(i).getBytes(StandardCharsets.UTF_8));
+            out.write('\n');
+        }
+        return out.toByteArray();
+    }
+
+    private static long saving(Map.Entry<String, Integer> e) {
+        return (long) (e.getValue() - 1) * e.getKey().length();
+    }
+}
@@ -0,0 +1,529 @@
+package notes.syntax;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import notes.corpus.Corpus;
+import notes.corpus.NoteHandler;
+import notes.corpus.SegmentParser;
+
+/**
+ * Table-driven lexer for the rust fences of the notes.
+ *
+ * The first character of a token is looked up in a class table and the
+ * class picks the scanner; nothing is matched with regexes and nothing is
+ * allocated per token. Tokens are written to a reusable {@link Tokens}
+ * buffer as {@code (kind, start, end)} int triples, offsets into the
+ * lexed text. Whitespace is skipped, so the gaps between tokens are
+ * whitespace.
+ *
+ * Covered: line and nested block comments, strings, byte strings, raw
+ * strings with any number of {@code #}s ({@code r##"..."##},
+ * {@code br#"..."#}), raw identifiers ({@code r#match}), char and byte
+ * literals told apart from lifetimes, numeric literals in all four bases
+ * with {@code _} separators, exponents and type suffixes, macro names
+ * ({@code println!}) and longest-match punctuation. Unterminated
+ * literals and comments run to the end of the text rather than failing,
+ * since fences in the notes are sometimes cut short.
+ *
+ * Keywords come from a {@link SyntaxTable} when one is given, otherwise
+ * from the built-in strict keyword list. The lexer holds no mutable
+ * state and is safe to share between threads; a {@link Tokens} buffer is
+ * not.
+ */
+public final class RustLexer {
+
+    public static final int IDENT = 0;
+    public static final int KEYWORD = 1;
+    public static final int MACRO = 2;
+    public static final int LIFETIME = 3;
+    public static final int CHAR = 4;
+    public static final int STRING = 5;
+    public static final int NUMBER = 6;
+    public static final int COMMENT = 7;
+    public static final int PUNCT = 8;
+    public static final int UNKNOWN = 9;
+
+    private static final String[] KIND_NAMES = {"ident", "keyword", "macro", "lifetime", "char", "string", "number",
+            "comment", "punct", "unknown"};
+
+    private static final byte C_OTHER = 0;
+    private static final byte C_SPACE = 1;
+    private static final byte C_IDENT = 2;
+    private static final byte C_DIGIT = 3;
+    private static final byte C_QUOTE = 4;
+    private static final byte C_DQUOTE = 5;
+    private static final byte C_SLASH = 6;
+    private static final byte C_PUNCT = 7;
+
+    private static final byte[] CLASS = new byte[128];
+
+    /** Multi-character punctuation, longest first within each leading character. */
+    private static final String[][] PUNCTUATION = new String[128][];
+
+    private static final String STRICT_KEYWORDS = "as async await break const continue crate dyn else enum extern "
+            + "false fn for if impl in let loop match mod move mut pub ref return self Self static struct super "
+            + "trait true type unsafe use where while";
+
+    static {
+        for (char c : " \t\n\r\f\u000b".toCharArray()) {
+            CLASS[c] = C_SPACE;
+        }
+        for (int c = 'a'; c <= 'z'; c++) {
+            CLASS[c] = C_IDENT;
+            CLASS[c - 32] = C_IDENT;
+        }
+        CLASS['_'] = C_IDENT;
+        for (int c = '0'; c <= '9'; c++) {
+            CLASS[c] = C_DIGIT;
+        }
+        CLASS['\''] = C_QUOTE;
+        CLASS['"'] = C_DQUOTE;
+        CLASS['/'] = C_SLASH;
+        for (char c : "!#$%&()*+,-.:;<=>?@[]^{|}~".toCharArray()) {
+            CLASS[c] = C_PUNCT;
+        }
+        String[] multi = {"<<=", ">>=", "...", "..=", "::", "->", "=>", "==", "!=", "<=", ">=", "&&", "||", "+=", "-=",
+                "*=", "/=", "%=", "^=", "&=", "|=", "<<", ">>", ".."};
+        for (String p : multi) {
+            String[] list = PUNCTUATION[p.charAt(0)];
+            list = list == null ? new String[1] : Arrays.copyOf(list, list.length + 1);
+            list[list.length - 1] = p;
+            PUNCTUATION[p.charAt(0)] = list;
+        }
+    }
+
+    private final SyntaxTable table;
+    private final String[] keywords;
+    private final int mask;
+
+    /** A lexer using the built-in strict keyword list. */
+    public RustLexer() {
+        this.table = null;
+        String[] words = STRICT_KEYWORDS.split(" ");
+        this.keywords = new String[Integer.highestOneBit(words.length * 4 - 1)];
+        this.mask = keywords.length - 1;
+        for (String word : words) {
+            int slot = word.hashCode() & mask;
+            while (keywords[slot] != null) {
+                slot = (slot + 1) & mask;
+            }
+            keywords[slot] = word;
+        }
+    }
+
+    /** A lexer taking keywords (in use or reserved) from {@code table}. */
+    public RustLexer(SyntaxTable table) {
+        this.table = table;
+        this.keywords = null;
+        this.mask = 0;
+    }
+
+    public static String kindName(int kind) {
+        return KIND_NAMES[kind];
+    }
+
+    /** Lexes {@code text} into {@code out}, replacing its contents; returns the token count. */
+    public int lex(CharSequence text, Tokens out) {
+        return lex(text, 0, text.length(), out);
+    }
+
+    /** Lexes {@code text[from, to)} into {@code out}, replacing its contents; returns the token count. */
+    public int lex(CharSequence text, int from, int to, Tokens out) {
+        out.clear();
+        int i = from;
+        while (i < to) {
+            char c = text.charAt(i);
+            int cls = c < 128 ? CLASS[c] : Character.isWhitespace(c) ? C_SPACE
+                    : Character.isUnicodeIdentifierStart(c) ? C_IDENT : C_OTHER;
+            int start = i;
+            switch (cls) {
+                case C_SPACE:
+                    i++;
+                    continue;
+                case C_IDENT:
+                    i = identOrPrefixed(text, i, to, out);
+                    continue;
+                case C_DIGIT:
+                    i = number(text, i, to);
+                    out.add(NUMBER, start, i);
+                    continue;
+                case C_QUOTE:
+                    i = quote(text, i, to, out);
+                    continue;
+                case C_DQUOTE:
+                    i = string(text, i + 1, to);
+                    out.add(STRING, start, i);
+                    continue;
+                case C_SLASH:
+                    if (i + 1 < to && text.charAt(i + 1) == '/') {
+                        i = lineEnd(text, i, to);
+                        out.add(COMMENT, start, i);
+                    } else if (i + 1 < to && text.charAt(i + 1) == '*') {
+                        i = blockComment(text, i + 2, to);
+                        out.add(COMMENT, start, i);
+                    } else {
+                        i = punct(text, i, to);
+                        out.add(PUNCT, start, i);
+                    }
+                    continue;
+                case C_PUNCT:
+                    i = punct(text, i, to);
+                    out.add(PUNCT, start, i);
+                    continue;
+                default:
+                    i += Character.charCount(Character.codePointAt(text, i));
+                    out.add(UNKNOWN, start, Math.min(i, to));
+            }
+        }
+        return out.size();
+    }
+
+    /** An identifier, keyword or macro name, or a literal with an {@code r}, {@code b} or {@code c} prefix. */
+    private int identOrPrefixed(CharSequence text, int i, int to, Tokens out) {
+        int start = i;
+        char c = text.charAt(i);
+        if (c == 'b' || c == 'c' || c == 'r') {
+            int j = i + 1;
+            if (c != 'r' && j < to && text.charAt(j) == 'r') {
+                j++;
+            }
+            boolean raw = text.charAt(j - 1) == 'r';
+            if (j < to && text.charAt(j) == '"') {
+                out.add(STRING, start, raw ? rawString(text, j, to, 0) : string(text, j + 1, to));
+                return out.end(out.size() - 1);
+            }
+            if (raw && j < to && text.charAt(j) == '#') {
+                int hashes = 0;
+                while (j + hashes < to && text.charAt(j + hashes) == '#') {
+                    hashes++;
+                }
+                if (j + hashes < to && text.charAt(j + hashes) == '"') {
+                    out.add(STRING, start, rawString(text, j + hashes, to, hashes));
+                    return out.end(out.size() - 1);
+                }
+                if (c == 'r' && hashes == 1 && j + 1 < to && isIdentStart(text.charAt(j + 1))) {
+                    int end = identEnd(text, j + 1, to);
+                    out.add(IDENT, start, end); // raw identifier
+                    return end;
+                }
+            }
+            if (c == 'b' && j == i + 1 && j < to && text.charAt(j) == '\'') {
+                int end = charLiteral(text, j + 1, to);
+                if (end > 0) {
+                    out.add(CHAR, start, end);
+                    return end;
+                }
+            }
+        }
+        int end = identEnd(text, i, to);
+        if (end < to && text.charAt(end) == '!' && (end + 1 >= to || text.charAt(end + 1) != '=')) {
+            out.add(MACRO, start, end + 1);
+            return end + 1;
+        }
+        out.add(isKeyword(text, start, end) ? KEYWORD : IDENT, start, end);
+        return end;
+    }
+
+    private boolean isKeyword(CharSequence text, int from, int to) {
+        if (table != null) {
+            SyntaxTable.Kind kind = table.kind(text, from, to);
+            return kind == SyntaxTable.Kind.KEYWORD || kind == SyntaxTable.Kind.RESERVED;
+        }
+        int h = 0;
+        for (int i = from; i < to; i++) {
+            h = 31 * h + text.charAt(i);
+        }
+        for (int slot = h & mask; keywords[slot] != null; slot = (slot + 1) & mask) {
+            String k = keywords[slot];
+            if (k.length() == to - from && regionMatches(k, text, from)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** A lifetime or label ({@code 'a}), a char literal, or a lone quote. */
+    private static int quote(CharSequence text, int i, int to, Tokens out) {
+        int end = charLiteral(text, i + 1, to);
+        if (end > 0) {
+            out.add(CHAR, i, end);
+            return end;
+        }
+        if (i + 1 < to && isIdentStart(text.charAt(i + 1))) {
+            end = identEnd(text, i + 1, to);
+            out.add(LIFETIME, i, end);
+            return end;
+        }
+        out.add(PUNCT, i, i + 1);
+        return i + 1;
+    }
+
+    /**
+     * End of a char literal whose body starts at {@code i}, or -1 if the
+     * text there is not one: {@code 'a'} and {@code '\n'} are chars,
+     * {@code 'a} and {@code 'static} are not.
+     */
+    private static int charLiteral(CharSequence text, int i, int to) {
+        if (i >= to) {
+            return -1;
+        }
+        char c = text.charAt(i);
+        int j;
+        if (c == '\\') {
+            j = i + 2;
+            if (j <= to && text.charAt(i + 1) == 'u') {
+                while (j < to && text.charAt(j) != '\'' && text.charAt(j) != '\n') {
+                    j++;
+                }
+            } else if (j <= to && text.charAt(i + 1) == 'x') {
+                j = Math.min(i + 4, to);
+            }
+        } else if (c == '\'' || c == '\n') {
+            return -1;
+        } else {
+            j = i + Character.charCount(Character.codePointAt(text, i));
+        }
+        return j < to && text.charAt(j) == '\'' ? j + 1 : -1;
+    }
+
+    /** End of a string whose body starts at {@code i}, honouring backslash escapes. */
+    private static int string(CharSequence text, int i, int to) {
+        while (i < to) {
+            char c = text.charAt(i++);
+            if (c == '\\') {
+                i++;
+            } else if (c == '"') {
+                return i;
+            }
+        }
+        return to;
+    }
+
+    /** End of a raw string whose opening quote is at {@code quote}, closed by a quote and {@code hashes} #s. */
+    private static int rawString(CharSequence text, int quote, int to, int hashes) {
+        int i = quote + 1;
+        while (i < to) {
+            if (text.charAt(i++) == '"') {
+                int n = 0;
+                while (n < hashes && i + n < to && text.charAt(i + n) == '#') {
+                    n++;
+                }
+                if (n == hashes) {
+                    return i + n;
+                }
+            }
+        }
+        return to;
+    }
+
+    /** End of a block comment whose body starts at {@code i}; block comments nest. */
+    private static int blockComment(CharSequence text, int i, int to) {
+        int depth = 1;
+        while (i < to) {
+            char c = text.charAt(i);
+            if (c == '/' && i + 1 < to && text.charAt(i + 1) == '*') {
+                depth++;
+                i += 2;
+            } else if (c == '*' && i + 1 < to && text.charAt(i + 1) == '/') {
+                i += 2;
+                if (--depth == 0) {
+                    return i;
+                }
+            } else {
+                i++;
+            }
+        }
+        return to;
+    }
+
+    private static int lineEnd(CharSequence text, int i, int to) {
+        while (i < to && text.charAt(i) != '\n') {
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * End of a numeric literal: {@code 0x}, {@code 0o} and {@code 0b}
+     * prefixes, {@code _} separators, a fraction only when a digit follows
+     * the dot (so {@code 1..2} and {@code 1.max(2)} stay apart), an
+     * exponent for decimals and any suffix such as {@code u8} or {@code f64}.
+     */
+    private static int number(CharSequence text, int i, int to) {
+        int radix = 10;
+        if (text.charAt(i) == '0' && i + 1 < to) {
+            char p = text.charAt(i + 1);
+            radix = p == 'x' ? 16 : p == 'o' ? 8 : p == 'b' ? 2 : 10;
+            if (radix != 10) {
+                i += 2;
+            }
+        }
+        i = digits(text, i, to, radix);
+        if (radix == 10) {
+            if (i + 1 < to && text.charAt(i) == '.' && isDigit(text.charAt(i + 1))) {
+                i = digits(text, i + 1, to, 10);
+            }
+            if (i < to && (text.charAt(i) == 'e' || text.charAt(i) == 'E')) {
+                int j = i + 1;
+                if (j < to && (text.charAt(j) == '+' || text.charAt(j) == '-')) {
+                    j++;
+                }
+                while (j < to && text.charAt(j) == '_') {
+                    j++;
+                }
+                if (j < to && isDigit(text.charAt(j))) {
+                    i = digits(text, j, to, 10);
+                }
+            }
+        }
+        // suffix, e.g. u8, i128, usize, f32
+        while (i < to && text.charAt(i) < 128 && (CLASS[text.charAt(i)] == C_IDENT || isDigit(text.charAt(i)))) {
+            i++;
+        }
+        return i;
+    }
+
+    private static int digits(CharSequence text, int i, int to, int radix) {
+        while (i < to) {
+            char c = text.charAt(i);
+            if (c != '_' && Character.digit(c, radix) < 0) {
+                break;
+            }
+            i++;
+        }
+        return i;
+    }
+
+    private static int punct(CharSequence text, int i, int to) {
+        String[] candidates = PUNCTUATION[text.charAt(i)];
+        if (candidates != null) {
+            for (String p : candidates) {
+                if (i + p.length() <= to && regionMatches(p, text, i)) {
+                    return i + p.length();
+                }
+            }
+        }
+        return i + 1;
+    }
+
+    private static boolean regionMatches(String s, CharSequence text, int from) {
+        for (int k = 0; k < s.length(); k++) {
+            if (text.charAt(from + k) != s.charAt(k)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int identEnd(CharSequence text, int i, int to) {
+        i++;
+        while (i < to) {
+            char c = text.charAt(i);
+            if (c < 128 ? CLASS[c] != C_IDENT && CLASS[c] != C_DIGIT : !Character.isUnicodeIdentifierPart(c)) {
+                break;
+            }
+            i++;
+        }
+        return i;
+    }
+
+    private static boolean isIdentStart(char c) {
+        return c < 128 ? CLASS[c] == C_IDENT : Character.isUnicodeIdentifierStart(c);
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    /** {@code RustLexer <root>}: lexes every rust fence and prints token counts by kind. */
+    public static void main(String[] args) throws IOException {
+        Path root = Paths.get(args[0]);
+        List<String> fences = new ArrayList<>();
+        SegmentParser parser = new SegmentParser();
+        for (Path note : Corpus.notes(root)) {
+            byte[] bytes = Files.readAllBytes(note);
+            parser.parse(note, new NoteHandler() {
+                @Override
+                public void fence(String language, long start, long end, long codeStart, long codeEnd) {
+                    if (language.equals("rust")) {
+                        fences.add(new String(bytes, (int) codeStart, (int) (codeEnd - codeStart),
+                                StandardCharsets.UTF_8));
+                    }
+                }
+            });
+        }
+        RustLexer lexer = new RustLexer();
+        Tokens tokens = new Tokens();
+        long[] counts = new long[KIND_NAMES.length];
+        long chars = 0;
+        long t0 = System.nanoTime();
+        for (String code : fences) {
+            lexer.lex(code, tokens);
+            chars += code.length();
+            for (int i = 0; i < tokens.size(); i++) {
+                counts[tokens.kind(i)]++;
+            }
+        }
+        long nanos = System.nanoTime() - t0;
+        System.out.printf("%d fences, %d chars in %.2f ms%n", fences.size(), chars, nanos / 1e6);
+        for (int k = 0; k < counts.length; k++) {
+            System.out.printf("%-9s %d%n", KIND_NAMES[k], counts[k]);
+        }
+    }
+
+    /** Growable buffer of {@code (kind, start, end)} triples, reused across calls to {@link #lex}. */
+    public static final class Tokens {
+        private int[] data;
+        private int size;
+
+        public Tokens() {
+            this(256);
+        }
+
+        public Tokens(int capacity) {
+            data = new int[Math.max(capacity, 1) * 3];
+        }
+
+        void add(int kind, int start, int end) {
+            if (size * 3 == data.length) {
+                data = Arrays.copyOf(data, data.length * 2);
+            }
+            data[size * 3] = kind;
+            data[size * 3 + 1] = start;
+            data[size * 3 + 2] = end;
+            size++;
+        }
+
+        public void clear() {
+            size = 0;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public int kind(int i) {
+            return data[i * 3];
+        }
+
+        public int start(int i) {
+            return data[i * 3 + 1];
+        }
+
+        public int end(int i) {
+            return data[i * 3 + 2];
+        }
+
+        /** True if token {@code i} is exactly {@code s} in {@code text}. */
+        public boolean is(int i, CharSequence text, String s) {
+            return end(i) - start(i) == s.length() && regionMatches(s, text, start(i));
+        }
+    }
+}
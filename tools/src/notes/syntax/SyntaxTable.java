@@ -0,0 +1,293 @@
+package notes.syntax;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import notes.corpus.Corpus;
+
+/**
+ * The keyword, operator and symbol tables of the notes as one lookup
+ * table keyed by token.
+ *
+ * The tables are read once from the {@code Keywords in Rust},
+ * {@code Operators in Rust} and {@code Symbol} notes. Four entry forms
+ * occur there: numbered bold entries such as
+ * {@code 1. **`'ident` (Named Lifetime or Loop Label):**} with the
+ * description on the same or the next line, numbered code spans such as
+ * {@code 1. `!`: description}, bullets such as
+ * {@code - `as`: description}, and bullets such as
+ * {@code * **Addition (+)**: description}. Repeated answers list the
+ * same rows again; a row is kept once per token and meaning, the meaning
+ * being its name or, for a row without one, its description.
+ *
+ * Rows of one token are stored together in parallel arrays, and an
+ * open-addressing table maps the token to its rows. A lookup hashes the
+ * characters in place, so {@link #find(CharSequence, int, int)} and
+ * {@link #kind(CharSequence, int, int)} can classify a token straight
+ * out of a lexer's input without allocating. Immutable and safe to share
+ * between threads.
+ */
+public final class SyntaxTable {
+
+    public enum Kind { KEYWORD, RESERVED, OPERATOR, SYNTAX }
+
+    /** Topic folders read by {@link #load}, in lookup priority order. */
+    static final String[] SOURCES = {"Keywords in Rust", "Operators in Rust", "Symbol"};
+
+    private static final Kind[] KINDS = Kind.values();
+
+    private static final Pattern HEADING = Pattern.compile("^(?:#{1,6}\\s+(.+?)|\\*\\*([^*]+)\\*\\*)\\s*:?\\s*$");
+    private static final Pattern NUMBERED = Pattern.compile("^\\s*\\d+\\.\\s+\\*\\*((?:[^`*]|`[^`]*`)+?)\\*\\*:?\\s*(.*)$");
+    private static final Pattern NUMBERED_CODE = Pattern.compile("^\\s*\\d+\\.\\s+`([^`]+)`:?\\s*(.*)$");
+    private static final Pattern NAMED = Pattern.compile("^[-*]\\s+\\*\\*([^*`]+?)\\s*\\((\\S+)\\)\\*\\*:?\\s*(.*)$");
+    private static final Pattern BULLET = Pattern.compile("^[-*]\\s+`([^`]+)`(?::\\s*(.*))?$");
+    private static final Pattern SUB_BULLET = Pattern.compile("^\\s+[-*]\\s+(?:\\*\\*[^*]+\\*\\*\\s*)?(.+)$");
+    private static final Pattern CODE = Pattern.compile("`([^`]+)`");
+    private static final Pattern NAME = Pattern.compile("\\(([^()]+)\\)\\s*:?\\s*$");
+    private static final Pattern SOURCE = Pattern.compile("\\s*\\[Source \\d+]\\([^)]*\\)\\.?");
+    private static final Pattern WORD = Pattern.compile("[a-z_][a-z0-9_]*");
+
+    private final String[] tokens;
+    private final int[] hashes;
+    private final int[] rowStart;
+    private final byte[] kinds;
+    private final String[] tables;
+    private final String[] names;
+    private final String[] descriptions;
+    private final int[] slots;
+    private final int mask;
+
+    private SyntaxTable(Map<String, List<Entry>> byToken) {
+        int groups = byToken.size();
+        int rows = 0;
+        for (List<Entry> entries : byToken.values()) {
+            rows += entries.size();
+        }
+        tokens = new String[groups];
+        hashes = new int[groups];
+        rowStart = new int[groups + 1];
+        kinds = new byte[rows];
+        tables = new String[rows];
+        names = new String[rows];
+        descriptions = new String[rows];
+        slots = new int[Integer.highestOneBit(Math.max(groups, 2) * 4 - 1)];
+        mask = slots.length - 1;
+
+        int group = 0;
+        int row = 0;
+        for (Map.Entry<String, List<Entry>> e : byToken.entrySet()) {
+            String token = e.getKey();
+            tokens[group] = token;
+            hashes[group] = token.hashCode();
+            rowStart[group] = row;
+            for (Entry entry : e.getValue()) {
+                kinds[row] = (byte) entry.kind().ordinal();
+                tables[row] = entry.table();
+                names[row] = entry.name();
+                descriptions[row] = entry.description();
+                row++;
+            }
+            int slot = spread(hashes[group]) & mask;
+            while (slots[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            slots[slot] = group + 1;
+            group++;
+        }
+        rowStart[groups] = row;
+    }
+
+    /** Reads the tables from the notes of {@link #SOURCES} under {@code root}. */
+    public static SyntaxTable load(Path root) throws IOException {
+        Builder builder = new Builder();
+        for (String source : SOURCES) {
+            for (Path note : Corpus.notes(root.resolve(source))) {
+                builder.read(source, Files.readAllLines(note, StandardCharsets.UTF_8));
+            }
+        }
+        return new SyntaxTable(builder.byToken);
+    }
+
+    /** Number of distinct tokens. */
+    public int tokenCount() {
+        return tokens.length;
+    }
+
+    /** Number of rows; a token with several meanings has several. */
+    public int size() {
+        return kinds.length;
+    }
+
+    /** Index of the token {@code text[from, to)}, or -1. Does not allocate. */
+    public int find(CharSequence text, int from, int to) {
+        int h = 0;
+        for (int i = from; i < to; i++) {
+            h = 31 * h + text.charAt(i);
+        }
+        int len = to - from;
+        for (int slot = spread(h) & mask; slots[slot] != 0; slot = (slot + 1) & mask) {
+            int group = slots[slot] - 1;
+            if (hashes[group] == h && matches(tokens[group], text, from, len)) {
+                return group;
+            }
+        }
+        return -1;
+    }
+
+    public int find(String token) {
+        return find(token, 0, token.length());
+    }
+
+    /** Kind of the first row of {@code text[from, to)}, or null if it is not in the table. */
+    public Kind kind(CharSequence text, int from, int to) {
+        int group = find(text, from, to);
+        return group < 0 ? null : KINDS[kinds[rowStart[group]]];
+    }
+
+    /** Every row for {@code token}, in the order the notes list them. */
+    public List<Entry> lookup(String token) {
+        int group = find(token);
+        if (group < 0) {
+            return List.of();
+        }
+        List<Entry> out = new ArrayList<>(rowStart[group + 1] - rowStart[group]);
+        for (int row = rowStart[group]; row < rowStart[group + 1]; row++) {
+            out.add(new Entry(tokens[group], KINDS[kinds[row]], tables[row], names[row], descriptions[row]));
+        }
+        return out;
+    }
+
+    public String token(int index) {
+        return tokens[index];
+    }
+
+    private static boolean matches(String token, CharSequence text, int from, int len) {
+        if (token.length() != len) {
+            return false;
+        }
+        for (int i = 0; i < len; i++) {
+            if (token.charAt(i) != text.charAt(from + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int spread(int h) {
+        h *= 0x9e3779b9;
+        return h ^ (h >>> 16);
+    }
+
+    /** One meaning of a token; {@code name} is empty where the note gives none. */
+    public record Entry(String token, Kind kind, String table, String name, String description) {
+    }
+
+    /** Collects rows line by line; the description of a bold entry may follow on its first sub-bullet. */
+    private static final class Builder {
+        final Map<String, List<Entry>> byToken = new LinkedHashMap<>();
+        final Set<String> seen = new HashSet<>();
+
+        void read(String source, List<String> lines) {
+            String table = source;
+            List<String> pending = new ArrayList<>();
+            String pendingName = null;
+            for (String line : lines) {
+                Matcher m;
+                if (pendingName != null && (m = SUB_BULLET.matcher(line)).matches()) {
+                    add(source, table, pending, pendingName, m.group(1));
+                    pendingName = null;
+                    continue;
+                }
+                if (!line.isBlank()) {
+                    pendingName = null;
+                }
+                if ((m = HEADING.matcher(line)).matches()) {
+                    table = m.group(1) != null ? m.group(1) : m.group(2);
+                } else if ((m = NUMBERED.matcher(line)).matches()) {
+                    String head = m.group(1).strip();
+                    Matcher name = NAME.matcher(head);
+                    String label = "";
+                    if (name.find()) {
+                        label = name.group(1).strip();
+                        head = head.substring(0, name.start());
+                    }
+                    pending = codes(head);
+                    if (m.group(2).isEmpty()) {
+                        pendingName = label;
+                    } else {
+                        add(source, table, pending, label, m.group(2));
+                    }
+                } else if ((m = NUMBERED_CODE.matcher(line)).matches()) {
+                    add(source, table, List.of(m.group(1)), "", m.group(2));
+                } else if ((m = NAMED.matcher(line)).matches()) {
+                    add(source, table, List.of(m.group(2)), m.group(1).strip(), m.group(3));
+                } else if ((m = BULLET.matcher(line)).matches()) {
+                    add(source, table, List.of(m.group(1)), "", m.group(2) == null ? "" : m.group(2));
+                }
+            }
+        }
+
+        /** The code spans of an entry head; a span listing {@code a, b, etc.} counts as several. */
+        private static List<String> codes(String head) {
+            List<String> out = new ArrayList<>();
+            Matcher m = CODE.matcher(head);
+            while (m.find()) {
+                for (String token : m.group(1).split(",\\s+")) {
+                    if (!token.equals("etc.") && !token.isBlank()) {
+                        out.add(token.strip());
+                    }
+                }
+            }
+            return out;
+        }
+
+        private void add(String source, String table, List<String> tokens, String name, String description) {
+            String text = SOURCE.matcher(description).replaceAll("").strip();
+            for (String token : tokens) {
+                String meaning = name.isEmpty() ? text : name;
+                if (!seen.add(token + '\0' + meaning.toLowerCase(Locale.ROOT))) {
+                    continue;
+                }
+                Kind kind;
+                if (source.equals(SOURCES[0])) {
+                    kind = table.contains("Reserved") ? Kind.RESERVED : Kind.KEYWORD;
+                } else if (WORD.matcher(token).matches()) {
+                    kind = Kind.KEYWORD;
+                } else {
+                    kind = source.equals(SOURCES[1]) ? Kind.OPERATOR : Kind.SYNTAX;
+                }
+                byToken.computeIfAbsent(token, t -> new ArrayList<>())
+                        .add(new Entry(token, kind, table, name, text));
+            }
+        }
+    }
+
+    /** {@code SyntaxTable <root> <token>...}: loads the tables and prints the rows of each token. */
+    public static void main(String[] args) throws IOException {
+        long t0 = System.nanoTime();
+        SyntaxTable table = load(Paths.get(args[0]));
+        System.out.printf("%d tokens, %d rows in %.1f ms%n", table.tokenCount(), table.size(),
+                (System.nanoTime() - t0) / 1e6);
+        for (int i = 1; i < args.length; i++) {
+            long t1 = System.nanoTime();
+            int found = table.find(args[i]);
+            long nanos = System.nanoTime() - t1;
+            System.out.printf("%s (%d ns, %s)%n", args[i], nanos, found < 0 ? "not found" : "found");
+            for (Entry e : table.lookup(args[i])) {
+                System.out.printf("  %-8s %-40s %s: %s%n", e.kind(), e.table(), e.name(), e.description());
+            }
+        }
+    }
+}
@@ -0,0 +1,175 @@
+package notes.text;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+
+/**
+ * UTF-8 primitives shared by {@link Utf8Str} and {@link Utf8String}:
+ * validation, char counting, char boundaries and decoding in place.
+ *
+ * Validation follows the rules rust applies to {@code str}: no overlong
+ * forms, no surrogates, nothing above {@code U+10FFFF}, and no sequence
+ * cut short at the end of the range. It checks {@link #BLOCK} bytes per
+ * step while the input is ASCII, by reading four little-endian longs and
+ * testing their high bits together; a block with any other byte is
+ * walked one sequence at a time before the fast path is tried again.
+ * Counting chars reads a long at a time and counts its continuation
+ * bytes with one mask and a popcount. Both are plain SWAR on 64-bit
+ * words, which needs no incubator module and which C2 compiles to a few
+ * instructions per word.
+ */
+public final class Utf8 {
+
+    /** Bytes checked per step of the ASCII fast path. */
+    public static final int BLOCK = 32;
+
+    private static final VarHandle LONGS = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final long HIGH_BITS = 0x8080808080808080L;
+
+    private Utf8() {
+    }
+
+    /** Throws {@link IllegalArgumentException} unless {@code bytes[from, to)} is valid UTF-8. */
+    public static void validate(byte[] bytes, int from, int to) {
+        int valid = validUpTo(bytes, from, to);
+        if (valid != to) {
+            throw new IllegalArgumentException("invalid UTF-8 at byte " + (valid - from));
+        }
+    }
+
+    /** The end of the longest valid UTF-8 prefix of {@code bytes[from, to)}; {@code to} if it is all valid. */
+    public static int validUpTo(byte[] bytes, int from, int to) {
+        int i = from;
+        while (i < to) {
+            if (i + BLOCK <= to && isAsciiBlock(bytes, i)) {
+                i += BLOCK;
+                continue;
+            }
+            // a multi-byte sequence may run past the block; the next step starts after it
+            int end = Math.min(i + BLOCK, to);
+            while (i < end) {
+                if (bytes[i] >= 0) {
+                    i++;
+                    continue;
+                }
+                int n = sequenceLength(bytes, i, to);
+                if (n == 0) {
+                    return i;
+                }
+                i += n;
+            }
+        }
+        return to;
+    }
+
+    private static boolean isAsciiBlock(byte[] bytes, int i) {
+        long or = (long) LONGS.get(bytes, i) | (long) LONGS.get(bytes, i + 8) | (long) LONGS.get(bytes, i + 16)
+                | (long) LONGS.get(bytes, i + 24);
+        return (or & HIGH_BITS) == 0;
+    }
+
+    /** Length of the valid multi-byte sequence starting at {@code i}, or 0 if it is invalid or cut short. */
+    static int sequenceLength(byte[] bytes, int i, int to) {
+        int b = bytes[i] & 0xff;
+        if (b < 0xc2 || b > 0xf4) {
+            return 0; // a continuation byte, an overlong two-byte lead, or past U+10FFFF
+        }
+        if (b < 0xe0) {
+            return i + 1 < to && isContinuation(bytes[i + 1]) ? 2 : 0;
+        }
+        if (i + (b < 0xf0 ? 2 : 3) >= to) {
+            return 0;
+        }
+        int c1 = bytes[i + 1] & 0xff;
+        // the second byte's range rules out overlongs, surrogates and code points past U+10FFFF
+        int low = b == 0xe0 ? 0xa0 : b == 0xf0 ? 0x90 : 0x80;
+        int high = b == 0xed ? 0x9f : b == 0xf4 ? 0x8f : 0xbf;
+        if (c1 < low || c1 > high || !isContinuation(bytes[i + 2])) {
+            return 0;
+        }
+        if (b < 0xf0) {
+            return 3;
+        }
+        return isContinuation(bytes[i + 3]) ? 4 : 0;
+    }
+
+    /** True if a char starts at a byte with this value, that is, it is not a continuation byte. */
+    public static boolean isCharBoundary(byte b) {
+        return (b & 0xc0) != 0x80;
+    }
+
+    static boolean isContinuation(byte b) {
+        return (b & 0xc0) == 0x80;
+    }
+
+    /** Number of bytes in the char whose lead byte is {@code lead}; assumes valid UTF-8. */
+    static int width(byte lead) {
+        int b = lead & 0xff;
+        return b < 0x80 ? 1 : b < 0xe0 ? 2 : b < 0xf0 ? 3 : 4;
+    }
+
+    /** The code point starting at {@code i}; assumes valid UTF-8. */
+    static int decode(byte[] bytes, int i) {
+        int b = bytes[i] & 0xff;
+        if (b < 0x80) {
+            return b;
+        }
+        if (b < 0xe0) {
+            return (b & 0x1f) << 6 | bytes[i + 1] & 0x3f;
+        }
+        if (b < 0xf0) {
+            return (b & 0x0f) << 12 | (bytes[i + 1] & 0x3f) << 6 | bytes[i + 2] & 0x3f;
+        }
+        return (b & 0x07) << 18 | (bytes[i + 1] & 0x3f) << 12 | (bytes[i + 2] & 0x3f) << 6 | bytes[i + 3] & 0x3f;
+    }
+
+    /** Number of code points in valid UTF-8 {@code bytes[from, to)}: the bytes that are not continuations. */
+    public static int countChars(byte[] bytes, int from, int to) {
+        int continuations = 0;
+        int i = from;
+        for (; i + 8 <= to; i += 8) {
+            long x = (long) LONGS.get(bytes, i);
+            // a continuation byte has bit 7 set and bit 6, shifted up into bit 7, clear
+            continuations += Long.bitCount(x & ~(x << 1) & HIGH_BITS);
+        }
+        for (; i < to; i++) {
+            if (isContinuation(bytes[i])) {
+                continuations++;
+            }
+        }
+        return to - from - continuations;
+    }
+
+    /** Writes {@code codePoint} at {@code at}; returns the number of bytes written. */
+    static int encode(int codePoint, byte[] out, int at) {
+        if (codePoint < 0x80) {
+            out[at] = (byte) codePoint;
+            return 1;
+        }
+        if (codePoint < 0x800) {
+            out[at] = (byte) (0xc0 | codePoint >>> 6);
+            out[at + 1] = (byte) (0x80 | codePoint & 0x3f);
+            return 2;
+        }
+        if (codePoint < 0x10000) {
+            out[at] = (byte) (0xe0 | codePoint >>> 12);
+            out[at + 1] = (byte) (0x80 | codePoint >>> 6 & 0x3f);
+            out[at + 2] = (byte) (0x80 | codePoint & 0x3f);
+            return 3;
+        }
+        out[at] = (byte) (0xf0 | codePoint >>> 18);
+        out[at + 1] = (byte) (0x80 | codePoint >>> 12 & 0x3f);
+        out[at + 2] = (byte) (0x80 | codePoint >>> 6 & 0x3f);
+        out[at + 3] = (byte) (0x80 | codePoint & 0x3f);
+        return 4;
+    }
+
+    /** Bytes needed to encode {@code codePoint}; throws if it is not a Unicode scalar value. */
+    static int encodedLength(int codePoint) {
+        if (codePoint < 0 || codePoint > 0x10ffff || codePoint >= 0xd800 && codePoint <= 0xdfff) {
+            throw new IllegalArgumentException("not a Unicode scalar value: " + Integer.toHexString(codePoint));
+        }
+        return codePoint < 0x80 ? 1 : codePoint < 0x800 ? 2 : codePoint < 0x10000 ? 3 : 4;
+    }
+}
@@ -0,0 +1,318 @@
+package notes.text;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.PrimitiveIterator;
+
+/**
+ * An immutable view of valid UTF-8, after rust's {@code &str}: an offset
+ * and a length into a {@code byte[]} that other views may share.
+ *
+ * The bytes are validated once, when a view is made from outside data;
+ * slicing never copies and only checks that both ends fall on char
+ * boundaries, so a slice is always valid too. There is no indexing by
+ * char. {@link #chars} decodes code points in place, {@link #bytes} walks
+ * the raw bytes, and search, {@link #splitWhitespace} and
+ * {@link #replace} work on the bytes without going through
+ * {@code java.lang.String}. Byte-wise search is exact for UTF-8: no
+ * char's encoding occurs inside another's. {@link #toString} is the one
+ * place that decodes.
+ *
+ * A view made with {@link #from(byte[])} shares the caller's array, which
+ * must not change while the view is in use.
+ */
+public final class Utf8Str implements Comparable<Utf8Str> {
+
+    public static final Utf8Str EMPTY = new Utf8Str(new byte[0], 0, 0);
+
+    final byte[] bytes;
+    final int offset;
+    final int length;
+
+    private Utf8Str(byte[] bytes, int offset, int length) {
+        this.bytes = bytes;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    /** A view of bytes already known to be valid, such as those of a {@link Utf8String}. */
+    static Utf8Str unchecked(byte[] bytes, int offset, int length) {
+        return new Utf8Str(bytes, offset, length);
+    }
+
+    /** A view of all of {@code bytes}; throws {@link IllegalArgumentException} if they are not valid UTF-8. */
+    public static Utf8Str from(byte[] bytes) {
+        return from(bytes, 0, bytes.length);
+    }
+
+    public static Utf8Str from(byte[] bytes, int offset, int length) {
+        Objects.checkFromIndexSize(offset, length, bytes.length);
+        Utf8.validate(bytes, offset, offset + length);
+        return new Utf8Str(bytes, offset, length);
+    }
+
+    /**
+     * A view of the remaining bytes of {@code buffer}: over its backing
+     * array when it has one, otherwise over a copy. The buffer's position
+     * is not moved.
+     */
+    public static Utf8Str from(ByteBuffer buffer) {
+        if (buffer.hasArray()) {
+            return from(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+        }
+        byte[] copy = new byte[buffer.remaining()];
+        buffer.get(buffer.position(), copy);
+        return from(copy);
+    }
+
+    /** The UTF-8 encoding of {@code s}, which is copied. */
+    public static Utf8Str of(String s) {
+        byte[] b = s.getBytes(StandardCharsets.UTF_8);
+        return new Utf8Str(b, 0, b.length);
+    }
+
+    /** Length in bytes. */
+    public int length() {
+        return length;
+    }
+
+    public boolean isEmpty() {
+        return length == 0;
+    }
+
+    /** The byte at {@code index}, 0 to 255. */
+    public int byteAt(int index) {
+        return bytes[offset + checkIndex(index, length)] & 0xff;
+    }
+
+    /** True if a char starts at byte {@code index}; the end counts as a boundary. */
+    public boolean isCharBoundary(int index) {
+        if (index == 0 || index == length) {
+            return true;
+        }
+        return index > 0 && index < length && Utf8.isCharBoundary(bytes[offset + index]);
+    }
+
+    /** The bytes {@code [from, to)}, sharing this view's array; both ends must be char boundaries. */
+    public Utf8Str slice(int from, int to) {
+        if (from < 0 || from > to || to > length) {
+            throw new StringIndexOutOfBoundsException("range " + from + ".." + to + ", length " + length);
+        }
+        if (!isCharBoundary(from) || !isCharBoundary(to)) {
+            throw new StringIndexOutOfBoundsException("byte index " + (isCharBoundary(from) ? to : from)
+                    + " is not a char boundary");
+        }
+        return from == 0 && to == length ? this : new Utf8Str(bytes, offset + from, to - from);
+    }
+
+    public Utf8Str slice(int from) {
+        return slice(from, length);
+    }
+
+    /** Number of chars (code points), counted without decoding. */
+    public int charCount() {
+        return Utf8.countChars(bytes, offset, offset + length);
+    }
+
+    /** The code points, decoded as the iterator advances. */
+    public PrimitiveIterator.OfInt chars() {
+        return new PrimitiveIterator.OfInt() {
+            private int i = offset;
+
+            @Override
+            public boolean hasNext() {
+                return i < offset + length;
+            }
+
+            @Override
+            public int nextInt() {
+                if (i >= offset + length) {
+                    throw new NoSuchElementException();
+                }
+                int c = Utf8.decode(bytes, i);
+                i += Utf8.width(bytes[i]);
+                return c;
+            }
+        };
+    }
+
+    /** The bytes, each 0 to 255. */
+    public PrimitiveIterator.OfInt bytes() {
+        return new PrimitiveIterator.OfInt() {
+            private int i = offset;
+
+            @Override
+            public boolean hasNext() {
+                return i < offset + length;
+            }
+
+            @Override
+            public int nextInt() {
+                if (i >= offset + length) {
+                    throw new NoSuchElementException();
+                }
+                return bytes[i++] & 0xff;
+            }
+        };
+    }
+
+    /** The runs of non-whitespace, as slices of this view; Unicode whitespace separates them. */
+    public Iterable<Utf8Str> splitWhitespace() {
+        return () -> new Iterator<>() {
+            private int i = skipWhitespace(offset);
+
+            @Override
+            public boolean hasNext() {
+                return i < offset + length;
+            }
+
+            @Override
+            public Utf8Str next() {
+                if (i >= offset + length) {
+                    throw new NoSuchElementException();
+                }
+                int start = i;
+                int end = offset + length;
+                while (i < end && whitespaceWidth(i) == 0) {
+                    i += Utf8.width(bytes[i]);
+                }
+                Utf8Str word = new Utf8Str(bytes, start, i - start);
+                i = skipWhitespace(i);
+                return word;
+            }
+        };
+    }
+
+    private int skipWhitespace(int i) {
+        int end = offset + length;
+        while (i < end) {
+            int w = whitespaceWidth(i);
+            if (w == 0) {
+                break;
+            }
+            i += w;
+        }
+        return i;
+    }
+
+    /** Byte width of the whitespace char at absolute index {@code i}, or 0 if it is not whitespace. */
+    private int whitespaceWidth(int i) {
+        int b = bytes[i];
+        if (b >= 0) {
+            return b == ' ' || b >= '\t' && b <= '\r' ? 1 : 0;
+        }
+        int c = Utf8.decode(bytes, i);
+        return c == 0x85 || Character.isSpaceChar(c) ? Utf8.width(bytes[i]) : 0;
+    }
+
+    /** Byte offset of the first occurrence of {@code needle}, or -1. */
+    public int indexOf(Utf8Str needle) {
+        return indexOf(needle, 0);
+    }
+
+    /** Byte offset of the first occurrence of {@code needle} at or after {@code from}, or -1. */
+    public int indexOf(Utf8Str needle, int from) {
+        int n = needle.length;
+        if (n == 0) {
+            return Math.min(Math.max(from, 0), length);
+        }
+        byte first = needle.bytes[needle.offset];
+        for (int i = Math.max(from, 0), last = length - n; i <= last; i++) {
+            if (bytes[offset + i] == first && Arrays.equals(bytes, offset + i, offset + i + n, needle.bytes,
+                    needle.offset, needle.offset + n)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    public boolean contains(Utf8Str needle) {
+        return indexOf(needle) >= 0;
+    }
+
+    public boolean startsWith(Utf8Str prefix) {
+        return prefix.length <= length && Arrays.equals(bytes, offset, offset + prefix.length, prefix.bytes,
+                prefix.offset, prefix.offset + prefix.length);
+    }
+
+    public boolean endsWith(Utf8Str suffix) {
+        int start = offset + length - suffix.length;
+        return suffix.length <= length && Arrays.equals(bytes, start, offset + length, suffix.bytes, suffix.offset,
+                suffix.offset + suffix.length);
+    }
+
+    /** A copy with every non-overlapping {@code from} replaced by {@code to}, left to right. */
+    public Utf8String replace(Utf8Str from, Utf8Str to) {
+        Utf8String out = new Utf8String(length);
+        int last = 0;
+        if (!from.isEmpty()) {
+            for (int i = indexOf(from, 0); i >= 0; i = indexOf(from, last)) {
+                out.pushBytes(bytes, offset + last, i - last);
+                out.pushBytes(to.bytes, to.offset, to.length);
+                last = i + from.length;
+            }
+        }
+        out.pushBytes(bytes, offset + last, length - last);
+        return out;
+    }
+
+    /** This view without leading and trailing whitespace. */
+    public Utf8Str trim() {
+        int start = skipWhitespace(offset) - offset;
+        int end = length;
+        while (end > start) {
+            int lead = end - 1;
+            while (!Utf8.isCharBoundary(bytes[offset + lead])) {
+                lead--;
+            }
+            if (whitespaceWidth(offset + lead) == 0) {
+                break;
+            }
+            end = lead;
+        }
+        return slice(start, end);
+    }
+
+    /** A copy of the bytes. */
+    public byte[] toBytes() {
+        return Arrays.copyOfRange(bytes, offset, offset + length);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof Utf8Str other && Arrays.equals(bytes, offset, offset + length, other.bytes, other.offset,
+                other.offset + other.length);
+    }
+
+    @Override
+    public int hashCode() {
+        int h = 1;
+        for (int i = offset; i < offset + length; i++) {
+            h = 31 * h + bytes[i];
+        }
+        return h;
+    }
+
+    /** Byte order, which for UTF-8 is code point order. */
+    @Override
+    public int compareTo(Utf8Str other) {
+        return Arrays.compareUnsigned(bytes, offset, offset + length, other.bytes, other.offset,
+                other.offset + other.length);
+    }
+
+    @Override
+    public String toString() {
+        return new String(bytes, offset, length, StandardCharsets.UTF_8);
+    }
+
+    private static int checkIndex(int index, int length) {
+        if (index < 0 || index >= length) {
+            throw new StringIndexOutOfBoundsException("index " + index + ", length " + length);
+        }
+        return index;
+    }
+}
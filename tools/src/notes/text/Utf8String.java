@@ -0,0 +1,140 @@
+package notes.text;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import notes.lang.OptionI32;
+
+/**
+ * An owned, growable UTF-8 buffer, after rust's {@code String}: a
+ * {@code byte[]} that only ever holds valid UTF-8, with capacity that
+ * doubles as it fills.
+ *
+ * Appending checks what it appends: a code point must be a Unicode scalar
+ * value, and a {@link Utf8Str} is valid already. {@link #truncate} and
+ * {@link #pop} cut only at char boundaries. {@link #asStr} borrows the
+ * contents as a view without copying; as in rust, the view should not be
+ * held across a change to the string, since later appends may write
+ * into the bytes it covers. Not thread-safe.
+ */
+public final class Utf8String {
+
+    private static final int MIN_CAPACITY = 16;
+
+    private byte[] data;
+    private int length;
+
+    public Utf8String() {
+        this(0);
+    }
+
+    public Utf8String(int capacity) {
+        data = new byte[Math.max(capacity, 0)];
+    }
+
+    public static Utf8String from(Utf8Str s) {
+        Utf8String out = new Utf8String(s.length);
+        out.pushStr(s);
+        return out;
+    }
+
+    public static Utf8String from(String s) {
+        byte[] b = s.getBytes(StandardCharsets.UTF_8);
+        Utf8String out = new Utf8String();
+        out.data = b;
+        out.length = b.length;
+        return out;
+    }
+
+    /** Length in bytes. */
+    public int length() {
+        return length;
+    }
+
+    public boolean isEmpty() {
+        return length == 0;
+    }
+
+    public int capacity() {
+        return data.length;
+    }
+
+    /** Appends one char; throws {@link IllegalArgumentException} if it is not a Unicode scalar value. */
+    public void push(int codePoint) {
+        int n = Utf8.encodedLength(codePoint);
+        reserve(n);
+        length += Utf8.encode(codePoint, data, length);
+    }
+
+    public void pushStr(Utf8Str s) {
+        pushBytes(s.bytes, s.offset, s.length);
+    }
+
+    /** Appends bytes known to be whole chars of valid UTF-8. */
+    void pushBytes(byte[] bytes, int offset, int n) {
+        reserve(n);
+        System.arraycopy(bytes, offset, data, length, n);
+        length += n;
+    }
+
+    /** Removes and returns the last char, or {@code None} if the string is empty. */
+    public OptionI32 pop() {
+        if (length == 0) {
+            return OptionI32.none();
+        }
+        int start = length - 1;
+        while (!Utf8.isCharBoundary(data[start])) {
+            start--;
+        }
+        int c = Utf8.decode(data, start);
+        length = start;
+        return OptionI32.some(c);
+    }
+
+    /** Keeps the first {@code newLength} bytes, which must end on a char boundary. */
+    public void truncate(int newLength) {
+        if (newLength >= length) {
+            return;
+        }
+        if (newLength < 0 || !Utf8.isCharBoundary(data[newLength])) {
+            throw new StringIndexOutOfBoundsException("byte index " + newLength + " is not a char boundary");
+        }
+        length = newLength;
+    }
+
+    public void clear() {
+        length = 0;
+    }
+
+    /** Makes room for at least {@code additional} more bytes without growing again. */
+    public void reserve(int additional) {
+        if (additional > data.length - length) {
+            int capacity = Math.max(Math.max(data.length * 2, MIN_CAPACITY), length + additional);
+            data = Arrays.copyOf(data, capacity < 0 ? length + additional : capacity);
+        }
+    }
+
+    /** The contents as a view over this string's bytes; no copy is made. */
+    public Utf8Str asStr() {
+        return Utf8Str.unchecked(data, 0, length);
+    }
+
+    public byte[] toBytes() {
+        return Arrays.copyOf(data, length);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof Utf8String other && Arrays.equals(data, 0, length, other.data, 0, other.length);
+    }
+
+    @Override
+    public int hashCode() {
+        return asStr().hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return new String(data, 0, length, StandardCharsets.UTF_8);
+    }
+}